@@ -0,0 +1,46 @@
+package ptarau.iprolog;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs each bundled program to its last answer with 32-bit cells,
+ * on Engine, and with 64-bit cells, on LongEngine - to measure what
+ * the wider cells cost. Loading is not measured, as in ProgramBenchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class CellsBenchmark {
+
+    @Param({"add", "queens", "perms", "mperms", "sud4x", "lambdas", "big"})
+    public String program;
+
+    @Param({"int", "long"})
+    public String cells;
+
+    private Supplier<Object> answers;
+
+    @Setup(Level.Invocation)
+    public void load() {
+        if ("long".equals(cells)) {
+            answers = new LongEngine(program)::ask;
+        } else {
+            answers = new Program(program)::ask;
+        }
+    }
+
+    @Benchmark
+    public long allAnswers() {
+        long n = 0;
+        while (null != answers.get()) {
+            n++;
+        }
+        return n;
+    }
+}
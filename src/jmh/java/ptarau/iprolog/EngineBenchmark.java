@@ -0,0 +1,117 @@
+package ptarau.iprolog;
+
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+import static ptarau.iprolog.Engine.*;
+
+/**
+ * Microbenchmarks of the engine hot paths, run against the clauses of big.pl:
+ * unification of two copies of the recursive app/3 head, dereferencing of
+ * variable chains, copying of clause heads to the heap, in place unification
+ * of a goal with matching and clashing clause heads followed by the copy of
+ * the body and retrieval of candidate clauses from the argument index of s/2.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class EngineBenchmark {
+
+    @Param({"1", "8"})
+    public int chain;
+
+    private Engine engine;
+    private Clause clause;
+    private int left;
+    private int right;
+    private int ref;
+    private int[] keys;
+    private Predicate predicate;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = new Engine("big");
+
+        // app([X|Xs],Ys,[X|Zs]) :- app(Xs,Ys,Zs).
+        clause = engine.clauses.get(1);
+        left = engine.pushHead(tag(V, engine.heap.size() - clause.base()), clause);
+        right = engine.pushHead(tag(V, engine.heap.size() - clause.base()), clause);
+
+        // a chain of variables, each pointing to the previous one
+        int root = engine.heap.size();
+        engine.heap.push(tag(V, root));
+        for (int i = 1; i < chain; i++) {
+            engine.heap.push(tag(U, root + i - 1));
+        }
+        ref = tag(U, root + chain - 1);
+
+        // s(N1, 5) with N1 unbound, built from the keys of s(4, 5)
+        keys = engine.clauses.get(8).xs().clone();
+        keys[1] = 0;
+
+        predicate = engine.program.predicates.get(predicateKey(keys[0], tag(A, 3)));
+    }
+
+    @Benchmark
+    public boolean unify() {
+        final int trailTop = engine.trail.size() - 1;
+        engine.unificationStack.clear();
+        engine.unificationStack.push(left);
+        engine.unificationStack.push(right);
+        final boolean ok = engine.unify(Integer.MAX_VALUE);
+        engine.unwindTrail(trailTop);
+        return ok;
+    }
+
+    @Benchmark
+    public int dereference() {
+        return engine.dereference(ref);
+    }
+
+    @Benchmark
+    public int pushHead() {
+        final int top = engine.heap.getTop();
+        final int head = engine.pushHead(tag(V, top + 1 - clause.base()), clause);
+        engine.heap.setTop(top);
+        return head;
+    }
+
+    @Benchmark
+    public boolean unifyHead() {
+        return unifyHead(clause);
+    }
+
+    @Benchmark
+    public boolean unifyHeadClash() {
+        // app([],Ys,Ys) fails on the first argument
+        return unifyHead(engine.clauses.get(0));
+    }
+
+    @Benchmark
+    public int[] pushBody() {
+        final int top = engine.heap.getTop();
+        final int trailTop = engine.trail.size() - 1;
+        engine.unifyHead(right, clause, Integer.MAX_VALUE);
+        final int[] goals = engine.pushBody(right, clause);
+        engine.unwindTrail(trailTop);
+        engine.heap.setTop(top);
+        return goals;
+    }
+
+    private boolean unifyHead(final Clause C0) {
+        final int top = engine.heap.getTop();
+        final int trailTop = engine.trail.size() - 1;
+        final boolean ok = engine.unifyHead(right, C0, Integer.MAX_VALUE);
+        engine.unwindTrail(trailTop);
+        engine.heap.setTop(top);
+        return ok;
+    }
+
+    @Benchmark
+    public Object indexGet() {
+        return predicate.candidates(keys);
+    }
+}
@@ -0,0 +1,103 @@
+package ptarau.iprolog;
+
+import org.openjdk.jmh.annotations.*;
+import ptarau.iprolog.util.ArrayHeap;
+import ptarau.iprolog.util.DirectHeap;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs each bundled program to its last answer on a freshly loaded engine.
+ * Loading happens in the invocation setup, so only the search and the
+ * export of answers is measured: allAnswers reports the time to all answers,
+ * answerRate the answers per second. bufferedAnswers retrieves answers as
+ * flat cells, countedAnswers only counts them, without exporting them.
+ * Allocation rates come with -prof gc.
+ * The heap parameter selects where the engine keeps its heap, jit whether
+ * the clauses of predicates called often are compiled to bytecode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class ProgramBenchmark {
+
+    @Param({"add", "queens", "perms", "mperms", "sud4x", "lambdas", "big"})
+    public String program;
+
+    @Param({"array", "direct"})
+    public String heap;
+
+    @Param({"false"})
+    public boolean jit;
+
+    private Program engine;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Answers {
+        public long answers;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            answers = 0;
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void load() {
+        engine = new Program(program, switch (heap) {
+            case "direct" -> new DirectHeap();
+            default -> new ArrayHeap();
+        });
+        engine.setJit(jit);
+    }
+
+    @Benchmark
+    public long allAnswers() {
+        return drain();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public long answerRate(final Answers counter) {
+        final long n = drain();
+        counter.answers += n;
+        return n;
+    }
+
+    /**
+     * all answers, found by engines splitting the search among the
+     * workers of the common fork/join pool
+     */
+    @Benchmark
+    public long parallelAnswers() {
+        return engine.parallelStream().count();
+    }
+
+    @Benchmark
+    public long bufferedAnswers() {
+        final var buffer = new AnswerBuffer();
+        long n = 0;
+        for (int k; 0 < (k = engine.ask(1024, buffer)); buffer.clear()) {
+            n += k;
+        }
+        return n;
+    }
+
+    @Benchmark
+    public long countedAnswers() {
+        return engine.count(Long.MAX_VALUE);
+    }
+
+    private long drain() {
+        long n = 0;
+        while (null != engine.ask()) {
+            n++;
+        }
+        return n;
+    }
+}
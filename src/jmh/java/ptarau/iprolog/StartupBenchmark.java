@@ -0,0 +1,65 @@
+package ptarau.iprolog;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what it takes to get an engine ready to run each bundled program:
+ * load compiles the program from its .nl file, as every engine used to,
+ * image loads it from a ProgramImage written once, context only builds an
+ * engine over a program compiled once, and reset brings back an engine that
+ * was used, as an EnginePool does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=logback-benchmarks.xml")
+public class StartupBenchmark {
+
+    @Param({"add", "queens", "perms", "mperms", "sud4x", "lambdas", "big"})
+    public String program;
+
+    private CompiledProgram compiled;
+    private Program engine;
+    private Path image;
+
+    @Setup(Level.Trial)
+    public void compile() throws IOException {
+        compiled = new CompiledProgram(program);
+        engine = new Program(compiled);
+        image = Files.createTempFile(program, ProgramImage.SUFFIX);
+        new CompiledProgram(program).save(image);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.delete(image);
+    }
+
+    @Benchmark
+    public Program load() {
+        return new Program(program);
+    }
+
+    @Benchmark
+    public Program image() {
+        return new Program(image.toString());
+    }
+
+    @Benchmark
+    public Program context() {
+        return new Program(compiled);
+    }
+
+    @Benchmark
+    public Program reset() {
+        engine.reset();
+        return engine;
+    }
+}
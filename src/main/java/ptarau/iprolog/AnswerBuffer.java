@@ -0,0 +1,52 @@
+package ptarau.iprolog;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import static ptarau.iprolog.Engine.detag;
+
+/**
+ * Answers of an engine as flat cells, filled by Engine.ask(n, buffer)
+ * without building objects for them, and reused by clearing it
+ *
+ * answer i is a copy of the instance of the query head it gives, starting at
+ * offset(i) with the cell of the head, followed by the cells of its subterms:
+ * references are relative to the start of the copy, constants keep the symbol
+ * numbers and integers of the engine, unbound variables refer to themselves
+ */
+final class AnswerBuffer {
+
+    final IntArrayList cells = new IntArrayList();
+    final IntArrayList offsets = new IntArrayList();
+
+    int size() {
+        return offsets.size();
+    }
+
+    void clear() {
+        cells.clear();
+        offsets.clear();
+    }
+
+    int offset(final int i) {
+        return offsets.getInt(i);
+    }
+
+    int length(final int i) {
+        return (i + 1 < offsets.size() ? offsets.getInt(i + 1) : cells.size()) - offsets.getInt(i);
+    }
+
+    /**
+     * returns cell j of answer i
+     */
+    int cell(final int i, final int j) {
+        return cells.getInt(offsets.getInt(i) + j);
+    }
+
+    /**
+     * returns the cell the k-th variable of the query, counting from 1, is
+     * bound to in answer i - a constant, or a reference within the answer
+     */
+    int arg(final int i, final int k) {
+        return cell(i, detag(cell(i, 0)) + 1 + k);
+    }
+}
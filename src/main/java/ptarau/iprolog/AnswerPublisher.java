@@ -0,0 +1,76 @@
+package ptarau.iprolog;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes the answers of an engine to a single subscriber: the engine runs
+ * on a thread of its own, finding answers ahead of their consumption until
+ * capacity of them wait to be delivered, so that the search overlaps with
+ * what the subscriber does with them - delivery follows the demand of the
+ * subscriber, and cancelling the subscription stops the search and clears
+ * the engine
+ */
+final class AnswerPublisher implements Flow.Publisher<Object> {
+
+    private final Engine engine;
+    private final int capacity;
+    private final Executor executor;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    AnswerPublisher(final Engine engine, final int capacity) {
+        this(engine, capacity, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * a publisher delivering answers to its subscriber on executor
+     */
+    AnswerPublisher(final Engine engine, final int capacity, final Executor executor) {
+        this.engine = engine;
+        this.capacity = capacity;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super Object> subscriber) {
+        final var publisher = new SubmissionPublisher<>(executor, capacity);
+        if (!subscribed.compareAndSet(false, true)) {
+            publisher.subscribe(subscriber);
+            publisher.closeExceptionally(new IllegalStateException("Answers already published"));
+            return;
+        }
+        publisher.subscribe(subscriber);
+        final var producer = new Thread(() -> produce(publisher), "iprolog-answers");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /**
+     * finds answers and submits them, waiting while capacity of them are not
+     * delivered yet, until there are no more or the subscriber cancels - an
+     * error of the search is signalled once the answers found before it are
+     * delivered, as SubmissionPublisher would signal it ahead of them
+     */
+    private void produce(final SubmissionPublisher<Object> publisher) {
+        try {
+            while (publisher.hasSubscribers()) {
+                final Object A = engine.ask();
+                if (null == A) {
+                    publisher.close();
+                    return;
+                }
+                publisher.submit(A);
+            }
+            engine.clear();
+        } catch (RuntimeException e) {
+            while (publisher.hasSubscribers() && 0 < publisher.estimateMaximumLag()) {
+                LockSupport.parkNanos(100_000);
+            }
+            publisher.closeExceptionally(e);
+        }
+    }
+}
@@ -11,7 +11,9 @@ package ptarau.iprolog;
  * neck - The length of the head and this the offset where the first body
  *        element starts (or the end of the clause if none)
  * xs   - The index vector containing dereferenced constants, numbers or
- *        array sizes as extracted from the outermost term of the head
- *        of the clause, with 0 values marking variable positions.
+ *        principal functor keys of the functor and of each argument of
+ *        the head of the clause, with 0 values marking variable positions.
+ * cells - The cells of a clause added once the program is loaded, with
+ *         references relative to their start, null for the others.
  */
-record Clause(int len, int[] hgs, int base, int neck, int[] xs) {}
+record Clause(int len, int[] hgs, int base, int neck, int[] xs, int[] cells) {}
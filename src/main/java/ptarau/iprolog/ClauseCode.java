@@ -0,0 +1,19 @@
+package ptarau.iprolog;
+
+/**
+ * A clause compiled to bytecode: head unification and body construction
+ * specialised to its cells, doing what Engine.unifyHead and Engine.pushBody
+ * do for it, with its tags, constants and arities known in advance
+ */
+interface ClauseCode {
+
+    /**
+     * unifies goal with the head of the clause, as Engine.unifyHead does
+     */
+    boolean unifyHead(Engine E, int goal, int hb);
+
+    /**
+     * copies the body of the clause to the heap, as Engine.pushBody does
+     */
+    int[] pushBody(Engine E, int goal);
+}
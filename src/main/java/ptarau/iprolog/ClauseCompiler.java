@@ -0,0 +1,431 @@
+package ptarau.iprolog;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ptarau.iprolog.util.Heap;
+
+import java.lang.invoke.MethodHandles;
+
+import static org.objectweb.asm.Opcodes.*;
+import static ptarau.iprolog.Engine.*;
+
+/**
+ * Compiles clauses to hidden classes implementing ClauseCode: the loops of
+ * Engine.unifyHead, materialize and pushBody are unrolled over the cells of
+ * the clause, so that the generated code only tests the goal, with the tags,
+ * constants, arities and register offsets of the clause inlined
+ *
+ * head cells are visited in the order unifyHead pops them and the heap is
+ * written in the same order, so compiled and interpreted clauses build the
+ * very same terms, at the same addresses
+ *
+ * MAX_CELLS - clauses longer than this are left to the interpreter, keeping
+ *             the generated methods well within the size the JVM accepts
+ */
+final class ClauseCompiler {
+
+    final static private Logger logger = LoggerFactory.getLogger(ClauseCompiler.class);
+
+    final static int MAX_CELLS = 1 << 9;
+
+    final static private MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    final static private String NAME = "ptarau/iprolog/CompiledClause";
+    final static private String ENGINE = Type.getInternalName(Engine.class);
+    final static private String HEAP = Type.getInternalName(Heap.class);
+    final static private String HEAP_DESC = Type.getDescriptor(Heap.class);
+    final static private String MATERIALIZE_DESC = "(" + Type.getDescriptor(Engine.class) + ")I";
+
+    // locals of unifyHead
+    final static private int E = 1, GOAL = 2, HB = 3, G = 4, X = 5, VALUE = 6;
+
+    private final Clause clause;
+    private final int[] code;
+    private final ClassWriter cw;
+    private final IntArrayList subterms = new IntArrayList();
+    private final IntOpenHashSet generated = new IntOpenHashSet();
+    private MethodVisitor mv;
+    private int locals;
+
+    private ClauseCompiler(final Clause clause, final int[] code) {
+        this.clause = clause;
+        this.code = code;
+        this.cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(final String type1, final String type2) {
+                return "java/lang/Object";
+            }
+        };
+    }
+
+    /**
+     * returns the compiled code of clause, null if it is left to the interpreter
+     */
+    static ClauseCode compile(final Clause clause, final int[] code) {
+        if (clause.len() > MAX_CELLS) {
+            return null;
+        }
+        try {
+            final byte[] bytes = new ClauseCompiler(clause, code).generate();
+            final Class<?> c = LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+            return (ClauseCode) c.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            logger.debug("Clause at {} left to the interpreter: {}", clause.base(), e.toString());
+            return null;
+        }
+    }
+
+    private byte[] generate() {
+        cw.visit(V16, ACC_FINAL | ACC_SUPER, NAME, null, "java/lang/Object", new String[]{Type.getInternalName(ClauseCode.class)});
+
+        mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        unifyHead();
+        pushBody();
+        while (!subterms.isEmpty()) {
+            final int p = subterms.popInt();
+            materialize(p);
+        }
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Engine.unifyHead, with the cells of the head inlined
+     */
+    private void unifyHead() {
+        mv = cw.visitMethod(ACC_PUBLIC, "unifyHead", "(" + Type.getDescriptor(Engine.class) + "II)Z", null, null);
+        mv.visitCode();
+        locals = VALUE + 1;
+        final int h = detag(clause.hgs()[0]);
+
+        mv.visitVarInsn(ALOAD, E);
+        push(clause.len());
+        mv.visitMethodInsn(INVOKEVIRTUAL, ENGINE, "clearRegs", "(I)V", false);
+        mv.visitVarInsn(ILOAD, GOAL);
+        mv.visitMethodInsn(INVOKESTATIC, ENGINE, "detag", "(I)I", false);
+        mv.visitVarInsn(ISTORE, G);
+
+        final Label ok = new Label();
+        heapGet(E, G, 0);
+        push(code[h]);
+        mv.visitJumpInsn(IF_ICMPEQ, ok);
+        fail();
+        mv.visitLabel(ok);
+        for (int i = 1; i <= detag(code[h]); i++) {
+            headCell(h + i, G, i);
+        }
+        mv.visitInsn(ICONST_1);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * unifies the head cell at a with the dereferenced goal cell at offset
+     * off from the address in local from
+     */
+    private void headCell(final int a, final int from, final int off) {
+        mv.visitVarInsn(ALOAD, E);
+        heapGet(E, from, off);
+        mv.visitMethodInsn(INVOKEVIRTUAL, ENGINE, "dereference", "(I)I", false);
+        mv.visitVarInsn(ISTORE, X);
+
+        final int t = code[a];
+        final Label end = new Label();
+        switch (tagOf(t)) {
+            case Engine.V, U -> {
+                final Label bound = new Label();
+                reg(E, detag(t) - clause.base());
+                mv.visitVarInsn(ISTORE, VALUE);
+                mv.visitVarInsn(ILOAD, VALUE);
+                mv.visitJumpInsn(IFNE, bound);
+                setReg(detag(t) - clause.base(), X);
+                mv.visitJumpInsn(GOTO, end);
+                mv.visitLabel(bound);
+                unifyCells(end);
+                fail();
+            }
+            case C, N -> {
+                final Label nonvar = new Label();
+                mv.visitVarInsn(ILOAD, X);
+                mv.visitMethodInsn(INVOKESTATIC, ENGINE, "isVAR", "(I)Z", false);
+                mv.visitJumpInsn(IFEQ, nonvar);
+                mv.visitVarInsn(ALOAD, E);
+                mv.visitVarInsn(ILOAD, X);
+                push(t);
+                mv.visitVarInsn(ILOAD, HB);
+                mv.visitMethodInsn(INVOKEVIRTUAL, ENGINE, "bind", "(III)V", false);
+                mv.visitJumpInsn(GOTO, end);
+                mv.visitLabel(nonvar);
+                mv.visitVarInsn(ILOAD, X);
+                push(t);
+                mv.visitJumpInsn(IF_ICMPEQ, end);
+                fail();
+            }
+            case R -> {
+                final int p = detag(t);
+                final int q = locals++;
+                final Label fresh = new Label();
+                final Label nonvar = new Label();
+                final Label mismatch = new Label();
+                reg(E, p - clause.base());
+                mv.visitVarInsn(ISTORE, VALUE);
+                mv.visitVarInsn(ILOAD, VALUE);
+                mv.visitJumpInsn(IFEQ, fresh);
+                unifyCells(end);
+                fail();
+
+                mv.visitLabel(fresh);
+                mv.visitVarInsn(ILOAD, X);
+                mv.visitMethodInsn(INVOKESTATIC, ENGINE, "isVAR", "(I)Z", false);
+                mv.visitJumpInsn(IFEQ, nonvar);
+                mv.visitVarInsn(ALOAD, E);
+                mv.visitVarInsn(ILOAD, X);
+                mv.visitVarInsn(ALOAD, E);
+                callMaterialize(p);
+                mv.visitVarInsn(ILOAD, HB);
+                mv.visitMethodInsn(INVOKEVIRTUAL, ENGINE, "bind", "(III)V", false);
+                mv.visitJumpInsn(GOTO, end);
+
+                mv.visitLabel(nonvar);
+                mv.visitVarInsn(ILOAD, X);
+                mv.visitMethodInsn(INVOKESTATIC, ENGINE, "tagOf", "(I)I", false);
+                push(R);
+                mv.visitJumpInsn(IF_ICMPNE, mismatch);
+                mv.visitVarInsn(ILOAD, X);
+                mv.visitMethodInsn(INVOKESTATIC, ENGINE, "detag", "(I)I", false);
+                mv.visitVarInsn(ISTORE, q);
+                heapGet(E, q, 0);
+                push(code[p]);
+                mv.visitJumpInsn(IF_ICMPNE, mismatch);
+                setReg(p - clause.base(), X);
+                for (int i = 1; i <= detag(code[p]); i++) {
+                    headCell(p + i, q, i);
+                }
+                mv.visitJumpInsn(GOTO, end);
+                mv.visitLabel(mismatch);
+                fail();
+            }
+            default -> fail();
+        }
+        mv.visitLabel(end);
+    }
+
+    /**
+     * unifies register value VALUE with X, going on at end if they unify
+     */
+    private void unifyCells(final Label end) {
+        mv.visitVarInsn(ALOAD, E);
+        mv.visitVarInsn(ILOAD, VALUE);
+        mv.visitVarInsn(ILOAD, X);
+        mv.visitVarInsn(ILOAD, HB);
+        mv.visitMethodInsn(INVOKEVIRTUAL, ENGINE, "unifyCells", "(III)Z", false);
+        mv.visitJumpInsn(IFNE, end);
+    }
+
+    /**
+     * Engine.materialize for the subterm at p, as a static method of its own
+     * taking the engine
+     */
+    private void materialize(final int p) {
+        mv = cw.visitMethod(ACC_PRIVATE | ACC_STATIC, "m" + p, MATERIALIZE_DESC, null, null);
+        mv.visitCode();
+        final int e = 0, q = 1, v = 2, ref = 3;
+        final int n = detag(code[p]);
+
+        mv.visitVarInsn(ALOAD, e);
+        mv.visitFieldInsn(GETFIELD, ENGINE, "heap", HEAP_DESC);
+        mv.visitMethodInsn(INVOKEINTERFACE, HEAP, "getTop", "()I", true);
+        mv.visitInsn(ICONST_1);
+        mv.visitInsn(IADD);
+        mv.visitVarInsn(ISTORE, q);
+        push(R);
+        mv.visitVarInsn(ILOAD, q);
+        mv.visitMethodInsn(INVOKESTATIC, ENGINE, "tag", "(II)I", false);
+        mv.visitVarInsn(ISTORE, ref);
+        mv.visitVarInsn(ALOAD, e);
+        push(p - clause.base());
+        mv.visitVarInsn(ILOAD, ref);
+        mv.visitMethodInsn(INVOKEVIRTUAL, ENGINE, "setReg", "(II)V", false);
+        for (int i = 0; i <= n; i++) {
+            mv.visitVarInsn(ALOAD, e);
+            mv.visitFieldInsn(GETFIELD, ENGINE, "heap", HEAP_DESC);
+            push(0 == i ? code[p] : 0);
+            mv.visitMethodInsn(INVOKEINTERFACE, HEAP, "push", "(I)V", true);
+        }
+        for (int i = 1; i <= n; i++) {
+            final int t = code[p + i];
+            final int tag = tagOf(t);
+            if (tag < C) {
+                final int o = detag(t) - clause.base();
+                final Label set = new Label();
+                reg(e, o);
+                mv.visitVarInsn(ISTORE, v);
+                mv.visitVarInsn(ILOAD, v);
+                mv.visitJumpInsn(IFNE, set);
+                if (R == tag) {
+                    mv.visitVarInsn(ALOAD, e);
+                    callMaterialize(detag(t));
+                    mv.visitVarInsn(ISTORE, v);
+                } else {
+                    push(Engine.V);
+                    mv.visitVarInsn(ILOAD, q);
+                    push(i);
+                    mv.visitInsn(IADD);
+                    mv.visitMethodInsn(INVOKESTATIC, ENGINE, "tag", "(II)I", false);
+                    mv.visitVarInsn(ISTORE, v);
+                    mv.visitVarInsn(ALOAD, e);
+                    push(o);
+                    mv.visitVarInsn(ILOAD, v);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, ENGINE, "setReg", "(II)V", false);
+                }
+                mv.visitLabel(set);
+            }
+            mv.visitVarInsn(ALOAD, e);
+            mv.visitFieldInsn(GETFIELD, ENGINE, "heap", HEAP_DESC);
+            mv.visitVarInsn(ILOAD, q);
+            push(i);
+            mv.visitInsn(IADD);
+            if (tag < C) {
+                mv.visitVarInsn(ILOAD, v);
+            } else {
+                push(t);
+            }
+            mv.visitMethodInsn(INVOKEINTERFACE, HEAP, "set", "(II)V", true);
+        }
+        mv.visitVarInsn(ILOAD, ref);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * calls the method materializing the subterm at p, on the engine on
+     * the stack, generating it later if not done yet
+     */
+    private void callMaterialize(final int p) {
+        if (generated.add(p)) {
+            subterms.push(p);
+        }
+        mv.visitMethodInsn(INVOKESTATIC, NAME, "m" + p, MATERIALIZE_DESC, false);
+    }
+
+    /**
+     * Engine.pushBody, with the cells of the body inlined
+     */
+    private void pushBody() {
+        mv = cw.visitMethod(ACC_PUBLIC, "pushBody", "(" + Type.getDescriptor(Engine.class) + "I)[I", null, null);
+        mv.visitCode();
+        final int b = 3, gs = 4;
+        final int from = clause.base() + clause.neck();
+        final int to = clause.base() + clause.len();
+
+        push(Engine.V);
+        mv.visitVarInsn(ALOAD, E);
+        mv.visitFieldInsn(GETFIELD, ENGINE, "heap", HEAP_DESC);
+        mv.visitMethodInsn(INVOKEINTERFACE, HEAP, "getTop", "()I", true);
+        push(1 - from);
+        mv.visitInsn(IADD);
+        mv.visitMethodInsn(INVOKESTATIC, ENGINE, "tag", "(II)I", false);
+        mv.visitVarInsn(ISTORE, b);
+        for (int i = from; i < to; i++) {
+            mv.visitVarInsn(ALOAD, E);
+            mv.visitFieldInsn(GETFIELD, ENGINE, "heap", HEAP_DESC);
+            bodyCell(code[i], b);
+            mv.visitMethodInsn(INVOKEINTERFACE, HEAP, "push", "(I)V", true);
+        }
+
+        final int[] hgs = clause.hgs();
+        push(hgs.length);
+        mv.visitIntInsn(NEWARRAY, T_INT);
+        mv.visitVarInsn(ASTORE, gs);
+        mv.visitVarInsn(ALOAD, gs);
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ILOAD, GOAL);
+        mv.visitInsn(IASTORE);
+        for (int k = 1; k < hgs.length; k++) {
+            mv.visitVarInsn(ALOAD, gs);
+            push(k);
+            bodyCell(hgs[k], b);
+            mv.visitInsn(IASTORE);
+        }
+        mv.visitVarInsn(ALOAD, gs);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Engine.bodyCell: leaves the value of a body cell on the stack
+     */
+    private void bodyCell(final int cell, final int b) {
+        if (tagOf(cell) >= C) {
+            push(cell);
+            return;
+        }
+        final Label done = new Label();
+        reg(E, detag(cell) - clause.base());
+        mv.visitInsn(DUP);
+        mv.visitJumpInsn(IFNE, done);
+        mv.visitInsn(POP);
+        push(cell);
+        mv.visitVarInsn(ILOAD, b);
+        mv.visitInsn(IADD);
+        mv.visitLabel(done);
+    }
+
+    private void heapGet(final int engine, final int from, final int off) {
+        mv.visitVarInsn(ALOAD, engine);
+        mv.visitFieldInsn(GETFIELD, ENGINE, "heap", HEAP_DESC);
+        mv.visitVarInsn(ILOAD, from);
+        if (0 != off) {
+            push(off);
+            mv.visitInsn(IADD);
+        }
+        mv.visitMethodInsn(INVOKEINTERFACE, HEAP, "get", "(I)I", true);
+    }
+
+    private void reg(final int engine, final int o) {
+        mv.visitVarInsn(ALOAD, engine);
+        mv.visitFieldInsn(GETFIELD, ENGINE, "regs", "[I");
+        push(o);
+        mv.visitInsn(IALOAD);
+    }
+
+    private void setReg(final int o, final int value) {
+        mv.visitVarInsn(ALOAD, E);
+        push(o);
+        mv.visitVarInsn(ILOAD, value);
+        mv.visitMethodInsn(INVOKEVIRTUAL, ENGINE, "setReg", "(II)V", false);
+    }
+
+    private void fail() {
+        mv.visitInsn(ICONST_0);
+        mv.visitInsn(IRETURN);
+    }
+
+    private void push(final int v) {
+        if (v >= -1 && v <= 5) {
+            mv.visitInsn(ICONST_0 + v);
+        } else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, v);
+        } else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, v);
+        } else {
+            mv.visitLdcInsn(v);
+        }
+    }
+}
@@ -0,0 +1,603 @@
+package ptarau.iprolog;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ptarau.iprolog.util.ArgIndex;
+import ptarau.iprolog.util.FactFile;
+import ptarau.iprolog.util.Symbols;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongConsumer;
+
+import static ptarau.iprolog.Engine.*;
+
+/**
+ * Program loaded once and shared by the engines running it - on as many
+ * threads as needed, each engine only holding the heap, trail, goal stack
+ * and spines of its own execution
+ * <p>
+ * facts can be added and removed once loaded, from java or by the goals
+ * assert F and retract F: added facts keep their cells in their Clause,
+ * removed ones are only dropped from their predicate, so that clause numbers
+ * stay valid - a predicate changed becomes a DynamicPredicate, calls to it
+ * seeing its clauses as they were when made, and listeners get its key
+ *
+ * code          - the cells of the clauses, at the addresses engines see them
+ *                 at: engines read heads and bodies from here and only copy
+ *                 the cells of the query, that get bound in place, to their heap
+ * clauses       - trimmed down clauses, the query being the last one loaded,
+ *                 not changed once loaded
+ * added         - the clauses added since, numbered after those loaded: the
+ *                 array grows by doubling and is written back after each
+ *                 clause put in it, so that engines reading it without a
+ *                 lock see the clauses whose numbers they got
+ * clauseIndex   - the numbers of the clauses loaded
+ * symbols       - symbol table, filled in while loading
+ * predicates    - clause dispatch table: predicates keyed by functor and arity,
+ *                 replaced by a copy when a predicate is added or made dynamic,
+ *                 with -Diprolog.columns=N those with N or more ground facts
+ *                 only stored as FactTables, their facts not being clauses,
+ *                 and those declared "external Name Arity" read from fact files
+ * compiled      - the bytecode of clauses, by clause number, once compiled
+ * tabled        - dispatch keys of the predicates declared tabled, by facts
+ *                 "table Name Arity", whose calls get their answers tabled
+ * assertSymbol  - functor of the goals adding a fact
+ * retractSymbol - functor of the goals removing a fact
+ * generation    - number of changes to the clauses so far
+ * removed       - the clauses removed
+ * all           - the numbers of the clauses not removed, once asked for
+ */
+final class CompiledProgram {
+
+    final static private Logger logger = LoggerFactory.getLogger(CompiledProgram.class);
+
+    final int[] code;
+    final List<Clause> clauses;
+    final int[] clauseIndex;
+    final Symbols symbols;
+    volatile Long2ObjectOpenHashMap<Predicate> predicates;
+    final AtomicReferenceArray<ClauseCode> compiled;
+    final LongOpenHashSet tabled;
+    final int assertSymbol;
+    final int retractSymbol;
+    volatile long generation;
+    private final Clause query;
+    private final IntOpenHashSet removed = new IntOpenHashSet();
+    private volatile Clause[] added = new Clause[0];
+    private int size;
+    private volatile int[] all;
+    private final List<LongConsumer> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * loads a program from a .nl file of
+     * "natural language" equivalents of Prolog/HiLog statements,
+     * or from the file of a ProgramImage when its name ends with .image
+     */
+    CompiledProgram(final String programName) {
+        if (programName.endsWith(ProgramImage.SUFFIX)) {
+            final var image = ProgramImage.read(Path.of(programName));
+            symbols = image.symbols;
+            code = image.code;
+            clauses = Collections.unmodifiableList(image.clauses);
+            predicates = image.predicates;
+        } else {
+            symbols = new Symbols();
+            final var linker = new Linker(Integer.getInteger("iprolog.columns", 0));
+            Loader.load(programName, symbols, MAX_NUMBER, linker);
+            linker.finish();
+            code = linker.code.toIntArray();
+            clauses = Collections.unmodifiableList(linker.clauses);
+            predicates = dispatch(linker.facts);
+        }
+        query = clauses.get(clauses.size() - 1);
+        clauseIndex = indexClauses(clauses);
+        compiled = new AtomicReferenceArray<>(clauses.size());
+        tabled = declared("table");
+        for (final long key : declared("external")) {
+            external(key);
+        }
+        all = clauseIndex;
+        assertSymbol = tag(C, symbols.add("assert"));
+        retractSymbol = tag(C, symbols.add("retract"));
+    }
+
+    /**
+     * returns the query - by convention of the form
+     * goal(Vars):-body to be executed by engines
+     */
+    Clause query() {
+        return query;
+    }
+
+    /**
+     * writes the ProgramImage of the program, as loaded
+     */
+    void save(final Path file) throws IOException {
+        ProgramImage.write(this, file);
+    }
+
+    /**
+     * calls listener with the dispatch key of each predicate changed
+     */
+    void listen(final LongConsumer listener) {
+        listeners.add(listener);
+    }
+
+    void unlisten(final LongConsumer listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * adds a fact, in the syntax of .nl files, after the clauses of its
+     * predicate - symbols met for the first time are added to the program
+     */
+    void addFact(final String fact) {
+        add(readFact(fact));
+    }
+
+    /**
+     * adds a fact given as a term copied out of the heap, as Engine.copyTerm
+     * copies them, after the clauses of its predicate
+     */
+    void addFact(final int[] term) {
+        // drop the reference to the term, its cells then start with those of the head
+        final var cells = new int[term.length - 1];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = relocate(tag(V, -1), term[i + 1]);
+        }
+        final int[] hgs = {tag(R, 0)};
+        if (R != tagOf(term[0]) || !isConstant(cells[1])) {
+            throw new IllegalArgumentException("Not a fact with a constant functor");
+        }
+        add(new Clause(cells.length, hgs, 0, cells.length, getIndexables(IntArrayList.wrap(cells), hgs[0]), cells));
+    }
+
+    private void add(final Clause C) {
+        final long key = keyOf(C);
+        synchronized (this) {
+            dynamic(key).add(append(C));
+            all = null;
+            generation++;
+        }
+        changed(key);
+    }
+
+    /**
+     * removes the first clause of the predicate of fact, a fact in the syntax
+     * of .nl files, that has the same cells, returning false if there is none
+     */
+    boolean removeFact(final String fact) {
+        final Clause F = readFact(fact);
+        final long key = keyOf(F);
+        final var P = clausesOf(key);
+        if (null == P) {
+            return false;
+        }
+        for (final int i : P.candidates(F.xs())) {
+            if (Arrays.equals(F.cells(), cells(clause(i))) && removeClause(key, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * removes clause i of the predicate with dispatch key key, returning
+     * false if it is not one of its clauses, e.g. once removed already
+     */
+    boolean removeClause(final long key, final int i) {
+        synchronized (this) {
+            if (!dynamic(key).remove(i)) {
+                return false;
+            }
+            removed.add(i);
+            all = null;
+            generation++;
+        }
+        changed(key);
+        return true;
+    }
+
+    /**
+     * returns the predicate with dispatch key key, null if there is none,
+     * made dynamic first if a fact table, so that its candidates are
+     * clause numbers - external ones can not be
+     */
+    Predicate clausesOf(final long key) {
+        final var P = predicates.get(key);
+        if (!(P instanceof FactTable)) {
+            return P;
+        }
+        synchronized (this) {
+            return dynamic(key);
+        }
+    }
+
+    /**
+     * returns the predicate with dispatch key key as a DynamicPredicate, that
+     * replaces it in a copy of the dispatch table the first time it changes -
+     * the rows of a fact table become clauses holding their cells
+     */
+    private DynamicPredicate dynamic(final long key) {
+        final var P = predicates.get(key);
+        if (P instanceof DynamicPredicate D) {
+            return D;
+        }
+        if (P instanceof ExternalFacts) {
+            throw new IllegalArgumentException("External predicate can not change: " + symbols.get(detag((int) (key >>> 32))));
+        }
+        final int[] cs;
+        if (P instanceof FactTable T) {
+            cs = new int[T.size()];
+            final int[] hgs = {tag(R, 0)};
+            for (int row = 0; row < cs.length; row++) {
+                final int[] cells = T.cells(row);
+                cs[row] = append(new Clause(cells.length, hgs, 0, cells.length, getIndexables(IntArrayList.wrap(cells), hgs[0]), cells));
+            }
+            all = null;
+        } else if (null != P) {
+            cs = P.clauses;
+        } else {
+            final var generic = predicates.get(predicateKey(0, (int) key));
+            cs = null == generic ? new int[0] : generic.clauses;
+        }
+        final var D = new DynamicPredicate(cs, detag((int) key), i -> clause(i).xs());
+        final var ps = new Long2ObjectOpenHashMap<>(predicates);
+        ps.put(key, D);
+        predicates = ps;
+        return D;
+    }
+
+    /**
+     * returns clause i, loaded or added since
+     */
+    Clause clause(final int i) {
+        final int n = clauses.size();
+        return i < n ? clauses.get(i) : added[i - n];
+    }
+
+    /**
+     * puts C after the clauses added so far, returning its number - called
+     * holding the lock of the program
+     */
+    private int append(final Clause C) {
+        var a = added;
+        if (size == a.length) {
+            a = Arrays.copyOf(a, Math.max(16, 2 * size));
+        }
+        a[size] = C;
+        added = a; // publishes C
+        return clauses.size() + size++;
+    }
+
+    /**
+     * returns the numbers of all the clauses but those removed, that goals
+     * with a variable functor could match
+     */
+    int[] allClauses() {
+        var cs = all;
+        if (null == cs) {
+            synchronized (this) {
+                cs = all;
+                if (null == cs) {
+                    final int n = clauses.size() + size;
+                    final var l = new IntArrayList(n);
+                    for (int i = 0; i < n; i++) {
+                        if (!removed.contains(i)) {
+                            l.add(i);
+                        }
+                    }
+                    cs = all = l.toIntArray();
+                }
+            }
+        }
+        return cs;
+    }
+
+    private void changed(final long key) {
+        for (final var listener : listeners) {
+            listener.accept(key);
+        }
+    }
+
+    /**
+     * reads a fact, with a constant functor, into a clause holding its cells
+     */
+    private Clause readFact(final String fact) {
+        final List<Clause> Cs = new ArrayList<>();
+        Loader.loadClause(fact, symbols, MAX_NUMBER, (cs, gs, neck) -> {
+            final var cells = narrow(cs);
+            final var hgs = narrow(gs);
+            Cs.add(new Clause(cells.length, hgs, 0, neck, getIndexables(IntArrayList.wrap(cells), hgs[0]), cells));
+        });
+        final Clause C = Cs.get(0);
+        if (1 != C.hgs().length || !isConstant(C.cells()[detag(C.hgs()[0]) + 1])) {
+            throw new IllegalArgumentException("Not a fact with a constant functor: " + fact);
+        }
+        return C;
+    }
+
+    /**
+     * returns the dispatch key of the predicate of a clause holding its cells
+     */
+    private static long keyOf(final Clause C) {
+        final int p = detag(C.hgs()[0]);
+        return Engine.predicateKey(C.cells()[p + 1], C.cells()[p]);
+    }
+
+    /**
+     * returns the cells of a clause with references relative to its start,
+     * as those of clauses holding their cells
+     */
+    int[] cells(final Clause C) {
+        if (null != C.cells()) {
+            return C.cells();
+        }
+        final int b = C.base() << 3;
+        final var cs = new int[C.len()];
+        for (int i = 0; i < cs.length; i++) {
+            final int c = code[C.base() + i];
+            cs[i] = tagOf(c) < 3 ? c + b : c;
+        }
+        return cs;
+    }
+
+    /**
+     * makes the predicate with dispatch key key, declared external, read its
+     * facts from the fact file Name.facts in the directory -Diprolog.facts
+     * names, the current one by default
+     */
+    private void external(final long key) {
+        final int functor = (int) (key >>> 32);
+        final String name = symbols.get(detag(functor));
+        if (predicates.containsKey(key)) {
+            throw new IllegalArgumentException("External predicate with clauses: " + name);
+        }
+        final Path file = Path.of(System.getProperty("iprolog.facts", "."), name + ".facts");
+        final FactFile F;
+        try {
+            F = FactFile.open(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (F.columns() != detag((int) key) - 1) {
+            throw new IllegalArgumentException("Fact file " + file + " has " + F.columns() + " columns, not the arity of " + name);
+        }
+        predicates.put(key, new ExternalFacts(functor, F, symbols));
+        logger.debug("external: {}/{} reads {} rows from {}", name, F.columns(), F.rows(), file);
+    }
+
+    /**
+     * collects the dispatch keys of the predicates declared by facts
+     * "keyword Name Arity", e.g. "table path 2"
+     */
+    private LongOpenHashSet declared(final String keyword) {
+        final var keys = new LongOpenHashSet();
+        for (final Clause clause : clauses) {
+            final int p = detag(clause.hgs()[0]);
+            if (1 == clause.hgs().length && tag(A, 3) == code[p] && C == tagOf(code[p + 1])
+                    && C == tagOf(code[p + 2]) && N == tagOf(code[p + 3])
+                    && keyword.equals(symbols.get(detag(code[p + 1])))) {
+                keys.add(predicateKey(code[p + 2], tag(A, detag(code[p + 3]) + 1)));
+            }
+        }
+        for (final Predicate P : predicates.values()) {
+            if (P instanceof FactTable T && 3 == T.width && keyword.equals(symbols.get(detag(T.functor)))) {
+                for (int row = 0; row < T.size(); row++) {
+                    final int name = T.cell(1, row);
+                    final int arity = T.cell(2, row);
+                    if (C == tagOf(name) && N == tagOf(arity)) {
+                        keys.add(predicateKey(name, tag(A, detag(arity) + 1)));
+                    }
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * compiles the clauses of P not compiled yet, their code being seen by
+     * engines reading compiled without a lock once set - engines racing to
+     * compile the same clause at worst compile it twice, clauses the
+     * compiler leaves out stay interpreted
+     */
+    void compile(final Predicate P) {
+        for (final int i : P.clauses) {
+            if (null == compiled.get(i)) {
+                compiled.set(i, ClauseCompiler.compile(clauses.get(i), code));
+            }
+        }
+    }
+
+    /**
+     * converts cells read in the 64-bit encoding, which agrees with
+     * ours for the values we can hold
+     */
+    private static int[] narrow(final long[] cells) {
+        final var cs = new int[cells.length];
+        for (int i = 0; i < cs.length; i++) {
+            cs[i] = (int) cells[i];
+        }
+        return cs;
+    }
+
+    private static int[] indexClauses(final List<Clause> clauses) {
+        var l = clauses.size();
+        var index = new int[l];
+        for (int i = 0; i < l; i++) {
+            index[i] = i;
+        }
+        return index;
+    }
+
+    /**
+     * places a clause built by the Toks reader in the code
+     */
+    private static Clause putClause(final IntArrayList code, final int[] cs, final int[] gs, final int neck) {
+        var base = code.size();
+        var b = tag(V, base);
+        for (final int c : cs) {
+            code.add(relocate(b, c));
+        }
+        for (int i = 0; i < gs.length; i++) {
+            gs[i] = relocate(b, gs[i]);
+        }
+        return new Clause(cs.length, gs, base, neck, getIndexables(code, gs[0]), null);
+    }
+
+    /**
+     * extracts the index vector of a clause head - variables of
+     * clauses are all unbound, so they all get key 0
+     */
+    private static int[] getIndexables(final IntArrayList code, final int ref) {
+        final var p = 1 + detag(ref);
+        final var n = detag(code.getInt(detag(ref)));
+        final var xs = new int[n];
+        for (int i = 0; i < n; i++) {
+            final int cell = code.getInt(p + i);
+            xs[i] = switch (tagOf(cell)) {
+                case R -> functorKey(code.getInt(detag(cell)), code.getInt(detag(cell) + 1));
+                case C, N -> cell;
+                default -> 0;
+            };
+        }
+        return xs;
+    }
+
+    /**
+     * builds the clause dispatch table: clauses are grouped by the functor
+     * and arity of their head, clauses with a variable functor are merged
+     * into every predicate of the same arity they could match
+     */
+    private Long2ObjectOpenHashMap<Predicate> dispatch(final Long2ObjectMap<FactTable.Builder> facts) {
+        var groups = new Long2ObjectOpenHashMap<IntArrayList>();
+        for (int i = 0; i < clauses.size(); i++) {
+            final int p = detag(clauses.get(i).hgs()[0]);
+            final int functor = code[p + 1];
+            final int arity = code[p];
+            final var key = predicateKey(isConstant(functor) ? functor : 0, arity);
+            groups.computeIfAbsent(key, k -> new IntArrayList()).add(i);
+        }
+        var predicates = new Long2ObjectOpenHashMap<Predicate>(groups.size());
+        for (Long2ObjectMap.Entry<IntArrayList> e : groups.long2ObjectEntrySet()) {
+            final long key = e.getLongKey();
+            final int[] cs = e.getValue().toIntArray();
+            final var generic = key >>> 32 == 0 ? null : groups.get(predicateKey(0, (int) key));
+            final var width = detag((int) key);
+            predicates.put(key, new Predicate(null == generic ? cs : ArgIndex.union(cs, generic.toIntArray()), width, i -> clauses.get(i).xs()));
+        }
+        for (Long2ObjectMap.Entry<FactTable.Builder> e : facts.long2ObjectEntrySet()) {
+            final var T = e.getValue().build();
+            predicates.put(e.getLongKey(), T);
+            logger.debug("columns: {}/{} stored as a table of {} rows", symbols.get(detag(T.functor)), T.width - 1, T.size());
+        }
+        return predicates;
+    }
+
+    /**
+     * places the clauses read by the loader in the code, but for the ground
+     * facts of predicates made only of them, collected in fact tables - tables
+     * with less than minFacts rows, 0 leaving them all out, go back to being
+     * clauses, after the others, and so do the rows collected for a predicate
+     * once a clause of it that is not such a fact comes: clauses of the same
+     * predicate keep their order, and the query, the last clause, comes last
+     *
+     * facts   - the fact tables collected, by dispatch key
+     * mixed   - dispatch keys of the predicates with other clauses than ground facts
+     * generic - arity cells of clauses with a variable functor, that predicates
+     *           of that arity share, which keeps them out of fact tables
+     */
+    private static final class Linker implements Loader.Sink {
+        final IntArrayList code = new IntArrayList();
+        final List<Clause> clauses = new ArrayList<>();
+        final Long2ObjectLinkedOpenHashMap<FactTable.Builder> facts = new Long2ObjectLinkedOpenHashMap<>();
+        private final LongOpenHashSet mixed = new LongOpenHashSet();
+        private final IntOpenHashSet generic = new IntOpenHashSet();
+        private final int minFacts;
+        private int[] cs;
+        private int[] gs;
+        private int neck;
+
+        Linker(final int minFacts) {
+            this.minFacts = minFacts;
+        }
+
+        /**
+         * places the clause read before this one, knowing it is not the last
+         */
+        @Override
+        public void clause(final long[] cs, final long[] gs, final int neck) {
+            if (null != this.cs) {
+                place(this.cs, this.gs, this.neck);
+            }
+            this.cs = narrow(cs);
+            this.gs = narrow(gs);
+            this.neck = neck;
+        }
+
+        private void place(final int[] cs, final int[] gs, final int neck) {
+            if (minFacts > 0) {
+                final int p = detag(gs[0]);
+                final int arity = cs[p];
+                final int functor = cs[p + 1];
+                if (!isConstant(functor)) {
+                    generic.add(arity);
+                    for (final long key : facts.keySet().toLongArray()) {
+                        if ((int) key == arity) {
+                            unbuild(key);
+                        }
+                    }
+                } else {
+                    final long key = predicateKey(functor, arity);
+                    if (!mixed.contains(key) && !generic.contains(arity) && FactTable.Builder.isGroundFact(cs, gs)) {
+                        facts.computeIfAbsent(key, k -> new FactTable.Builder(functor, detag(arity))).add(cs);
+                        return;
+                    }
+                    mixed.add(key);
+                    unbuild(key);
+                }
+            }
+            clauses.add(putClause(code, cs, gs, neck));
+        }
+
+        /**
+         * places the rows collected for the predicate with dispatch key key as clauses
+         */
+        private void unbuild(final long key) {
+            final var B = facts.remove(key);
+            if (null == B) {
+                return;
+            }
+            for (int row = 0; row < B.size(); row++) {
+                final int[] cells = B.cells(row);
+                clauses.add(putClause(code, cells, new int[]{tag(R, 0)}, cells.length));
+            }
+        }
+
+        /**
+         * places the rows of tables too small to keep, then the query
+         */
+        void finish() {
+            for (final long key : facts.keySet().toLongArray()) {
+                if (facts.get(key).size() < minFacts) {
+                    unbuild(key);
+                }
+            }
+            clauses.add(putClause(code, cs, gs, neck));
+        }
+    }
+}
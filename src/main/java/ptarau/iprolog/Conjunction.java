@@ -0,0 +1,46 @@
+package ptarau.iprolog;
+
+/**
+ * Independent goals at the front of a frame of the goal stack, solved in
+ * parallel by engines of their own - their solutions are joined back
+ * into the engine that reached them one combination at a time, in the
+ * order backtracking over the goals would find them - a tabled goal
+ * stands alone, its solutions being the answers in its table, as does
+ * a goal assert F or retract F, with the instance it succeeds with
+ *
+ * first     - goal stack location of the first goal
+ * after     - goal stack location of the goals following them
+ * solutions - for each goal, the instances of the goal its solutions give,
+ *             copied out of the heap as blocks of cells relocatable to
+ *             any address, references being relative to their start
+ * size      - number of combinations of solutions
+ */
+final class Conjunction {
+
+    final int first;
+    final int after;
+    final int[][][] solutions;
+    final int size;
+
+    Conjunction(final int first, final int after, final int[][][] solutions) {
+        this.first = first;
+        this.after = after;
+        this.solutions = solutions;
+        long n = 1;
+        for (final int[][] s : solutions) {
+            n = Math.min(n * s.length, Integer.MAX_VALUE);
+        }
+        this.size = (int) n;
+    }
+
+    /**
+     * returns the solution of the i-th goal in combination k - the
+     * solutions of the last goal varying the fastest
+     */
+    int[] solution(final int i, int k) {
+        for (int j = solutions.length - 1; j > i; j--) {
+            k /= solutions[j].length;
+        }
+        return solutions[i][k % solutions[i].length];
+    }
+}
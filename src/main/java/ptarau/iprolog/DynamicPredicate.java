@@ -0,0 +1,165 @@
+package ptarau.iprolog;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import ptarau.iprolog.util.ArgIndex;
+import ptarau.iprolog.util.DynamicArgIndex;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+import static ptarau.iprolog.Engine.START_INDEX;
+
+/**
+ * Predicate whose clauses are added and removed once the program is loaded,
+ * under the logical update view: a call sees the clauses as they were when
+ * it was made, as candidates returns a copy of them, not changed by later
+ * additions and removals
+ *
+ * added clauses are appended to the clause numbers and to the argument
+ * indexes already built, removed ones are left in place, marked erased and
+ * skipped, until they make up half of the clauses and get compacted away
+ *
+ * all    - clause numbers, in increasing order, erased ones included
+ * index  - argument index for each argument position, built the first time
+ *          the predicate is called with that argument bound, then kept up
+ *          to date with the clauses added
+ * erased - the clauses removed but still in all and index
+ *
+ * the clauses it starts with stay in the clauses field of Predicate
+ */
+final class DynamicPredicate extends Predicate {
+
+    private final IntArrayList all;
+    private final DynamicArgIndex[] index;
+    private final IntOpenHashSet erased = new IntOpenHashSet();
+
+    DynamicPredicate(final int[] clauses, final int width, final IntFunction<int[]> keys) {
+        super(clauses, width, keys);
+        all = IntArrayList.wrap(clauses.clone());
+        index = new DynamicArgIndex[width];
+        compiled = true; // added clauses are not compiled
+    }
+
+    /**
+     * adds clause i, numbered after the clauses of the predicate
+     */
+    synchronized void add(final int i) {
+        all.add(i);
+        int[] xs = null;
+        for (int j = 1; j < index.length; j++) {
+            if (null != index[j]) {
+                xs = null == xs ? keys.apply(i) : xs;
+                index[j].add(i, xs[j]);
+            }
+        }
+    }
+
+    /**
+     * removes clause i, returning false if it is not a clause of the predicate
+     */
+    synchronized boolean remove(final int i) {
+        if (erased.contains(i) || !contains(i)) {
+            return false;
+        }
+        erased.add(i);
+        if (erased.size() > START_INDEX && 2 * erased.size() > all.size()) {
+            compact();
+        }
+        return true;
+    }
+
+    @Override
+    synchronized int[] candidates(final int[] xs) {
+        final int n = Math.min(xs.length, index.length);
+        int best = 0;
+        int count = all.size();
+        for (int i = 1; i < n && all.size() >= START_INDEX; i++) {
+            if (0 == xs[i]) {
+                continue;
+            }
+            final int c = argIndex(i).count(xs[i]);
+            if (c < count) {
+                best = i;
+                count = c;
+            }
+        }
+        if (0 == best) {
+            return skipErased(all.toIntArray());
+        }
+        int[] cs = index[best].get(xs[best]);
+        for (int i = 1; i < n && cs.length > START_INDEX; i++) {
+            if (i != best && 0 != xs[i]) {
+                cs = ArgIndex.intersect(cs, argIndex(i).get(xs[i]));
+            }
+        }
+        return skipErased(cs);
+    }
+
+    private boolean contains(final int i) {
+        int lo = 0;
+        int hi = all.size();
+        while (lo < hi) {
+            final int m = (lo + hi) >>> 1;
+            final int c = all.getInt(m);
+            if (c == i) {
+                return true;
+            }
+            if (c < i) {
+                lo = m + 1;
+            } else {
+                hi = m;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * returns the clauses of cs, a copy owned by the caller, not erased
+     */
+    private int[] skipErased(final int[] cs) {
+        if (erased.isEmpty()) {
+            return cs;
+        }
+        int k = 0;
+        for (final int c : cs) {
+            if (!erased.contains(c)) {
+                cs[k++] = c;
+            }
+        }
+        return k == cs.length ? cs : Arrays.copyOf(cs, k);
+    }
+
+    /**
+     * drops the erased clauses from the clause numbers and from the
+     * argument indexes, which get built again on demand
+     */
+    private void compact() {
+        int k = 0;
+        for (int j = 0; j < all.size(); j++) {
+            final int c = all.getInt(j);
+            if (!erased.contains(c)) {
+                all.set(k++, c);
+            }
+        }
+        all.size(k);
+        erased.clear();
+        Arrays.fill(index, null);
+    }
+
+    /**
+     * returns the index on argument position i, building it on first use
+     */
+    private DynamicArgIndex argIndex(final int i) {
+        var ix = index[i];
+        if (null == ix) {
+            ix = new DynamicArgIndex();
+            for (int j = 0; j < all.size(); j++) {
+                final int c = all.getInt(j);
+                ix.add(c, keys.apply(c)[i]);
+            }
+            index[i] = ix;
+        }
+        return ix;
+    }
+}
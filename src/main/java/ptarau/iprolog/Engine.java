@@ -1,16 +1,19 @@
 package ptarau.iprolog;
 
+import it.unimi.dsi.fastutil.HashCommon;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ptarau.iprolog.util.*;
 
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-
-import static java.lang.Integer.min;
-import static ptarau.iprolog.Tokenizer.SourceType.RESOURCE;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Implements execution mechanism
@@ -19,9 +22,45 @@ class Engine {
 
     final static private Logger logger = LoggerFactory.getLogger(Engine.class);
 
-    final static int MAXIND = 3; // number of index args
-    final static int START_INDEX = 20;
-    // switches off indexing for less then START_INDEX clauses e.g. <20
+    final static int[] NO_CLAUSES = new int[0];
+
+    final static int NO_GOALS = -1;
+
+    /**
+     * numbers at least this large are read as symbols
+     */
+    final static long MAX_NUMBER = 1 << 28;
+
+    /**
+     * solutions an independent goal solved in parallel may have - beyond
+     * them, its conjunction is solved sequentially
+     */
+    final static int MAX_SOLUTIONS = 1 << 12;
+
+    /**
+     * cells of a goal scanned for variables when checking it for independence
+     */
+    final static int MAX_SCAN = 1 << 8;
+
+    /**
+     * steps below which solving a goal in parallel does not pay for
+     * copying the heap for it
+     */
+    final static int MIN_STEPS = 1 << 12;
+
+    /**
+     * times goals of a predicate may fail to start a conjunction of
+     * independent goals before they are no longer checked for it
+     */
+    final static int MAX_MISSES = 1 << 8;
+
+    /**
+     * calls to a predicate after which its clauses are compiled to bytecode
+     */
+    final static int JIT_CALLS = 1 << 10;
+
+    final static int START_INDEX = 8;
+    // switches off indexing for predicates with less then START_INDEX clauses e.g. <8
     /**
      * tags of our heap cells - that can also be seen as
      * instruction codes in a compiled implementation
@@ -31,33 +70,61 @@ class Engine {
      * r - references pointing at arrays starting with their length marked with a:
      *
      */
-    final private static int V = 0;
-    final private static int U = 1;
-    final private static int R = 2;
-    final private static int C = 3;
-    final private static int N = 4;
-    final private static int A = 5;
-    final private static int BAD = 7;
+    final static int V = 0;
+    final static int U = 1;
+    final static int R = 2;
+    final static int C = 3;
+    final static int N = 4;
+    final static int A = 5;
+    final static int BAD = 7;
+
+    final CompiledProgram program;
+
+    /**
+     * the cells of the clauses of the program, below the heap
+     */
+    final int[] code;
+
+    /**
+     * the address the heap starts at, that of the cells of the query
+     */
+    final private int heapBase;
 
     /**
-     * trimmed down clauses ready to be quickly relocated to the heap
+     * trimmed down clauses ready to be quickly relocated to the heap, as
+     * loaded
      */
     final List<Clause> clauses;
-    final IntArrayList clauseIndex;
 
-    final Symbols symbols = new Symbols();
+    final Symbols symbols;
 
-    final IMaps imaps;
-    final List<IntMap> vmaps;
-    final private IntArrayList trail = new IntArrayList();
-    final private IntArrayList unificationStack = new IntArrayList();
-    final private Stack<Spine> spines = new Stack<>();
+    final private AtomicReferenceArray<ClauseCode> compiled;
+    final IntArrayList trail = new IntArrayList();
+    final IntArrayList unificationStack = new IntArrayList();
+    final private IntArrayList headStack = new IntArrayList();
+    final private IntArrayList touched = new IntArrayList();
+    int[] regs = new int[64];
+    final private SpineStack<Spine> spines = new SpineStack<>(Spine::new);
     Spine query;
+    private int queryHead;
+    private int codeTop;
+    private int gcWatermark = Integer.getInteger("iprolog.gc.watermark", 1 << 24);
+    private ForkJoinPool andPool = Boolean.getBoolean("iprolog.and.parallel") ? ForkJoinPool.commonPool() : null;
+    private boolean jit = Boolean.getBoolean("iprolog.jit");
+    private Tables tables;
+    final private Set<Long> fineGrained;
+    final private Long2IntOpenHashMap misses = new Long2IntOpenHashMap();
+    final private IntOpenHashSet seenVars = new IntOpenHashSet();
+    final private IntArrayList goalVars = new IntArrayList();
+    final private IntArrayList scanStack = new IntArrayList();
+    final private IntArrayList copyVars = new IntArrayList();
     /**
      * runtime areas:
      * <p>
-     * the heap contains code for and clauses their their copies
-     * created during execution
+     * the heap sits above the code of the program, shared with other
+     * engines: it holds a copy of the query clause, bound in place, and
+     * the terms created during execution - the part above the code, starting
+     * at codeTop, is collected once it grows over gcWatermark cells
      * <p>
      * the trail is an undo list for variable bindings
      * that facilitates retrying failed goals with alternative
@@ -65,25 +132,133 @@ class Engine {
      * <p>
      * the unification stack ustack helps handling term unification non-recursively
      * <p>
+     * the head stack and the registers regs help unifying goals in place with
+     * clause heads: regs holds, by offset in the clause, the values found for
+     * its variables and the heap terms its subterms were matched with
+     * <p>
      * the spines stack contains abstractions of clauses and goals and performs the
-     * functions of  both a choice-point stack and goal stack
+     * functions of a choice-point stack
+     * <p>
+     * the goal stack holds the goals left to solve, in frames made of the body
+     * goals of a clause followed by a link to the goals after them: the location
+     * of these plus one, which as a positive value cannot be mistaken for a goal
+     * <p>
+     * predicates: for each functor and arity, the clauses of the predicate
+     * and the indexes built on demand for its argument positions
+     * <p>
+     * andPool, when set, runs independent goals met side by side in a frame
+     * in parallel, while it has idle workers - except for goals of the
+     * predicates in fineGrained, found to take too few steps for it, and
+     * of those in misses, found too often not to start such a conjunction
      * <p>
-     * imaps: contains indexes for up toMAXIND>0 arg positions (0 for pred symbol itself)
+     * with jit set, the clauses of predicates called JIT_CALLS times are
+     * compiled to bytecode, kept in compiled for all the engines running
+     * the program - clauses without compiled code are interpreted
      * <p>
-     * vmaps: contains clause numbers for which vars occur in indexed arg positions
+     * tables holds the answers of the calls to tabled predicates, null when
+     * the program has none: engines evaluating calls share the tables of the
+     * engine making them, engines taking over alternatives get their own
      */
 
-    private final Heap heap = new Heap();
+    final Heap heap;
+
+    final ArrayHeap goalStack = new ArrayHeap();
 
     /**
      * Builds a new engine from a natural-language style assembler.nl file
      */
     Engine(final String programName) {
-        clauses = loadProgram(programName);
-        clauseIndex = indexClauses(clauses);
+        this(programName, new ArrayHeap());
+    }
+
+    /**
+     * Builds a new engine running on the given heap, e.g. a DirectHeap
+     * to keep large heaps outside of the java heap
+     */
+    Engine(final String programName, final Heap heap) {
+        this(new CompiledProgram(programName), heap);
+    }
+
+    /**
+     * Builds an engine running a program loaded once, that any number of
+     * engines can share, on a heap of the kind of heap
+     */
+    Engine(final CompiledProgram program, final Heap heap) {
+        this.program = program;
+        code = program.code;
+        symbols = program.symbols;
+        clauses = program.clauses;
+        compiled = program.compiled;
+        heapBase = program.query().base();
+        this.heap = heap.empty(heapBase);
+        fineGrained = ConcurrentHashMap.newKeySet();
+        tables = program.tabled.isEmpty() ? null : new Tables(program.generation);
         query = init();
-        vmaps = vcreate(MAXIND);
-        imaps = index(clauses, vmaps);
+    }
+
+    /**
+     * Builds an engine taking over the untried alternatives of the i-th spine
+     * of parent, or half of them for the spine on top, that parent is about to
+     * try: it shares the code, symbols and dispatch table of parent and starts
+     * from a copy of its heap and goal stack as they were before trying them
+     */
+    Engine(final Engine parent, final int i) {
+        this(parent);
+        tables = null == tables ? null : new Tables(program.generation);
+        final Spine S = parent.spines.get(i);
+        final boolean top = i == parent.spines.size() - 1;
+        final Spine T = top ? null : parent.spines.get(i + 1); // first spine created by trying them
+        final int htop = top ? parent.heap.size() : T.base;
+        final int trailTop = top ? parent.trail.size() - 1 : T.trailTop;
+        final int gtop = top ? parent.goalStack.size() : T.goalBase;
+        for (int w = heap.size(); w < htop; w++) {
+            heap.push(parent.heap.get(w));
+        }
+        for (int j = parent.trail.size() - 1; j > trailTop; j--) {
+            final int x = parent.trail.getInt(j);
+            if (detag(x) < htop) {
+                heap.set(detag(x), x);
+            }
+        }
+        for (int g = 0; g < gtop; g++) {
+            goalStack.push(parent.goalStack.get(g));
+        }
+
+        final int last = last(S);
+        final int k = top ? S.k + (last - S.k) / 2 : S.k;
+        if (FactTable.ALL_ROWS == S.cs) {
+            query = spines.push().init(S.hd, S.base, S.goals, S.goalBase, -1, S.cs);
+            query.k = k;
+            query.end = last;
+            S.end = k;
+        } else {
+            final int[] cs = Arrays.copyOfRange(S.cs, k, last);
+            S.cs = Arrays.copyOfRange(S.cs, S.k, k);
+            S.k = 0;
+            query = spines.push().init(S.hd, S.base, S.goals, S.goalBase, -1, cs);
+        }
+        query.xs = S.xs;
+        query.facts = S.facts;
+    }
+
+    /**
+     * Builds an empty engine sharing the code, symbols and dispatch table of parent
+     */
+    private Engine(final Engine parent) {
+        program = parent.program;
+        code = parent.code;
+        heapBase = parent.heapBase;
+        heap = parent.heap.empty(heapBase);
+        symbols = parent.symbols;
+        clauses = parent.clauses;
+        compiled = parent.compiled;
+        queryHead = parent.queryHead;
+        codeTop = parent.codeTop;
+        gcWatermark = parent.gcWatermark;
+        andPool = parent.andPool;
+        jit = parent.jit;
+        fineGrained = parent.fineGrained;
+        tables = parent.tables;
     }
 
     /**
@@ -92,231 +267,53 @@ class Engine {
      * ones are always positive - a simple way to ensure we do not mix them up
      * at runtime
      */
-    private static int tag(final int t, final int w) {
+    static int tag(final int t, final int w) {
         return -((w << 3) + t);
     }
 
     /**
      * removes tag after flipping sign
      */
-    private static int detag(final int w) {
+    static int detag(final int w) {
         return -w >> 3;
     }
 
     /**
      * extracts the tag of a cell
      */
-    private static int tagOf(final int w) {
+    static int tagOf(final int w) {
         return -w & 7;
     }
 
     /**
-     * expands a "Xs lists .." statements to "Xs holds" statements
-     */
-    private static List<List<String>> maybeExpand(final List<String> Ws) {
-        var W = Ws.get(0);
-        if (W.length() < 2 || !"l:".equals(W.substring(0, 2))) {
-            return null;
-        }
-
-        int l = Ws.size();
-        var V = W.substring(2);
-        return IntStream.range(1, l)
-                .mapToObj(i -> {
-                    var Vi = 1 == i ? V : V + "__" + (i - 1);
-                    var Vii = V + "__" + i;
-                    return List.of("h:" + Vi, "c:list", Ws.get(i), i == l - 1 ? "c:nil" : "v:" + Vii);
-                })
-                .collect(Collectors.toList());
-    }
-
-    /**
-     * expands, if needed, "lists" statements in sequence of statements
+     * packs the functor and arity cells of a predicate into a dispatch key
      */
-    private static List<List<String>> mapExpand(final List<List<String>> Wss) {
-        List<List<String>> Rss = new ArrayList<>();
-        for (var Ws : Wss) {
-            var Hss = maybeExpand(Ws);
-            if (Hss != null) {
-                Rss.addAll(Hss);
-            } else {
-                Rss.add(new ArrayList<>(Ws));
-            }
-        }
-        return Rss;
-    }
-
-    private static IntArrayList indexClauses(final List<Clause> clauses) {
-        var l = clauses.size();
-        var index = new IntArrayList(l);
-        for (int i = 0; i < l; i++) {
-            index.add(i);
-        }
-        return index;
+    static long predicateKey(final int functor, final int arity) {
+        return (long) functor << 32 | arity & 0xFFFFFFFFL;
     }
 
     /**
      * true if cell x is a variable
      * assumes that variables are tagged with 0 or 1
      */
-    private static boolean isVAR(final int x) {
+    static boolean isVAR(final int x) {
         return tagOf(x) < 2;
     }
 
     /**
-     * relocates a variable or array reference cell by b
-     * assumes var/ref codes V,U,R are 0,1,2
+     * true if cell x is a symbol or a number
      */
-    private static int relocate(final int b, final int cell) {
-        return tagOf(cell) < 3 ? cell + b : cell;
-    }
-
-    public static List<IntMap> vcreate(int l) {
-        List<IntMap> vss = new ArrayList<>(l);
-        for (int i = 0; i < l; i++) {
-            vss.add(new IntMap());
-        }
-        return vss;
-    }
-
-    static void put(IMaps imaps, List<IntMap> vss, int[] keys, int val) {
-        for (int i = 0; i < imaps.size(); i++) {
-            var key = keys[i];
-            if (key != 0) {
-                imaps.put(i, key, val);
-            } else {
-                vss.get(i).add(val);
-            }
-        }
+    static boolean isConstant(final int x) {
+        final int t = tagOf(x);
+        return C == t || N == t;
     }
 
     /**
-     * loads a program from a .nl file of
-     * "natural language" equivalents of Prolog/HiLog statements
-     */
-    List<Clause> loadProgram(final String programName) {
-        List<List<List<String>>> Wsss = Tokenizer.toSentences(programName, RESOURCE);
-        List<Clause> Cs = new ArrayList<>();
-
-        for (final var Wss : Wsss) {
-            logger.info("Sentence: {}", Wss);
-            // clause starts here
-
-            Map<String, IntArrayList> refs = new LinkedHashMap<>();
-            var cs = new IntArrayList();
-            var gs = new IntArrayList();
-
-            var Rss = mapExpand(Wss);
-            var k = 0;
-            for (var ws : Rss) {
-
-                // head or body element starts here
-
-                final var l = ws.size();
-                gs.push(tag(R, k++));
-                cs.push(tag(A, l));
-
-                for (String w : ws) {
-
-                    // head or body subterm starts here
-
-                    if (1 == w.length()) {
-                        w = "c:" + w;
-                    }
-
-                    final var L = w.substring(2);
-
-                    switch (w.charAt(0)) {
-                        case 'c' -> {
-                            cs.push(encode(C, L));
-                            k++;
-                        }
-                        case 'n' -> {
-                            cs.push(encode(N, L));
-                            k++;
-                        }
-                        case 'v' -> {
-                            var Is = refs.get(L);
-                            if (null == Is) {
-                                Is = new IntArrayList();
-                                refs.put(L, Is);
-                            }
-                            Is.push(k);
-                            cs.push(tag(BAD, k)); // just in case we miss this
-                            k++;
-                        }
-                        case 'h' -> {
-                            var Is = refs.get(L);
-                            if (null == Is) {
-                                Is = new IntArrayList();
-                                refs.put(L, Is);
-                            }
-                            Is.push(k - 1);
-                            cs.set(k - 1, tag(A, l - 1));
-                            gs.popInt();
-                        }
-                        default -> Main.prettyPrint("FORGOTTEN=" + w);
-                    } // end subterm
-                } // end element
-            } // end clause
-
-            // linker
-
-            for (IntArrayList Is : refs.values()) {
-                // finding the A among refs
-                int leader = -1;
-                for (final int j : Is) {
-                    if (A == tagOf(cs.getInt(j))) {
-                        leader = j;
-
-                        break;
-                    }
-                }
-                if (-1 == leader) {
-                    // for vars, first V others U
-                    leader = Is.getInt(0);
-                    for (final int i : Is) {
-                        if (i == leader) {
-                            cs.set(i, tag(V, i));
-                        } else {
-                            cs.set(i, tag(U, leader));
-                        }
-
-                    }
-                } else {
-                    for (final int i : Is) {
-                        if (i == leader) {
-                            continue;
-                        }
-                        cs.set(i, tag(R, leader));
-                    }
-                }
-            }
-
-            var neck = 1 == gs.size() ? cs.size() : detag(gs.getInt(1));
-            var tgs = gs.toArray(new int[] {});
-            Clause C = putClause(cs.toArray(new int[] {}), tgs, neck);
-            Cs.add(C);
-        }
-        return Cs;
-    }
-
-    /*
-     * encodes string constants into symbols while leaving
-     * other data types untouched
+     * relocates a variable or array reference cell by b
+     * assumes var/ref codes V,U,R are 0,1,2
      */
-    private int encode(final int t, final String s) {
-        int w;
-        try {
-            w = Integer.parseInt(s);
-        } catch (final Exception e) {
-            if (C == t) {
-                w = symbols.add(s);
-            } else
-                //pp("bad in encode=" + t + ":" + s);
-                return tag(BAD, 666);
-        }
-        return tag(t, w);
+    static int relocate(final int b, final int cell) {
+        return tagOf(cell) < 3 ? cell + b : cell;
     }
 
     /**
@@ -337,7 +334,7 @@ class Engine {
      * removes binding for variable cells
      * above savedTop
      */
-    private void unwindTrail(final int savedTop) {
+    void unwindTrail(final int savedTop) {
         while (savedTop < trail.size() - 1) {
             var href = trail.popInt();
             setRef(href, href);
@@ -349,7 +346,7 @@ class Engine {
      * until it points to an unbound root variable or some
      * non-variable cell
      */
-    private int dereference(int x) {
+    int dereference(int x) {
         while (isVAR(x)) {
             var r = getRef(x);
             if (r == x) {
@@ -383,7 +380,9 @@ class Engine {
      * including a displayer
      */
     Object exportTerm(int x) {
-        x = dereference(x);
+        while (isVAR(x) && cell(detag(x)) != x) {
+            x = cell(detag(x));
+        }
 
         final var tag = tagOf(x);
         final var value = detag(x);
@@ -393,7 +392,7 @@ class Engine {
             case N -> value;
             case V -> "V" + value;
             case R -> {
-                final int a = heap.get(value);
+                final int a = cell(value);
                 if (A != tagOf(a)) {
                     yield "*** should be A, found=" + showCell(a);
                 }
@@ -402,7 +401,7 @@ class Engine {
                 final var k = value + 1;
                 for (int i = 0; i < n; i++) {
                     final var j = k + i;
-                    arr[i] = exportTerm(heap.get(j));
+                    arr[i] = exportTerm(cell(j));
                 }
                 yield arr;
             }
@@ -410,6 +409,13 @@ class Engine {
         };
     }
 
+    /**
+     * returns the cell at address w, in the code or in the heap
+     */
+    private int cell(final int w) {
+        return w < heapBase ? code[w] : heap.get(w);
+    }
+
     /**
      * raw display of a cell as tag : value
      */
@@ -434,7 +440,7 @@ class Engine {
     String showCells(final int base, final int len) {
         final var builder = new StringBuilder();
         for (int k = 0; k < len; k++) {
-            final var instr = heap.get(base + k);
+            final var instr = cell(base + k);
             builder.append("[").append(base + k).append("]");
             builder.append(showCell(instr));
             builder.append(" ");
@@ -444,9 +450,9 @@ class Engine {
 
     /**
      * unification algorithm for cells X1 and X2 on ustack that also takes care
-     * to trail bindings below a given heap address "base"
+     * to trail bindings of variables below a given heap address "hb"
      */
-    private boolean unify(final int base) {
+    boolean unify(final int hb) {
         while (!unificationStack.isEmpty()) {
             final int x1 = dereference(unificationStack.popInt());
             final int x2 = dereference(unificationStack.popInt());
@@ -459,18 +465,18 @@ class Engine {
                 if (isVAR(x1)) { /* unb. var. v1 */
                     if (isVAR(x2) && w2 > w1) { /* unb. var. v2 */
                         heap.set(w2, x1);
-                        if (w2 <= base) {
+                        if (w2 < hb) {
                             trail.push(x2);
                         }
                     } else { // x2 nonvar or older
                         heap.set(w1, x2);
-                        if (w1 <= base) {
+                        if (w1 < hb) {
                             trail.push(x1);
                         }
                     }
                 } else if (isVAR(x2)) { /* x1 is NONVAR */
                     heap.set(w2, x1);
-                    if (w2 <= base) {
+                    if (w2 < hb) {
                         trail.push(x2);
                     }
                 } else if (R == t1 && R == t2) { // both should be R
@@ -511,64 +517,234 @@ class Engine {
     }
 
     /**
-     * places a clause built by the Toks reader on the heap
+     * pushes slice[from,to] of the code starting at base to heap
      */
-    Clause putClause(final int[] cs, final int[] gs, final int neck) {
-        var base = heap.size();
-        var b = tag(V, base);
-        var len = cs.length;
-        pushCells(b, 0, len, cs);
-        for (int i = 0; i < gs.length; i++) {
-            gs[i] = relocate(b, gs[i]);
+    private void pushCells(final int b, final int from, final int to, final int base) {
+        for (int i = from; i < to; i++) {
+            heap.push(relocate(b, code[base + i]));
         }
-        var xs = getIndexables(gs[0]);
-        return new Clause(len, gs, base, neck, xs);
     }
 
     /**
-     * pushes slice[from,to] of array cs of cells to heap
+     * copies and relocates head of clause at offset from heap to heap
+     */
+    int pushHead(final int b, final Clause C) {
+        pushCells(b, 0, C.neck(), C.base());
+        var head = C.hgs()[0];
+        return relocate(b, head);
+    }
+
+    /**
+     * unifies a goal with the head of clause C0 where the clause lies, without
+     * copying the head to the heap first: clause variables get their values
+     * in regs and clause subterms are only copied to the heap when a goal
+     * variable gets bound to them - bindings of variables below hb are trailed
      */
-    private void pushCells(final int b, final int from, final int to, final int base) {
-        for (int i = from; i < to; i++) {
-            heap.push(relocate(b, heap.get(base + i)));
+    boolean unifyHead(final int goal, final Clause C0, final int hb) {
+        clearRegs(C0.len());
+        final int h = detag(C0.hgs()[0]);
+        final int g = detag(goal);
+        if (code[h] != heap.get(g)) {
+            return false;
+        }
+        headStack.clear();
+        for (int i = detag(code[h]); i > 0; i--) {
+            headStack.push(h + i);
+            headStack.push(heap.get(g + i));
+        }
+        while (!headStack.isEmpty()) {
+            final int x = dereference(headStack.popInt());
+            final int a = headStack.popInt();
+            final int t = code[a];
+            switch (tagOf(t)) {
+                case V, U -> {
+                    final int o = detag(t) - C0.base();
+                    final int v = regs[o];
+                    if (0 == v) {
+                        setReg(o, x);
+                    } else if (!unifyCells(v, x, hb)) {
+                        return false;
+                    }
+                }
+                case C, N -> {
+                    if (isVAR(x)) {
+                        bind(x, t, hb);
+                    } else if (x != t) {
+                        return false;
+                    }
+                }
+                case R -> {
+                    final int p = detag(t);
+                    final int v = regs[p - C0.base()];
+                    if (0 != v) {
+                        if (!unifyCells(v, x, hb)) {
+                            return false;
+                        }
+                    } else if (isVAR(x)) {
+                        bind(x, materialize(p, C0), hb);
+                    } else if (R == tagOf(x) && heap.get(detag(x)) == code[p]) {
+                        setReg(p - C0.base(), x);
+                        final int q = detag(x);
+                        for (int i = detag(code[p]); i > 0; i--) {
+                            headStack.push(p + i);
+                            headStack.push(heap.get(q + i));
+                        }
+                    } else {
+                        return false;
+                    }
+                }
+                default -> {
+                    return false;
+                }
+            }
         }
+        return true;
     }
 
     /**
-     * pushes slice[from,to] of array cs of cells to heap
+     * copies the subterm of clause C0 at p to the heap, taking
+     * the values of its variables and subterms from regs, and
+     * returns a reference to the copy - the subterms met on the
+     * way are copied in turn from the head stack, above what
+     * unifyHead left there, so long lists take no java stack
      */
-    private void pushCells(final int b, final int from, final int to, final int[] cs) {
-        for (int i = from; i < to; i++) {
-            heap.push(relocate(b, cs[i]));
+    private int materialize(final int p, final Clause C0) {
+        final int mark = headStack.size();
+        final int ref = allocate(p, C0);
+        while (headStack.size() > mark) {
+            final int q = headStack.popInt();
+            final int s = headStack.popInt();
+            final int n = detag(code[s]);
+            for (int i = 1; i <= n; i++) {
+                final int t = code[s + i];
+                final int tag = tagOf(t);
+                int v = t;
+                if (tag < C) {
+                    final int o = detag(t) - C0.base();
+                    v = regs[o];
+                    if (0 == v) {
+                        if (R == tag) {
+                            v = allocate(detag(t), C0);
+                        } else {
+                            v = tag(V, q + i);
+                            setReg(o, v);
+                        }
+                    }
+                }
+                heap.set(q + i, v);
+            }
         }
+        return ref;
     }
 
     /**
-     * copies and relocates head of clause at offset from heap to heap
+     * pushes the functor cell of the subterm of clause C0 at p on the heap,
+     * with room for its arguments, for materialize to fill in
      */
-    private int pushHead(final int b, final Clause C) {
-        pushCells(b, 0, C.neck(), C.base());
-        var head = C.hgs()[0];
-        return relocate(b, head);
+    private int allocate(final int p, final Clause C0) {
+        final int q = heap.getTop() + 1;
+        final int ref = tag(R, q);
+        setReg(p - C0.base(), ref);
+        heap.push(code[p]);
+        for (int i = detag(code[p]); i > 0; i--) {
+            heap.push(0);
+        }
+        headStack.push(p);
+        headStack.push(q);
+        return ref;
     }
 
     /**
-     * copies and relocates body of clause at offset from heap to heap
-     * while also placing head as the first element of array gs that
-     * when returned contains references to the toplevel spine of the clause
+     * copies the body of clause C0 to the heap once its head unified with
+     * goal: references to clause variables and subterms with a value in
+     * regs are replaced by that value, the others are relocated - returns
+     * the goal followed by the references to the body goals
      */
-    private int[] pushBody(final int b, final int head, final Clause C) {
-        pushCells(b, C.neck(), C.len(), C.base());
-        final var l = C.hgs().length;
+    int[] pushBody(final int goal, final Clause C0) {
+        final int from = C0.base() + C0.neck();
+        final int to = C0.base() + C0.len();
+        final int b = tag(V, heap.getTop() + 1 - from);
+        for (int i = from; i < to; i++) {
+            heap.push(bodyCell(b, code[i], C0.base()));
+        }
+        final var l = C0.hgs().length;
         final var gs = new int[l];
-        gs[0] = head;
+        gs[0] = goal;
         for (int k = 1; k < l; k++) {
-            final var cell = C.hgs()[k];
-            gs[k] = relocate(b, cell);
+            gs[k] = bodyCell(b, C0.hgs()[k], C0.base());
+        }
+        return gs;
+    }
+
+    /**
+     * copies a clause added once the program was loaded, that holds its
+     * cells, to the heap and unifies goal with its head - returns the goal
+     * followed by the references to the body goals, null if they do not unify
+     */
+    private int[] pushClause(final int goal, final Clause C0, final int hb) {
+        final int b = tag(V, heap.getTop() + 1);
+        for (final int c : C0.cells()) {
+            heap.push(relocate(b, c));
+        }
+        final int[] hgs = C0.hgs();
+        if (!unifyCells(goal, relocate(b, hgs[0]), hb)) {
+            return null;
+        }
+        final var gs = new int[hgs.length];
+        gs[0] = goal;
+        for (int k = 1; k < gs.length; k++) {
+            gs[k] = relocate(b, hgs[k]);
         }
         return gs;
     }
 
+    private int bodyCell(final int b, final int cell, final int base) {
+        if (tagOf(cell) < 3) {
+            final int v = regs[detag(cell) - base];
+            return 0 == v ? cell + b : v;
+        }
+        return cell;
+    }
+
+    /**
+     * binds unbound variable x to cell v, trailing
+     * the binding if x lies below hb
+     */
+    final void bind(final int x, final int v, final int hb) {
+        final int w = detag(x);
+        heap.set(w, v);
+        if (w < hb) {
+            trail.push(x);
+        }
+    }
+
+    final boolean unifyCells(final int x1, final int x2, final int hb) {
+        unificationStack.clear();
+        unificationStack.push(x2);
+        unificationStack.push(x1);
+        return unify(hb);
+    }
+
+    final void setReg(final int o, final int v) {
+        regs[o] = v;
+        touched.push(o);
+    }
+
+    /**
+     * resets the registers set by the last head unification, making
+     * sure they can hold the cells of a clause of length len
+     */
+    final void clearRegs(final int len) {
+        if (regs.length < len) {
+            regs = new int[Math.max(len, 2 * regs.length)];
+        } else {
+            for (int i = touched.size() - 1; i >= 0; i--) {
+                regs[touched.getInt(i)] = 0;
+            }
+        }
+        touched.clear();
+    }
+
     /**
      * makes, if needed, registers associated to top goal of a Spine
      * these registers will be reused when matching with candidate clauses
@@ -579,45 +755,133 @@ class Engine {
         if (G.xs != null) {
             return;
         }
-        final var p = 1 + detag(goal);
-        final var n = Math.min(MAXIND, detag(getRef(goal)));
-        final var xs = IntStream.range(0, n)
-                .map(i -> cell2index(dereference(heap.get(p + i))))
-                .toArray();
+        final var xs = getIndexables(goal);
         G.xs = xs;
-        if (imaps != null) {
-            G.cs = IMap.get(imaps, vmaps, xs);
+        G.cs = candidates(G, goal, xs);
+        if (FactTable.ALL_ROWS == G.cs) {
+            G.end = G.facts.size();
+        }
+    }
+
+    /**
+     * returns the number of candidates of spine G, or the row after the
+     * last one when it tries all the rows of its fact table
+     */
+    private static int last(final Spine G) {
+        return FactTable.ALL_ROWS == G.cs ? G.end : G.cs.length;
+    }
+
+    /**
+     * returns candidate k of spine G, a row of its fact table if it has one
+     */
+    private static int candidate(final Spine G, final int k) {
+        return FactTable.ALL_ROWS == G.cs ? k : G.cs[k];
+    }
+
+    /**
+     * returns the clauses of the predicate a goal belongs to, narrowed
+     * down by the argument index of the predicate if it has one - goals
+     * with a variable functor can match any clause - or the rows of its
+     * fact table, then set as the facts of spine G
+     */
+    private int[] candidates(final Spine G, final int goal, final int[] xs) {
+        final int p = detag(goal);
+        final int functor = dereference(heap.get(p + 1));
+        if (!isConstant(functor)) {
+            if (null != tables) {
+                tables.uses(Tables.ANY);
+            }
+            return program.allClauses();
+        }
+        final int arity = heap.get(p);
+        final long key = predicateKey(functor, arity);
+        if (null != tables) {
+            tables.uses(key);
+        }
+        final var predicates = program.predicates;
+        var P = predicates.get(key);
+        if (null == P) {
+            P = predicates.get(predicateKey(0, arity));
+        }
+        if (null == P) {
+            return NO_CLAUSES;
         }
+        if (jit && !P.compiled && P.calls.incrementAndGet() == JIT_CALLS) {
+            program.compile(P);
+            P.compiled = true;
+            logger.debug("jit: compiled {} clauses of {}/{}", P.clauses.length, symbols.get(detag(functor)), detag(arity) - 1);
+        }
+        if (P instanceof FactTable T) {
+            G.facts = T;
+        }
+        return P.candidates(xs);
     }
 
+    /**
+     * extracts the index vector of a term: the index keys of its
+     * functor, at position 0, and of each of its arguments
+     */
     private int[] getIndexables(final int ref) {
         final var p = 1 + detag(ref);
         final var n = detag(getRef(ref));
-        return IntStream.range(0, min(n, MAXIND))
-                .map(i -> cell2index(dereference(heap.get(p + i))))
-                .toArray();
+        final var xs = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = cell2index(dereference(heap.get(p + i)));
+        }
+        return xs;
     }
 
+    /**
+     * index key of a dereferenced cell: constants stand for themselves,
+     * compound terms for their principal functor and arity, 0 marks
+     * variables and compound terms with a variable functor
+     */
     private int cell2index(final int cell) {
         return switch (tagOf(cell)) {
-            case R -> getRef(cell);
+            case R -> functorKey(cell);
             case C, N -> cell;
             default -> 0;
         };
     }
 
+    /**
+     * hashes the functor and arity of a compound term into a positive
+     * key - collisions only let more candidate clauses through
+     */
+    private int functorKey(final int ref) {
+        final int p = detag(ref);
+        return functorKey(heap.get(p), dereference(heap.get(p + 1)));
+    }
+
+    /**
+     * key of a compound term with the given arity cell and dereferenced
+     * functor cell, 0 when the functor is not a constant
+     */
+    static int functorKey(final int arity, final int functor) {
+        if (!isConstant(functor)) {
+            return 0;
+        }
+        return HashCommon.mix(31 * arity + functor) & Integer.MAX_VALUE | 1;
+    }
+
     /**
      * tests if the head of a clause, not yet copied to the heap
      * for execution could possibly match the current goal, an
      * abstraction of which has been placed in xs
      */
-    private boolean match(final int[] xs, final Clause clause) {
-        return IntStream.range(0, MAXIND)
-                .allMatch(i -> {
-                    final var x = xs[i];
-                    final var y = clause.xs()[i];
-                    return x == 0 || y == 0 || x == y;
-                });
+    private static boolean match(final int[] xs, final Clause clause) {
+        final int[] ys = clause.xs();
+        if (xs.length != ys.length) {
+            return false;
+        }
+        for (int i = 0; i < xs.length; i++) {
+            final int x = xs[i];
+            final int y = ys[i];
+            if (x != 0 && y != 0 && x != y) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -626,69 +890,791 @@ class Engine {
      * first goal in the list with a clause that successfully
      * unifies with it - in which case places the goals of the
      * clause at the top of the new list of goals, in reverse order
+     * <p>
+     * when no other clause can match the goal, the spine is deterministic:
+     * it is reused for the new goals instead of staying behind as a choice
+     * point, which keeps tail recursive predicates in constant spine space,
+     * and bindings of variables created since the spine need no trailing
+     * as failing discards them together with its part of the heap
      */
     private Spine unfold(final Spine G) {
+        if (null != G.and) {
+            return unfoldConjunction(G);
+        }
 
         final int trailTop = trail.size() - 1;
         final int htop = heap.getTop();
         final int base = htop + 1;
+        final int gtop = goalStack.size();
 
-        final int goal = G.goals.head();
+        final int goal = goalStack.get(G.goals);
 
-        makeIndexArgs(G, goal);
+        if (null == G.xs && isUpdate(goal)) {
+            G.and = update(G.goals);
+            return unfoldConjunction(G);
+        }
 
-        final int last = G.cs.size();
-        for (int k = G.k; k < last; k++) {
-            final Clause C0 = clauses.get(G.cs.getInt(k));
+        if (null == G.xs && null != tables && isTabled(goal)) {
+            G.and = tabled(G.goals);
+            return unfoldConjunction(G);
+        }
 
-            if (!match(G.xs, C0)) {
-                continue;
+        if (null == G.xs && null != andPool) { // goal not unfolded yet
+            G.and = conjunction(G.goals);
+            if (null != G.and) {
+                return unfoldConjunction(G);
             }
+        }
 
-            final int base0 = base - C0.base();
-            final int b = tag(V, base0);
-            final int head = pushHead(b, C0);
-
-            unificationStack.clear(); // set up unification stack
+        makeIndexArgs(G, goal);
 
-            unificationStack.push(head);
-            unificationStack.push(goal);
+        if (null != G.facts) {
+            return unfoldFacts(G, goal);
+        }
 
-            if (!unify(base)) {
+        final int last = G.cs.length;
+        for (int k = nextClause(G, G.k); k < last; ) {
+            final int c = G.cs[k];
+            final Clause C0 = clause(c);
+            final int next = nextClause(G, k + 1);
+            final boolean deterministic = next == last;
+            final int hb = deterministic ? G.base : base;
+
+            // clauses numbered past those loaded were added since, with their cells
+            final ClauseCode J = c < compiled.length() ? compiled.get(c) : null;
+            final int[] gs;
+            if (null != J) {
+                gs = J.unifyHead(this, goal, hb) ? J.pushBody(this, goal) : null;
+            } else if (c < compiled.length()) {
+                gs = unifyHead(goal, C0, hb) ? pushBody(goal, C0) : null;
+            } else {
+                gs = pushClause(goal, C0, hb);
+            }
+            if (null == gs) {
                 unwindTrail(trailTop);
                 heap.setTop(htop);
+                k = next;
                 continue;
             }
-            final int[] gs = pushBody(b, head, C0);
-            final MyIntList newGoals = MyIntList.app(gs, G.goals.tail()).tail();
-            G.k = k + 1;
-            if (MyIntList.isEmpty(newGoals)) {
+            final int tail = nextGoals(G.goals);
+            G.k = next;
+            if (1 == gs.length && NO_GOALS == tail) {
                 return answer(trailTop);
+            } else if (deterministic) {
+                // frames above the one of the remaining goals are only reachable from G
+                goalStack.setTop(Math.max(G.goalBase, frameEnd(tail)) - 1);
+                G.hd = goal;
+                G.goals = pushGoals(gs, tail);
+                G.k = 0;
+                G.xs = null;
+                G.cs = program.clauseIndex;
+                return G;
             } else {
-                return new Spine(gs, base, G.goals.tail(), trailTop, 0, clauseIndex);
+                return spines.push().init(goal, base, pushGoals(gs, tail), gtop, trailTop, program.clauseIndex);
             }
         } // end for
+        G.k = last;
         return null;
     }
 
     /**
-     * extracts a query - by convention of the form
-     * goal(Vars):-body to be executed by the engine
-     */
-    Clause getQuery() {
-        return clauses.get(clauses.size() - 1);
-    }
-
-    /**
-     * returns the initial spine built from the
-     * query from which execution starts
+     * tries the rows of the fact table of spine G left as candidates for
+     * its goal, as unfold tries clauses: the goal unifies with a row by
+     * binding its arguments to the cells of the row, with nothing pushed
+     * to the heap, and leaves no goals of its own
      */
-    Spine init() {
-        var base = heap.size();
+    private Spine unfoldFacts(final Spine G, final int goal) {
+        final int trailTop = trail.size() - 1;
+        final int htop = heap.getTop();
+        final int base = htop + 1;
+        final int gtop = goalStack.size();
+
+        final FactTable T = G.facts;
+        final int last = last(G);
+        for (int k = nextClause(G, G.k); k < last; ) {
+            final int next = nextClause(G, k + 1);
+            final boolean deterministic = next == last;
+            if (!unifyRow(goal, T, candidate(G, k), deterministic ? G.base : base)) {
+                unwindTrail(trailTop);
+                k = next;
+                continue;
+            }
+            final int tail = nextGoals(G.goals);
+            G.k = next;
+            if (NO_GOALS == tail) {
+                return answer(trailTop);
+            } else if (deterministic) {
+                goalStack.setTop(Math.max(G.goalBase, frameEnd(tail)) - 1);
+                G.hd = goal;
+                G.goals = tail;
+                G.k = 0;
+                G.xs = null;
+                G.cs = program.clauseIndex;
+                G.facts = null;
+                return G;
+            } else {
+                return spines.push().init(goal, base, tail, gtop, trailTop, program.clauseIndex);
+            }
+        }
+        G.k = last;
+        return null;
+    }
+
+    /**
+     * unifies the arguments of goal with the cells of row of fact table T,
+     * constants all of them, binding those that are unbound variables
+     */
+    private boolean unifyRow(final int goal, final FactTable T, final int row, final int hb) {
+        final int p = detag(goal) + 1;
+        for (int i = 1; i < T.width; i++) {
+            final int x = dereference(heap.get(p + i));
+            final int v = T.cell(i, row);
+            if (isVAR(x)) {
+                bind(x, v, hb);
+            } else if (x != v) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * joins the next combination of solutions of the independent goals of
+     * spine G into the heap, by unifying each goal with the instance its
+     * solution gives, and goes on with the goals after them - the spine
+     * is reused once the combination is the last one
+     */
+    private Spine unfoldConjunction(final Spine G) {
+        final Conjunction J = G.and;
+
+        final int trailTop = trail.size() - 1;
+        final int htop = heap.getTop();
+        final int base = htop + 1;
+        final int gtop = goalStack.size();
+
+        while (G.k < J.size) {
+            final int k = G.k++;
+            final boolean deterministic = G.k == J.size;
+            final int hb = deterministic ? G.base : base;
+            boolean unified = true;
+            for (int i = 0; unified && i < J.solutions.length; i++) {
+                final int instance = pushSolution(J.solution(i, k));
+                unified = unifyCells(goalStack.get(J.first + i), instance, hb);
+            }
+            if (!unified) {
+                unwindTrail(trailTop);
+                heap.setTop(htop);
+                continue;
+            }
+            final int tail = J.after;
+            if (NO_GOALS == tail) {
+                return answer(trailTop);
+            } else if (deterministic) {
+                goalStack.setTop(Math.max(G.goalBase, frameEnd(tail)) - 1);
+                G.goals = tail;
+                G.k = 0;
+                G.xs = null;
+                G.cs = program.clauseIndex;
+                G.and = null;
+                return G;
+            } else {
+                return spines.push().init(G.hd, base, tail, gtop, trailTop, program.clauseIndex);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * true if goal is unfolded against the clauses of its predicate, rather
+     * than solved as a conjunction by unfold, as updates and tabled goals
+     * are and independent goals may be
+     */
+    private boolean unfoldsClauses(final int goal) {
+        return !isUpdate(goal) && (null == tables || !isTabled(goal)) && null == andPool;
+    }
+
+    /**
+     * true if goal is assert F or retract F
+     */
+    private boolean isUpdate(final int goal) {
+        final int p = detag(goal);
+        if (tag(A, 2) != heap.get(p)) {
+            return false;
+        }
+        final int functor = dereference(heap.get(p + 1));
+        return program.assertSymbol == functor || program.retractSymbol == functor;
+    }
+
+    /**
+     * adds or removes the fact F of the goal assert F or retract F at
+     * location goals, returning the instance of the goal it succeeds with
+     * as the only alternative of its spine, or none when it fails
+     */
+    private Conjunction update(final int goals) {
+        final int goal = goalStack.get(goals);
+        final int p = detag(goal);
+        final int f = dereference(heap.get(p + 2));
+        final int[] instance;
+        if (program.assertSymbol == dereference(heap.get(p + 1))) {
+            program.addFact(copyTerm(f));
+            instance = copyTerm(goal);
+        } else {
+            instance = retract(goal, f);
+        }
+        final int next = goalStack.get(goals + 1);
+        return new Conjunction(goals, next < 0 ? goals + 1 : next - 1, new int[][][]{null == instance ? new int[0][] : new int[][]{instance}});
+    }
+
+    /**
+     * removes the first fact of its predicate f unifies with, returning the
+     * instance of goal, retract f, the unification gives - null if there is none
+     */
+    private int[] retract(final int goal, final int f) {
+        if (R != tagOf(f) || !isConstant(dereference(heap.get(detag(f) + 1)))) {
+            throw new IllegalArgumentException("Not a fact with a constant functor: " + showTerm(f));
+        }
+        final long key = predicateKey(dereference(heap.get(detag(f) + 1)), heap.get(detag(f)));
+        final Predicate P = program.clausesOf(key);
+        if (null == P) {
+            return null;
+        }
+        final int trailTop = trail.size() - 1;
+        final int htop = heap.getTop();
+        for (final int i : P.candidates(getIndexables(f))) {
+            final Clause C0 = clause(i);
+            if (1 != C0.hgs().length) {
+                continue;
+            }
+            final boolean unified = null != C0.cells() ? null != pushClause(f, C0, htop + 1) : unifyHead(f, C0, htop + 1);
+            final int[] instance = unified && program.removeClause(key, i) ? copyTerm(goal) : null;
+            unwindTrail(trailTop);
+            heap.setTop(htop);
+            if (null != instance) {
+                return instance;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * true if goal is a call to a tabled predicate
+     */
+    private boolean isTabled(final int goal) {
+        final int p = detag(goal);
+        final int functor = dereference(heap.get(p + 1));
+        return isConstant(functor) && program.tabled.contains(predicateKey(functor, heap.get(p)));
+    }
+
+    /**
+     * returns the answers of the tabled goal at location goals as the
+     * alternatives of its spine: those in its table once complete, those
+     * found so far if it is being evaluated, otherwise its table gets
+     * evaluated first
+     */
+    private Conjunction tabled(final int goals) {
+        final int goal = goalStack.get(goals);
+        final Tables.Table T = tables.get(copyTerm(goal));
+        tables.consumed(T);
+        if (!T.complete) {
+            if (T.depth >= 0) {
+                tables.dependsOn(T.depth);
+            } else {
+                evaluate(goal, T);
+            }
+        }
+        final int next = goalStack.get(goals + 1);
+        return new Conjunction(goals, next < 0 ? goals + 1 : next - 1, new int[][][]{T.answers()});
+    }
+
+    /**
+     * adds the answers of goal to its table T, running it against the clauses
+     * of its predicate, in an engine of its own, until an iteration adds no
+     * answer to any table
+     */
+    private void evaluate(final int goal, final Tables.Table T) {
+        tables.push(T);
+        final int[] call = copyTerm(goal);
+        long added;
+        do {
+            added = tables.added;
+            final var E = new Engine(this);
+            final int g = E.pushSolution(call);
+            E.codeTop = E.heap.size();
+            E.queryHead = g;
+            E.goalStack.push(g);
+            E.goalStack.push(NO_GOALS + 1);
+            E.makeIndexArgs(E.spines.push().init(g, E.heap.size(), 0, 0, -1, program.clauseIndex), g);
+            for (Spine A; null != (A = E.yield_()); ) {
+                tables.add(T, E.copyTerm(A.hd));
+                E.unwindTrail(A.trailTop);
+            }
+        } while (added != tables.added);
+        tables.pop(T);
+        logger.debug("table: {} answers of {}, {}", T.answers.size(), showTerm(goal), T.complete ? "complete" : "incomplete");
+    }
+
+    /**
+     * returns the independent goals at the front of the frame part starting
+     * at location goals, solved in parallel, or null when there are not
+     * two of them or they are better solved sequentially - goals are
+     * independent when they share no unbound variables, so that none of
+     * them can constrain the solutions of another
+     */
+    private Conjunction conjunction(final int goals) {
+        if (null != tables || goalStack.get(goals + 1) >= 0 || andPool.getActiveThreadCount() >= andPool.getParallelism()) {
+            return null;
+        }
+        final long key = goalKey(goalStack.get(goals));
+        if (misses.get(key) >= MAX_MISSES) {
+            return null;
+        }
+        final var seen = seenVars;
+        final var vars = goalVars;
+        seen.clear();
+        int m = 0;
+        for (; goalStack.get(goals + m) < 0; m++) {
+            final int goal = goalStack.get(goals + m);
+            vars.clear();
+            if (fineGrained.contains(goalKey(goal)) || !unboundVars(goal, vars)) {
+                break;
+            }
+            boolean shared = false;
+            for (int i = 0; !shared && i < vars.size(); i++) {
+                shared = seen.contains(vars.getInt(i));
+            }
+            if (shared) {
+                break;
+            }
+            seen.addAll(vars);
+        }
+        if (m < 2) {
+            misses.addTo(key, 1);
+            return null;
+        }
+        misses.put(key, Integer.MIN_VALUE);
+        final int next = goalStack.get(goals + m);
+        final int after = next < 0 ? goals + m : next - 1;
+
+        final var cancel = new AtomicBoolean();
+        final List<ForkJoinTask<int[][]>> tasks = new ArrayList<>();
+        for (int i = 1; i < m; i++) {
+            final int goal = goalStack.get(goals + i);
+            tasks.add(andPool.submit(() -> solve(goal, cancel)));
+        }
+        final int[][][] solutions = new int[m][][];
+        solutions[0] = solve(goalStack.get(goals), cancel);
+        for (int i = 1; i < m; i++) {
+            solutions[i] = tasks.get(i - 1).join();
+        }
+        boolean complete = true;
+        for (final int[][] s : solutions) {
+            if (null != s && 0 == s.length) {
+                return new Conjunction(goals, after, new int[][][]{s}); // one of them fails, others may be cancelled
+            }
+            complete &= null != s;
+        }
+        if (!complete) {
+            return null;
+        }
+        final var J = new Conjunction(goals, after, solutions);
+        logger.debug("and: {} independent goals, {} combinations", m, J.size);
+        return J;
+    }
+
+    /**
+     * collects the unbound variables of a term, false if it is too large
+     * to scan them all
+     */
+    private boolean unboundVars(final int x, final IntArrayList vars) {
+        final var stack = scanStack;
+        stack.clear();
+        stack.push(x);
+        for (int scanned = 0; !stack.isEmpty(); scanned++) {
+            if (scanned == MAX_SCAN) {
+                return false;
+            }
+            final int y = dereference(stack.popInt());
+            final int t = tagOf(y);
+            if (isVAR(y)) {
+                vars.add(detag(y));
+            } else if (R == t) {
+                final int p = detag(y);
+                for (int i = detag(heap.get(p)); i > 0; i--) {
+                    stack.push(heap.get(p + i));
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * solves goal on a copy of the heap, in an engine of its own, returning
+     * the instances of the goal its solutions give - null once cancel is
+     * set, or when it has too many solutions, in which case it sets cancel,
+     * as it does when the goal fails
+     */
+    private int[][] solve(final int goal, final AtomicBoolean cancel) {
+        final var E = new Engine(this);
+        for (int w = E.heap.size(); w < heap.size(); w++) {
+            E.heap.push(heap.get(w));
+        }
+        E.queryHead = goal;
+        E.goalStack.push(goal);
+        E.goalStack.push(NO_GOALS + 1);
+        E.spines.push().init(goal, E.heap.size(), 0, 0, -1, program.clauseIndex);
+        final List<int[]> solutions = new ArrayList<>();
+        int steps = 0;
+        while (!E.isDone()) {
+            steps++;
+            final Spine A = E.step();
+            if (null != A) {
+                if (MAX_SOLUTIONS == solutions.size()) {
+                    cancel.set(true);
+                    return null;
+                }
+                solutions.add(E.copyTerm(A.hd));
+                E.unwindTrail(A.trailTop);
+            }
+            if (0 == (steps & 1023) && cancel.get()) {
+                return null;
+            }
+        }
+        if (solutions.isEmpty()) {
+            cancel.set(true);
+        }
+        if (steps < MIN_STEPS) {
+            fineGrained.add(goalKey(goal));
+        }
+        return solutions.toArray(new int[0][]);
+    }
+
+    /**
+     * returns the dispatch key of the predicate of a goal
+     */
+    private long goalKey(final int goal) {
+        final int p = detag(goal);
+        return predicateKey(dereference(heap.get(p + 1)), heap.get(p));
+    }
+
+    /**
+     * copies the term x refers to out of the heap: its cell comes first,
+     * followed by the cells of its subterms, with references relative to
+     * the start of the copy
+     */
+    private int[] copyTerm(final int x) {
+        final var cells = new IntArrayList();
+        appendTerm(x, cells);
+        return cells.toIntArray();
+    }
+
+    /**
+     * appends a copy of the term x refers to, as copyTerm makes them, to
+     * cells - as when exporting terms, shared subterms are copied each time
+     * they occur, only variables are kept shared, looked up among the few
+     * found so far
+     */
+    private void appendTerm(final int x, final IntArrayList cells) {
+        final int start = cells.size();
+        copyVars.clear();
+        cells.add(0);
+        cells.set(start, copyCell(x, start, 0, cells));
+    }
+
+    /**
+     * returns the cell standing for x at position at of a copy starting at
+     * start, appending the cells of its subterms
+     */
+    private int copyCell(final int x, final int start, final int at, final IntArrayList cells) {
+        final int y = dereference(x);
+        if (R == tagOf(y)) {
+            final int w = detag(y);
+            final int a = cell(w);
+            final int n = detag(a);
+            final int p = cells.size() - start;
+            cells.add(a);
+            cells.size(start + p + 1 + n);
+            for (int i = 1; i <= n; i++) {
+                cells.set(start + p + i, copyCell(cell(w + i), start, p + i, cells));
+            }
+            return tag(R, p);
+        }
+        if (isVAR(y)) {
+            int i = 0;
+            while (i < copyVars.size() && copyVars.getInt(i) != y) {
+                i += 2;
+            }
+            if (i == copyVars.size()) {
+                copyVars.add(y);
+                copyVars.add(at);
+            }
+            return tag(V, copyVars.getInt(i + 1));
+        }
+        return y;
+    }
+
+    /**
+     * pushes a term copied by copyTerm to the heap, returning its cell
+     */
+    private int pushSolution(final int[] cells) {
+        final int base = heap.getTop() + 1;
+        final int b = tag(V, base);
+        for (final int c : cells) {
+            heap.push(relocate(b, c));
+        }
+        return heap.get(base);
+    }
+
+    /**
+     * pushes a frame with the body goals gs[1..] of a clause, linked to the
+     * goals after them, and returns its location - no frame is needed for
+     * clauses without body goals
+     */
+    private int pushGoals(final int[] gs, final int tail) {
+        if (1 == gs.length) {
+            return tail;
+        }
+        final int goals = goalStack.size();
+        for (int k = 1; k < gs.length; k++) {
+            goalStack.push(gs[k]);
+        }
+        goalStack.push(tail + 1);
+        return goals;
+    }
+
+    /**
+     * returns the location of the goals following the goal at location goals
+     */
+    private int nextGoals(final int goals) {
+        final int next = goalStack.get(goals + 1);
+        return next < 0 ? goals + 1 : next - 1;
+    }
+
+    /**
+     * returns the end of the frame holding the goal at location goals
+     */
+    private int frameEnd(int goals) {
+        if (NO_GOALS == goals) {
+            return 0;
+        }
+        while (goalStack.get(goals) < 0) {
+            goals++;
+        }
+        return goals + 1;
+    }
+
+    /**
+     * returns the position of the first candidate clause of spine G,
+     * starting from k, that passes the index vector test
+     */
+    private int nextClause(final Spine G, int k) {
+        if (null != G.facts) {
+            final int last = last(G);
+            while (k < last && !G.facts.match(G.xs, candidate(G, k))) {
+                k++;
+            }
+            return k;
+        }
+        while (k < G.cs.length && !match(G.xs, clause(G.cs[k]))) {
+            k++;
+        }
+        return k;
+    }
+
+    /**
+     * returns clause i, those added since loaded being read from the program
+     */
+    private Clause clause(final int i) {
+        return i < clauses.size() ? clauses.get(i) : program.clause(i);
+    }
+
+    /**
+     * extracts a query - by convention of the form
+     * goal(Vars):-body to be executed by the engine
+     */
+    Clause getQuery() {
+        return program.query();
+    }
+
+    /**
+     * returns the initial spine built from the
+     * query from which execution starts
+     */
+    Spine init() {
         var G = getQuery();
-        var Q = new Spine(G.hgs(), base, MyIntList.empty, trail.size() - 1, 0, clauseIndex);
-        spines.push(Q);
-        return Q;
+        for (int w = G.base(); w < code.length; w++) {
+            heap.push(code[w]);
+        }
+        var base = heap.size();
+        queryHead = G.hgs()[0];
+        codeTop = base;
+        return spines.push().init(queryHead, base, pushGoals(G.hgs(), NO_GOALS), goalStack.size(), trail.size() - 1, program.clauseIndex);
+    }
+
+    /**
+     * brings the engine back to where it was right after loading, ready
+     * to find the answers of the query of the program
+     */
+    void reset() {
+        clear();
+        query = init();
+    }
+
+    /**
+     * empties the heap up to the query clause, the trail, the goal
+     * stack and the spines, dropping the answers left
+     */
+    void clear() {
+        empty();
+        if (null != tables) {
+            if (tables.generation == program.generation) {
+                tables.abandon();
+            } else {
+                tables = new Tables(program.generation);
+            }
+        }
+    }
+
+    private void empty() {
+        trail.clear();
+        while (!spines.isEmpty()) {
+            spines.pop();
+        }
+        goalStack.setTop(-1);
+        heap.setTop(getQuery().base() - 1);
+    }
+
+    /**
+     * makes goal, the body of a clause in the syntax of .nl files, the query
+     * the next answers are for, in place of the query of the program: they
+     * come as goal(Vars), Vars being the variables of goal not starting
+     * with _ - symbols met for the first time are added to the program
+     */
+    void query(final String goal) {
+        clear();
+        start(goal);
+    }
+
+    /**
+     * finds all the answers of goal, given as to query(goal), while root
+     * stands for it among the tables: root records the predicates and the
+     * tables its answers depend on, and the tables left complete by earlier
+     * evaluations are reused - those depending on facts changed since are
+     * to be dropped first, by invalidate
+     */
+    Set<Tables.Key> evaluate(final String goal, final Tables.Table root) {
+        if (null == tables) {
+            tables = new Tables(program.generation);
+        }
+        empty();
+        tables.restart(root);
+        final Set<Tables.Key> answers = new LinkedHashSet<>();
+        try {
+            start(goal);
+            for (Spine A; null != (A = yield_()); ) {
+                answers.add(new Tables.Key(copyTerm(A.hd)));
+                unwindTrail(A.trailTop);
+            }
+        } catch (final RuntimeException e) {
+            tables.abandon();
+            throw e;
+        }
+        tables.pop(root);
+        return answers;
+    }
+
+    /**
+     * drops the tables whose answers depend on the clauses of the predicate
+     * with the given dispatch key, and those depending on them
+     */
+    void invalidate(final long key) {
+        if (null != tables) {
+            tables.invalidate(key);
+        }
+    }
+
+    /**
+     * returns the external representation of a term copied by copyTerm
+     */
+    Object exportCells(final int[] cells) {
+        final int top = heap.getTop();
+        final Object R = exportTerm(pushSolution(cells));
+        heap.setTop(top);
+        return R;
+    }
+
+    /**
+     * loads goal on the heap and starts solving it
+     */
+    private void start(final String goal) {
+        Loader.loadQuery(goal, symbols, MAX_NUMBER, (cs, gs, neck) -> {
+            final int b = tag(V, heap.size());
+            for (final long c : cs) {
+                heap.push(relocate(b, (int) c));
+            }
+            final int[] hgs = new int[gs.length];
+            for (int i = 0; i < hgs.length; i++) {
+                hgs[i] = relocate(b, (int) gs[i]);
+            }
+            start(hgs);
+        });
+    }
+
+    /**
+     * makes goal the query the next answers are for, in place of the query
+     * of the program: goal is a term as exportTerm returns them, with
+     * strings starting with an upper case letter or _ as variables - the
+     * answers are its instances
+     */
+    void query(final Object goal) {
+        clear();
+        final int g = importTerm(goal instanceof Object[] ? goal : new Object[]{goal}, new HashMap<>());
+        start(new int[]{g, g});
+    }
+
+    /**
+     * starts solving a query made of head hgs[0] and goals hgs[1..], once
+     * its cells are on the heap, which become part of the query clause
+     */
+    private void start(final int[] hgs) {
+        queryHead = hgs[0];
+        codeTop = heap.size();
+        query = spines.push().init(queryHead, codeTop, pushGoals(hgs, NO_GOALS), goalStack.size(), trail.size() - 1, program.clauseIndex);
+    }
+
+    /**
+     * builds term on the heap and returns its cell - named variables are
+     * looked up in vars, _ stands for a new one each time
+     */
+    private int importTerm(final Object term, final Map<String, Integer> vars) {
+        if (term instanceof Object[] args) {
+            final int p = heap.size();
+            heap.push(tag(A, args.length));
+            for (int i = 0; i < args.length; i++) {
+                heap.push(0);
+            }
+            for (int i = 0; i < args.length; i++) {
+                heap.set(p + 1 + i, importTerm(args[i], vars));
+            }
+            return tag(R, p);
+        }
+        if (term instanceof Integer || term instanceof Long) {
+            final long n = ((Number) term).longValue();
+            return Math.abs(n) < MAX_NUMBER ? tag(N, (int) n) : tag(C, symbols.add(term.toString()));
+        }
+        final String s = term.toString();
+        if (!s.isEmpty() && (Character.isUpperCase(s.charAt(0)) || '_' == s.charAt(0))) {
+            final Integer v = "_".equals(s) ? null : vars.get(s);
+            if (null != v) {
+                return v;
+            }
+            final int w = heap.size();
+            heap.push(tag(V, w));
+            if (!"_".equals(s)) {
+                vars.put(s, tag(V, w));
+            }
+            return tag(V, w);
+        }
+        return tag(C, symbols.add(s));
     }
 
     /**
@@ -697,7 +1683,7 @@ class Engine {
      * more answers by forcing backtracking
      */
     private Spine answer(final int trailTop) {
-        return new Spine(spines.get(0).hd, trailTop);
+        return new Spine(queryHead, trailTop);
     }
 
     /**
@@ -705,14 +1691,14 @@ class Engine {
      * top goal of this spine
      */
     private boolean hasClauses(final Spine S) {
-        return S.k < S.cs.size();
+        return S.k < (null == S.and ? last(S) : S.and.size);
     }
 
     /**
      * true when there are no more goals left to solve
      */
     private boolean hasGoals(final Spine S) {
-        return !MyIntList.isEmpty(S.goals);
+        return NO_GOALS != S.goals;
     }
 
     /**
@@ -725,6 +1711,7 @@ class Engine {
         final Spine G = spines.pop();
         unwindTrail(G.trailTop);
         heap.setTop(G.base - 1);
+        goalStack.setTop(G.goalBase - 1);
     }
 
     /**
@@ -735,26 +1722,167 @@ class Engine {
      */
     final Spine yield_() {
         while (!spines.isEmpty()) {
-            final Spine G = spines.peek();
-            if (!hasClauses(G)) {
-                popSpine(); // no clauses left
-                continue;
+            final Spine C = step();
+            if (null != C) {
+                return C;
             }
-            final Spine C = unfold(G);
-            if (null == C) {
-                popSpine(); // no matches
+        }
+        return null;
+    }
+
+    /**
+     * one step of the interpreter loop: returns an answer if it found one
+     */
+    final Spine step() {
+        if (heap.size() - codeTop > gcWatermark) {
+            gc();
+        }
+        final Spine G = spines.peek();
+        if (!hasClauses(G)) {
+            popSpine(); // no clauses left
+            return null;
+        }
+        final Spine C = unfold(G);
+        if (null == C) {
+            popSpine(); // no matches
+            return null;
+        }
+        if (hasGoals(C)) {
+            return null; // new or reused spine
+        }
+        return C; // answer
+    }
+
+    /**
+     * true once all answers have been found
+     */
+    final boolean isDone() {
+        return spines.isEmpty();
+    }
+
+    /**
+     * number of spines on the stack: the one on top
+     * and the choice points left below it
+     */
+    final int depth() {
+        return spines.size();
+    }
+
+    /**
+     * returns the position of the oldest spine with alternatives another
+     * engine could take over, -1 if there is none - the spine on top needs
+     * two, as it keeps one
+     */
+    final int choicePoint() {
+        final int top = spines.size() - 1;
+        for (int i = 0; i <= top; i++) {
+            final Spine S = spines.get(i);
+            if (null != S.and) {
                 continue;
             }
-            if (hasGoals(C)) {
-                spines.push(C);
-                continue;
+            if (null == S.xs) { // on top, its goal not unfolded yet
+                final int goal = goalStack.get(S.goals);
+                if (!unfoldsClauses(goal)) {
+                    continue;
+                }
+                makeIndexArgs(S, goal);
+            }
+            S.k = nextClause(S, S.k);
+            if (last(S) - S.k > (i == top ? 1 : 0)) {
+                return i;
             }
-            return C; // answer
         }
-        return null;
+        return -1;
     }
 
-    // indexing extensions - ony active if START_INDEX clauses or more
+    /**
+     * sets the number of cells the heap can grow to, above the code,
+     * before getting collected
+     */
+    void setGcWatermark(final int cells) {
+        gcWatermark = cells;
+    }
+
+    /**
+     * sets the pool independent goals are solved in parallel in, null
+     * to solve them sequentially
+     */
+    void setAndParallel(final ForkJoinPool pool) {
+        andPool = pool;
+    }
+
+    /**
+     * sets whether the clauses of predicates called often are compiled
+     */
+    void setJit(final boolean on) {
+        jit = on;
+    }
+
+    /**
+     * collects the heap above the code: the roots are the goals on the goal
+     * stack, the cells of the query clause, that get bound in place, and the
+     * heads of the spines - bindings on the trail of cells that did not
+     * survive are dropped, as backtracking only makes fewer cells reachable
+     * <p>
+     * when most of the heap is still in use, the watermark is doubled
+     * so that collections do not follow each other too closely
+     */
+    void gc() {
+        final var collector = new HeapCollector(heap, codeTop);
+        for (int i = 0; i < goalStack.size(); i++) {
+            final int g = goalStack.get(i);
+            if (g < 0) {
+                collector.mark(g);
+            }
+        }
+        final Clause Q = getQuery();
+        for (int i = Q.base(); i < codeTop; i++) {
+            collector.mark(heap.get(i));
+        }
+        for (int i = 0; i < spines.size(); i++) {
+            collector.mark(spines.get(i).hd);
+        }
+        collector.mark(queryHead);
+
+        final int[] kept = new int[trail.size() + 1];
+        int t = 0;
+        for (int i = 0; i < trail.size(); i++) {
+            final int x = trail.getInt(i);
+            if (collector.isLive(detag(x))) {
+                trail.set(t++, x);
+            }
+            kept[i + 1] = t;
+        }
+        trail.size(t);
+
+        final int before = heap.size();
+        final int freed = collector.compact();
+
+        for (int i = 0; i < trail.size(); i++) {
+            trail.set(i, collector.forward(trail.getInt(i)));
+        }
+        for (int i = 0; i < goalStack.size(); i++) {
+            final int g = goalStack.get(i);
+            if (g < 0) {
+                goalStack.set(i, collector.forward(g));
+            }
+        }
+        for (int i = Q.base(); i < codeTop; i++) {
+            heap.set(i, collector.forward(heap.get(i)));
+        }
+        for (int i = 0; i < spines.size(); i++) {
+            final Spine S = spines.get(i);
+            S.hd = collector.forward(S.hd);
+            S.base = collector.forwardAddress(S.base);
+            S.trailTop = kept[S.trailTop + 1] - 1;
+        }
+        queryHead = collector.forward(queryHead);
+
+        if (2 * (heap.size() - codeTop) > gcWatermark) {
+            gcWatermark = (int) Math.min(2L * gcWatermark, Integer.MAX_VALUE);
+        }
+        logger.debug("gc: {} -> {} cells, watermark {}", before, before - freed, gcWatermark);
+    }
 
     /**
      * retrieves an answers and ensure the engine can be resumed
@@ -766,9 +1894,51 @@ class Engine {
         if (null == query) {
             return null;
         }
-        final int res = answer(query.trailTop).hd;
-        final Object R = exportTerm(res);
-        unwindTrail(query.trailTop);
+        return export(query);
+    }
+
+    /**
+     * retrieves up to n more answers, appending them to buf as flat cells
+     * instead of exporting them, and returns how many it found - fewer than
+     * n once there are no more
+     */
+    int ask(final int n, final AnswerBuffer buf) {
+        int k = 0;
+        for (; k < n; k++) {
+            query = yield_();
+            if (null == query) {
+                break;
+            }
+            buf.offsets.add(buf.cells.size());
+            appendTerm(query.hd, buf.cells);
+            unwindTrail(query.trailTop);
+        }
+        return k;
+    }
+
+    /**
+     * skips over up to n more answers without looking at them, and returns
+     * how many there were - count(1) tells if there is one more
+     */
+    long count(final long n) {
+        long k = 0;
+        for (; k < n; k++) {
+            query = yield_();
+            if (null == query) {
+                break;
+            }
+            unwindTrail(query.trailTop);
+        }
+        return k;
+    }
+
+    /**
+     * returns the external representation of an answer, and ensures
+     * the engine can be resumed by unwinding the trail of its spine
+     */
+    final Object export(final Spine answer) {
+        final Object R = exportTerm(answer.hd);
+        unwindTrail(answer.trailTop);
         return R;
     }
 
@@ -778,31 +1948,17 @@ class Engine {
      */
     void run() {
         long ctr = 0L;
-        for (; ; ctr++) {
+        for (; ctr < 5; ctr++) {
             final Object A = ask();
             if (null == A) {
                 break;
             }
-            if (ctr < 5) Program.println("[" + ctr + "] " + "*** ANSWER=" + showTerm(A));
+            Program.println("[" + ctr + "] " + "*** ANSWER=" + showTerm(A));
+        }
+        if (5 == ctr) {
+            ctr += count(Long.MAX_VALUE);
         }
         if (ctr > 5) Program.println("...");
         Program.println("TOTAL ANSWERS=" + ctr);
     }
-
-    final IMaps index(List<Clause> clauses, List<IntMap> vmaps) {
-        if (clauses.size() < START_INDEX) {
-            return null;
-        }
-
-        var imaps = new IMaps(vmaps.size());
-        for (int i = 0; i < clauses.size(); i++) {
-            var c = clauses.get(i);
-            put(imaps, vmaps, c.xs(), i + 1); // $$$ UGLY INC
-        }
-        Main.prettyPrint("INDEX");
-        Main.prettyPrint(imaps.toString());
-        Main.prettyPrint(vmaps.toString());
-        Main.prettyPrint("");
-        return imaps;
-    }
 }
@@ -0,0 +1,73 @@
+package ptarau.iprolog;
+
+import ptarau.iprolog.util.ArrayHeap;
+import ptarau.iprolog.util.Heap;
+
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.function.Function;
+
+/**
+ * Engines ready to run queries against a program loaded once, handed out
+ * to callers one at a time and taken back once they are done with them -
+ * the most recently returned engine goes out first, while its heap is
+ * still warm, and at most capacity idle engines are kept
+ */
+final class EnginePool {
+
+    private final CompiledProgram program;
+    private final Heap heap;
+    private final BlockingDeque<Program> idle;
+
+    EnginePool(final CompiledProgram program, final int capacity) {
+        this(program, new ArrayHeap(), capacity);
+    }
+
+    /**
+     * a pool of engines running on heaps of the kind of heap
+     */
+    EnginePool(final CompiledProgram program, final Heap heap, final int capacity) {
+        this.program = program;
+        this.heap = heap;
+        this.idle = new LinkedBlockingDeque<>(capacity);
+    }
+
+    /**
+     * returns an idle engine, or a new one if there is none
+     */
+    Program acquire() {
+        final Program E = idle.pollFirst();
+        return null == E ? new Program(program, heap) : E;
+    }
+
+    /**
+     * takes back an engine once its caller is done with it
+     */
+    void release(final Program E) {
+        E.reset();
+        idle.offerFirst(E);
+    }
+
+    /**
+     * runs f on an engine of the pool, returning the engine once done
+     */
+    <T> T apply(final Function<? super Program, T> f) {
+        final Program E = acquire();
+        try {
+            return f.apply(E);
+        } finally {
+            release(E);
+        }
+    }
+
+    /**
+     * returns the first answer of goal, in the syntax of .nl files,
+     * null if it has none
+     */
+    Object ask(final String goal) {
+        return apply(E -> {
+            E.query(goal);
+            return E.ask();
+        });
+    }
+}
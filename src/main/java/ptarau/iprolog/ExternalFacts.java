@@ -0,0 +1,171 @@
+package ptarau.iprolog;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import ptarau.iprolog.util.FactFile;
+import ptarau.iprolog.util.Symbols;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static ptarau.iprolog.Engine.*;
+
+/**
+ * FactTable whose rows stay on disk, in a FactFile mapped in memory, for
+ * predicates declared by a fact "external Name Arity": calls look up the
+ * rows holding their most selective bound argument in the sorted indexes
+ * of the file, and only the cells of the rows they try get read, so that
+ * what a call costs depends on the rows it matches, not on the size of the
+ * file, and rows take no room on the java heap
+ *
+ * the file holds cells as the program does but for symbols, numbered by
+ * their position in its sorted dictionary: they get added to the symbols of
+ * the program the first time a row holding them is read, and the symbols
+ * of calls are looked up in the dictionary
+ *
+ * file  - the rows, one column per argument
+ * cells - the cells of the program for the symbols of the file, 0 until read
+ */
+final class ExternalFacts extends FactTable {
+
+    private final FactFile file;
+    private final Symbols symbols;
+    private final int[] cells;
+
+    ExternalFacts(final int functor, final FactFile file, final Symbols symbols) {
+        super(functor, 1 + file.columns());
+        this.file = file;
+        this.symbols = symbols;
+        this.cells = new int[file.symbols()];
+    }
+
+    @Override
+    int size() {
+        return file.rows();
+    }
+
+    @Override
+    int cell(final int i, final int row) {
+        final int v = file.get(i - 1, row);
+        return C == tagOf(v) ? symbol(detag(v)) : v;
+    }
+
+    /**
+     * returns the cell of symbol i of the file - engines racing to add it
+     * get the same cell
+     */
+    private int symbol(final int i) {
+        int c = cells[i];
+        if (0 == c) {
+            c = tag(C, symbols.add(file.symbol(i)));
+            cells[i] = c;
+        }
+        return c;
+    }
+
+    /**
+     * returns the value the file holds for index key x, 0 if no row holds it
+     */
+    private int value(final int x) {
+        return switch (tagOf(x)) {
+            case C -> {
+                final int i = file.symbol(symbols.get(detag(x)));
+                yield i < 0 ? 0 : tag(C, i);
+            }
+            case N -> x;
+            default -> 0;
+        };
+    }
+
+    @Override
+    int[] candidates(final int[] xs) {
+        final int n = Math.min(xs.length, width);
+        int best = 0;
+        int value = 0;
+        int count = Integer.MAX_VALUE;
+        for (int i = 1; i < n; i++) {
+            if (0 == xs[i]) {
+                continue;
+            }
+            final int v = value(xs[i]);
+            if (0 == v) {
+                return NO_CLAUSES;
+            }
+            final int c = file.count(i - 1, v);
+            if (c < count) {
+                best = i;
+                value = v;
+                count = c;
+            }
+        }
+        return 0 == best ? ALL_ROWS : file.rows(best - 1, value);
+    }
+
+    /**
+     * writes a fact file from rows of whitespace separated values, one row
+     * per line, each value standing for a number or a symbol as it would in
+     * a .nl file - the rows are held in memory while writing
+     */
+    static void write(final Reader rows, final Path file) throws IOException {
+        final var reader = new BufferedReader(rows);
+        final var ids = new Object2IntOpenHashMap<String>();
+        IntArrayList[] columns = null;
+        String line;
+        while (null != (line = reader.readLine())) {
+            final String[] values = line.trim().split("\\s+");
+            if (values[0].isEmpty()) {
+                continue;
+            }
+            if (null == columns) {
+                columns = new IntArrayList[values.length];
+                Arrays.setAll(columns, i -> new IntArrayList());
+            }
+            if (values.length != columns.length) {
+                throw new IllegalArgumentException("Expected " + columns.length + " values: " + line);
+            }
+            for (int i = 0; i < values.length; i++) {
+                columns[i].add(encode(values[i], ids));
+            }
+        }
+        if (null == columns) {
+            throw new IllegalArgumentException("No rows to write to " + file);
+        }
+        // number symbols in sorted order, as the dictionary of the file keeps them
+        final var names = ids.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        final var renumber = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            renumber[ids.getInt(names[i])] = i;
+        }
+        final var cs = new int[columns.length][];
+        for (int i = 0; i < cs.length; i++) {
+            cs[i] = columns[i].toIntArray();
+            for (int row = 0; row < cs[i].length; row++) {
+                if (C == tagOf(cs[i][row])) {
+                    cs[i][row] = tag(C, renumber[detag(cs[i][row])]);
+                }
+            }
+        }
+        FactFile.write(file, cs, names);
+    }
+
+    /**
+     * encodes a value as Loader does, numbering symbols in the order met
+     */
+    private static int encode(final String s, final Object2IntOpenHashMap<String> ids) {
+        try {
+            final long n = Long.parseLong(s);
+            if (Math.abs(n) < MAX_NUMBER) {
+                return tag(N, (int) n);
+            }
+        } catch (NumberFormatException e) {
+            // a symbol
+        }
+        final int i = ids.getOrDefault(s, ids.size());
+        ids.putIfAbsent(s, i);
+        return tag(C, i);
+    }
+}
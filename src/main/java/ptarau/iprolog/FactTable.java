@@ -0,0 +1,201 @@
+package ptarau.iprolog;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import ptarau.iprolog.util.ColumnIndex;
+
+import static ptarau.iprolog.Engine.*;
+
+/**
+ * Predicate made only of ground facts with constant arguments, stored as a
+ * table with a column of cells per argument instead of as clauses: calls
+ * get the numbers of the rows holding their most selective argument in
+ * place of clause numbers, and unify with a row by binding their variables to its cells,
+ * with nothing copied to the heap
+ *
+ * functor - the cell of the functor of the facts
+ * width   - the arity cell of the facts, as a number: 1 + their arity
+ * columns - the cells of argument i of each row in columns[i], columns[0]
+ *           being left empty
+ * index   - sorted index of each column, built the first time the predicate
+ *           is called with that argument bound
+ *
+ * subclasses keeping their rows elsewhere override size, cell and candidates,
+ * which may return ALL_ROWS for calls with no argument bound, rather than
+ * the numbers of all the rows
+ */
+class FactTable extends Predicate {
+
+    /**
+     * candidates standing for all the rows, tried in order without being listed
+     */
+    static final int[] ALL_ROWS = new int[0];
+
+    final int functor;
+    final int width;
+    final int[][] columns;
+    final ColumnIndex[] index;
+
+    FactTable(final int functor, final int[][] columns) {
+        super(rows(columns[1].length), columns.length, null);
+        this.functor = functor;
+        this.width = columns.length;
+        this.columns = columns;
+        this.index = new ColumnIndex[columns.length];
+        compiled = true; // rows are not compiled
+    }
+
+    FactTable(final int functor, final int width) {
+        super(new int[0], width, null);
+        this.functor = functor;
+        this.width = width;
+        this.columns = null;
+        this.index = null;
+        compiled = true;
+    }
+
+    int size() {
+        return clauses.length;
+    }
+
+    /**
+     * returns the cell of argument i in row
+     */
+    int cell(final int i, final int row) {
+        return columns[i][row];
+    }
+
+    @Override
+    int[] candidates(final int[] xs) {
+        final int n = Math.min(xs.length, width);
+        int best = 0;
+        int count = clauses.length;
+        for (int i = 1; i < n && clauses.length >= START_INDEX; i++) {
+            if (0 == xs[i]) {
+                continue;
+            }
+            final int c = columnIndex(i).count(xs[i]);
+            if (c < count) {
+                best = i;
+                count = c;
+            }
+        }
+        // match tests the other arguments, row by row, for less than intersecting their runs costs
+        return 0 == best ? clauses : index[best].get(xs[best]);
+    }
+
+    /**
+     * tests if row could match a goal with index vector xs
+     */
+    boolean match(final int[] xs, final int row) {
+        if (xs.length != width) {
+            return false;
+        }
+        for (int i = 1; i < xs.length; i++) {
+            final int x = xs[i];
+            if (x != 0 && x != cell(i, row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * returns the cells of row as those of a fact with references relative
+     * to its start, as Clause keeps them for facts added once loaded
+     */
+    int[] cells(final int row) {
+        final var cs = new int[1 + width];
+        cs[0] = tag(A, width);
+        cs[1] = functor;
+        for (int i = 1; i < width; i++) {
+            cs[1 + i] = cell(i, row);
+        }
+        return cs;
+    }
+
+    /**
+     * returns the index on column i, building it on first use - indexes
+     * are immutable, so engines racing to build the same one at worst
+     * build it twice
+     */
+    ColumnIndex columnIndex(final int i) {
+        var ix = index[i];
+        if (null == ix) {
+            ix = new ColumnIndex(columns[i]);
+            index[i] = ix;
+        }
+        return ix;
+    }
+
+    private static int[] rows(final int n) {
+        final var rs = new int[n];
+        for (int i = 0; i < n; i++) {
+            rs[i] = i;
+        }
+        return rs;
+    }
+
+    /**
+     * collects the rows of a fact table while loading
+     */
+    static final class Builder {
+        private final int functor;
+        private final IntArrayList[] columns;
+
+        Builder(final int functor, final int width) {
+            this.functor = functor;
+            this.columns = new IntArrayList[width];
+            for (int i = 1; i < width; i++) {
+                columns[i] = new IntArrayList();
+            }
+        }
+
+        /**
+         * true if cs, read by the loader, are the cells of a ground fact
+         * with constant arguments - its arity cell, functor and arguments
+         */
+        static boolean isGroundFact(final int[] cs, final int[] gs) {
+            if (1 != gs.length || cs.length < 3 || cs.length != 1 + detag(cs[0])) {
+                return false;
+            }
+            for (int i = 1; i < cs.length; i++) {
+                if (!isConstant(cs[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void add(final int[] cs) {
+            for (int i = 1; i < columns.length; i++) {
+                columns[i].add(cs[1 + i]);
+            }
+        }
+
+        int size() {
+            return columns[1].size();
+        }
+
+        /**
+         * returns the cells of row, as read by the loader
+         */
+        int[] cells(final int row) {
+            final var cs = new int[1 + columns.length];
+            cs[0] = tag(A, columns.length);
+            cs[1] = functor;
+            for (int i = 1; i < columns.length; i++) {
+                cs[1 + i] = columns[i].getInt(row);
+            }
+            return cs;
+        }
+
+        FactTable build() {
+            final var cs = new int[columns.length][];
+            cs[0] = new int[0];
+            for (int i = 1; i < cs.length; i++) {
+                cs[i] = columns[i].toIntArray();
+            }
+            return new FactTable(functor, cs);
+        }
+    }
+}
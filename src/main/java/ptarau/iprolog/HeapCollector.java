@@ -0,0 +1,131 @@
+package ptarau.iprolog;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import ptarau.iprolog.util.Heap;
+
+import static ptarau.iprolog.Engine.A;
+import static ptarau.iprolog.Engine.detag;
+import static ptarau.iprolog.Engine.tag;
+import static ptarau.iprolog.Engine.tagOf;
+
+/**
+ * Sliding collector for the part of the heap above a given address
+ *
+ * cells reachable from the roots marked by the engine are slid down, in
+ * the order they were allocated, over the unreachable ones - so heap
+ * addresses of spines keep separating what is older from what is newer
+ * than them and only need forwarding like the cells pointing into the heap
+ *
+ * marks - one bit per cell above from, set when the cell is reachable
+ * ranks - number of marked cells before each word of marks, which gives
+ *         the address a cell slides to
+ */
+final class HeapCollector {
+
+    private final Heap heap;
+    private final int from;
+    private final int to;
+    private final long[] marks;
+    private int[] ranks;
+    private final IntArrayList stack = new IntArrayList();
+
+    HeapCollector(final Heap heap, final int from) {
+        this.heap = heap;
+        this.from = from;
+        this.to = heap.size();
+        this.marks = new long[(to - from + 63) >>> 6];
+    }
+
+    /**
+     * marks what cell x refers to, together with all the cells reachable from it
+     */
+    void mark(final int x) {
+        markCell(x);
+        while (!stack.isEmpty()) {
+            final int w = stack.popInt();
+            final int c = heap.get(w);
+            if (A == tagOf(c)) {
+                for (int i = detag(c); i > 0; i--) {
+                    markAddress(w + i);
+                }
+            } else {
+                markCell(c);
+            }
+        }
+    }
+
+    private void markCell(final int x) {
+        if (tagOf(x) < 3) {
+            markAddress(detag(x));
+        }
+    }
+
+    private void markAddress(final int w) {
+        if (w < from) {
+            return;
+        }
+        final int o = w - from;
+        final long bit = 1L << o;
+        if (0 == (marks[o >>> 6] & bit)) {
+            marks[o >>> 6] |= bit;
+            stack.push(w);
+        }
+    }
+
+    /**
+     * true if the cell at address w survives the collection
+     */
+    boolean isLive(final int w) {
+        if (w < from) {
+            return true;
+        }
+        final int o = w - from;
+        return 0 != (marks[o >>> 6] & 1L << o);
+    }
+
+    /**
+     * slides the marked cells down, forwarding the references they hold,
+     * and returns the number of cells reclaimed
+     */
+    int compact() {
+        ranks = new int[marks.length + 1];
+        for (int j = 0; j < marks.length; j++) {
+            ranks[j + 1] = ranks[j] + Long.bitCount(marks[j]);
+        }
+        int top = from;
+        for (int j = 0; j < marks.length; j++) {
+            for (long m = marks[j]; m != 0; m &= m - 1) {
+                final int w = from + (j << 6) + Long.numberOfTrailingZeros(m);
+                heap.set(top++, forward(heap.get(w)));
+            }
+        }
+        heap.setTop(top - 1);
+        return to - top;
+    }
+
+    /**
+     * returns where address w goes once the heap is compacted: the address
+     * of the first live cell at or above it - also valid for unmarked
+     * cells and for the end of the heap
+     */
+    int forwardAddress(final int w) {
+        if (w < from) {
+            return w;
+        }
+        final int o = w - from;
+        final int j = o >>> 6;
+        int r = ranks[j];
+        if (0 != (o & 63)) {
+            r += Long.bitCount(marks[j] & -1L >>> (64 - (o & 63)));
+        }
+        return from + r;
+    }
+
+    /**
+     * forwards the address a variable or reference cell points to
+     */
+    int forward(final int x) {
+        final int t = tagOf(x);
+        return t < 3 ? tag(t, forwardAddress(detag(x))) : x;
+    }
+}
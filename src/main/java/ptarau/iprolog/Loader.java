@@ -0,0 +1,274 @@
+package ptarau.iprolog;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ptarau.iprolog.util.Symbols;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static ptarau.iprolog.Engine.A;
+import static ptarau.iprolog.Engine.BAD;
+import static ptarau.iprolog.Engine.C;
+import static ptarau.iprolog.Engine.N;
+import static ptarau.iprolog.Engine.R;
+import static ptarau.iprolog.Engine.U;
+import static ptarau.iprolog.Engine.V;
+import static ptarau.iprolog.LongEngine.detag;
+import static ptarau.iprolog.LongEngine.tag;
+import static ptarau.iprolog.LongEngine.tagOf;
+import static ptarau.iprolog.Tokenizer.SourceType.FILE;
+import static ptarau.iprolog.Tokenizer.SourceType.RESOURCE;
+import static ptarau.iprolog.Tokenizer.SourceType.STRING;
+
+/**
+ * Reads the clauses of a program into cells, in the 64-bit encoding of
+ * LongEngine - the same as the one of Engine for values that fit in an int
+ */
+final class Loader {
+
+    final static private Logger logger = LoggerFactory.getLogger(Loader.class);
+
+    /**
+     * receives the cells of each clause: cs holds its head and body
+     * elements, gs references to them and neck the length of the head
+     */
+    interface Sink {
+        void clause(long[] cs, long[] gs, int neck);
+    }
+
+    private Loader() {
+    }
+
+    /**
+     * expands a "Xs lists .." statements to "Xs holds" statements
+     */
+    private static List<List<String>> maybeExpand(final List<String> Ws) {
+        var W = Ws.get(0);
+        if (W.length() < 2 || !"l:".equals(W.substring(0, 2))) {
+            return null;
+        }
+
+        int l = Ws.size();
+        var V = W.substring(2);
+        return IntStream.range(1, l)
+                .mapToObj(i -> {
+                    var Vi = 1 == i ? V : V + "__" + (i - 1);
+                    var Vii = V + "__" + i;
+                    return List.of("h:" + Vi, "c:list", Ws.get(i), i == l - 1 ? "c:nil" : "v:" + Vii);
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * expands, if needed, "lists" statements in sequence of statements,
+     * returning Wss itself when there are none
+     */
+    private static List<List<String>> mapExpand(final List<List<String>> Wss) {
+        List<List<String>> Rss = null;
+        for (int i = 0; i < Wss.size(); i++) {
+            var Hss = maybeExpand(Wss.get(i));
+            if (Hss != null && null == Rss) {
+                Rss = new ArrayList<>(Wss.subList(0, i));
+            }
+            if (Hss != null) {
+                Rss.addAll(Hss);
+            } else if (null != Rss) {
+                Rss.add(Wss.get(i));
+            }
+        }
+        return null == Rss ? Wss : Rss;
+    }
+
+    /**
+     * loads a program from a .nl file of
+     * "natural language" equivalents of Prolog/HiLog statements:
+     * a resource named after the program, or the file it names if
+     * its name ends with .nl - read a clause at a time, whose tokens
+     * are dropped once it is passed on to sink
+     */
+    static void load(final String programName, final Symbols symbols, final long maxNumber, final Sink sink) {
+        try (var tokenizer = Tokenizer.createTokenizer(programName, programName.endsWith(".nl") ? FILE : RESOURCE)) {
+            load(tokenizer, symbols, maxNumber, sink);
+        }
+    }
+
+    /**
+     * loads the clauses read from reader, a clause at a time
+     */
+    static void load(final Reader reader, final Symbols symbols, final long maxNumber, final Sink sink) {
+        load(new Tokenizer(reader), symbols, maxNumber, sink);
+    }
+
+    private static void load(final Tokenizer tokenizer, final Symbols symbols, final long maxNumber, final Sink sink) {
+        List<List<String>> Wss;
+        while (null != (Wss = tokenizer.nextSentence())) {
+            loadSentence(Wss, symbols, maxNumber, sink);
+        }
+    }
+
+    /**
+     * reads a goal, the body of a clause in the syntax of .nl files, into
+     * a clause with head goal(Vars): Vars are the variables of the goal
+     * not starting with _, in the order they first occur in
+     */
+    static void loadQuery(final String goal, final Symbols symbols, final long maxNumber, final Sink sink) {
+        final var text = goal.strip();
+        final var Wsss = Tokenizer.toSentences(text.endsWith(".") ? text : text + " .", STRING);
+        if (1 != Wsss.size() || Wsss.get(0).stream().anyMatch(List::isEmpty)) {
+            throw new IllegalArgumentException("Not a single goal: " + goal);
+        }
+        final List<String> head = new ArrayList<>();
+        head.add("c:goal");
+        for (final var Ws : Wsss.get(0)) {
+            for (final var w : Ws) {
+                if (w.length() > 2 && "vhl".indexOf(w.charAt(0)) >= 0 && '_' != w.charAt(2)) {
+                    final var v = "v:" + w.substring(2);
+                    if (!head.contains(v)) {
+                        head.add(v);
+                    }
+                }
+            }
+        }
+        Wsss.get(0).add(0, head);
+        load(Wsss, symbols, maxNumber, sink);
+    }
+
+    /**
+     * reads a single clause in the syntax of .nl files
+     */
+    static void loadClause(final String clause, final Symbols symbols, final long maxNumber, final Sink sink) {
+        final var text = clause.strip();
+        final var Wsss = Tokenizer.toSentences(text.endsWith(".") ? text : text + " .", STRING);
+        if (1 != Wsss.size() || Wsss.get(0).stream().anyMatch(List::isEmpty)) {
+            throw new IllegalArgumentException("Not a single clause: " + clause);
+        }
+        load(Wsss, symbols, maxNumber, sink);
+    }
+
+    private static void load(final List<List<List<String>>> Wsss, final Symbols symbols, final long maxNumber, final Sink sink) {
+        for (final var Wss : Wsss) {
+            loadSentence(Wss, symbols, maxNumber, sink);
+        }
+    }
+
+    private static void loadSentence(final List<List<String>> Wss, final Symbols symbols, final long maxNumber, final Sink sink) {
+        logger.debug("Sentence: {}", Wss);
+        // clause starts here
+
+        Map<String, IntArrayList> refs = new LinkedHashMap<>();
+        var cs = new LongArrayList();
+        var gs = new LongArrayList();
+
+        var Rss = mapExpand(Wss);
+        var k = 0;
+        for (var ws : Rss) {
+
+            // head or body element starts here
+
+            final var l = ws.size();
+            gs.push(tag(R, k++));
+            cs.push(tag(A, l));
+
+            for (String w : ws) {
+
+                // head or body subterm starts here
+
+                if (1 == w.length()) {
+                    w = "c:" + w;
+                }
+
+                final var L = w.substring(2);
+
+                switch (w.charAt(0)) {
+                    case 'c' -> {
+                        cs.push(encode(C, L, symbols, maxNumber));
+                        k++;
+                    }
+                    case 'n' -> {
+                        cs.push(encode(N, L, symbols, maxNumber));
+                        k++;
+                    }
+                    case 'v' -> {
+                        var Is = refs.get(L);
+                        if (null == Is) {
+                            Is = new IntArrayList();
+                            refs.put(L, Is);
+                        }
+                        Is.push(k);
+                        cs.push(tag(BAD, k)); // just in case we miss this
+                        k++;
+                    }
+                    case 'h' -> {
+                        var Is = refs.get(L);
+                        if (null == Is) {
+                            Is = new IntArrayList();
+                            refs.put(L, Is);
+                        }
+                        Is.push(k - 1);
+                        cs.set(k - 1, tag(A, l - 1));
+                        gs.popLong();
+                    }
+                    default -> Main.prettyPrint("FORGOTTEN=" + w);
+                } // end subterm
+            } // end element
+        } // end clause
+
+        // linker
+
+        for (IntArrayList Is : refs.values()) {
+            // finding the A among refs
+            int leader = -1;
+            for (final int j : Is) {
+                if (A == tagOf(cs.getLong(j))) {
+                    leader = j;
+
+                    break;
+                }
+            }
+            if (-1 == leader) {
+                // for vars, first V others U
+                leader = Is.getInt(0);
+                for (final int i : Is) {
+                    if (i == leader) {
+                        cs.set(i, tag(V, i));
+                    } else {
+                        cs.set(i, tag(U, leader));
+                    }
+
+                }
+            } else {
+                for (final int i : Is) {
+                    if (i == leader) {
+                        continue;
+                    }
+                    cs.set(i, tag(R, leader));
+                }
+            }
+        }
+
+        var neck = 1 == gs.size() ? cs.size() : (int) detag(gs.getLong(1));
+        sink.clause(cs.toLongArray(), gs.toLongArray(), neck);
+    }
+
+    /*
+     * encodes string constants into symbols, as well as numbers
+     * too large for the engine the program is loaded into
+     */
+    private static long encode(final int t, final String s, final Symbols symbols, final long maxNumber) {
+        if (N == t) {
+            final long n = Long.parseLong(s);
+            if (Math.abs(n) < maxNumber) {
+                return tag(N, n);
+            }
+        }
+        return tag(C, symbols.add(s));
+    }
+}
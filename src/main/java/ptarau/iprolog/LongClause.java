@@ -0,0 +1,7 @@
+package ptarau.iprolog;
+
+/**
+ * Representation of a clause of a LongEngine, with the same
+ * components as a Clause - cells and heap addresses being longs
+ */
+record LongClause(int len, long[] hgs, long base, int neck, int[] xs) {}
@@ -0,0 +1,654 @@
+package ptarau.iprolog;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import ptarau.iprolog.util.ArgIndex;
+import ptarau.iprolog.util.LongHeap;
+import ptarau.iprolog.util.Symbols;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static ptarau.iprolog.Engine.A;
+import static ptarau.iprolog.Engine.C;
+import static ptarau.iprolog.Engine.N;
+import static ptarau.iprolog.Engine.NO_GOALS;
+import static ptarau.iprolog.Engine.R;
+import static ptarau.iprolog.Engine.V;
+
+/**
+ * Implements the execution mechanism of Engine with 64-bit cells
+ * <p>
+ * cells are tagged the same way, in a long: heap addresses, symbols and
+ * numbers go up to 2^60 instead of 2^28, at the price of twice the memory
+ * per cell - the heap is neither collected nor kept outside of the java heap
+ */
+class LongEngine {
+
+    final static private int[] NO_CLAUSES = new int[0];
+
+    /**
+     * numbers at least this large are read as symbols
+     */
+    final static long MAX_NUMBER = 1L << 60;
+
+    final List<LongClause> clauses;
+    final int[] clauseIndex;
+
+    final Symbols symbols = new Symbols();
+
+    /**
+     * clause dispatch table: for each functor, its predicates by arity -
+     * clauses with a variable functor are found under functor 0
+     */
+    final Long2ObjectOpenHashMap<Predicate[]> predicates;
+
+    /**
+     * runtime areas, as in Engine
+     */
+    final LongHeap heap = new LongHeap();
+    final LongArrayList trail = new LongArrayList();
+    final LongArrayList unificationStack = new LongArrayList();
+    final private LongArrayList headStack = new LongArrayList();
+    final private IntArrayList touched = new IntArrayList();
+    private long[] regs = new long[64];
+    final private LongArrayList goalStack = new LongArrayList();
+    final private SpineStack<LongSpine> spines = new SpineStack<>(LongSpine::new);
+    LongSpine query;
+    private long queryHead;
+
+    /**
+     * Builds a new engine from a natural-language style assembler.nl file
+     */
+    LongEngine(final String programName) {
+        clauses = loadProgram(programName);
+        clauseIndex = new int[clauses.size()];
+        for (int i = 0; i < clauseIndex.length; i++) {
+            clauseIndex[i] = i;
+        }
+        predicates = dispatch(clauses);
+        query = init();
+    }
+
+    /**
+     * tags a value as Engine.tag does, in a long
+     */
+    static long tag(final int t, final long w) {
+        return -((w << 3) + t);
+    }
+
+    /**
+     * removes tag after flipping sign
+     */
+    static long detag(final long w) {
+        return -w >> 3;
+    }
+
+    /**
+     * extracts the tag of a cell
+     */
+    static int tagOf(final long w) {
+        return (int) (-w & 7);
+    }
+
+    private static boolean isVAR(final long x) {
+        return tagOf(x) < 2;
+    }
+
+    private static boolean isConstant(final long x) {
+        final int t = tagOf(x);
+        return C == t || N == t;
+    }
+
+    /**
+     * hashes a cell into an index key, 0 being reserved for variables
+     */
+    private static int indexKey(final long x) {
+        return (int) HashCommon.mix(x) | 1;
+    }
+
+    private static long relocate(final long b, final long cell) {
+        return tagOf(cell) < 3 ? cell + b : cell;
+    }
+
+    /**
+     * loads a program from a .nl file of
+     * "natural language" equivalents of Prolog/HiLog statements
+     */
+    List<LongClause> loadProgram(final String programName) {
+        List<LongClause> Cs = new ArrayList<>();
+        Loader.load(programName, symbols, MAX_NUMBER, (cs, gs, neck) -> Cs.add(putClause(cs, gs, neck)));
+        return Cs;
+    }
+
+    /**
+     * places a clause on the heap
+     */
+    LongClause putClause(final long[] cs, final long[] gs, final int neck) {
+        final long base = heap.size();
+        final long b = tag(V, base);
+        for (final long c : cs) {
+            heap.push(relocate(b, c));
+        }
+        for (int i = 0; i < gs.length; i++) {
+            gs[i] = relocate(b, gs[i]);
+        }
+        return new LongClause(cs.length, gs, base, neck, getIndexables(gs[0]));
+    }
+
+    final long getRef(final long x) {
+        return heap.get(detag(x));
+    }
+
+    void unwindTrail(final int savedTop) {
+        while (savedTop < trail.size() - 1) {
+            final long href = trail.popLong();
+            heap.set(detag(href), href);
+        }
+    }
+
+    long dereference(long x) {
+        while (isVAR(x)) {
+            final long r = getRef(x);
+            if (r == x) {
+                break;
+            }
+            x = r;
+        }
+        return x;
+    }
+
+    String showTerm(final Object O) {
+        if (O instanceof Object[]) {
+            return Program.st0((Object[]) O);
+        }
+        return O.toString();
+    }
+
+    /**
+     * builds an array of embedded arrays from a heap cell
+     */
+    Object exportTerm(long x) {
+        x = dereference(x);
+        final long value = detag(x);
+        return switch (tagOf(x)) {
+            case C -> symbols.get((int) value);
+            case N -> value;
+            case V -> "V" + value;
+            case R -> {
+                final long a = heap.get(value);
+                if (A != tagOf(a)) {
+                    yield "*** should be A, found=" + a;
+                }
+                final var arr = new Object[(int) detag(a)];
+                for (int i = 0; i < arr.length; i++) {
+                    arr[i] = exportTerm(heap.get(value + 1 + i));
+                }
+                yield arr;
+            }
+            default -> "*BAD TERM*" + x;
+        };
+    }
+
+    /**
+     * unification of the cells on the unification stack, trailing
+     * bindings of variables below hb
+     */
+    boolean unify(final long hb) {
+        while (!unificationStack.isEmpty()) {
+            final long x1 = dereference(unificationStack.popLong());
+            final long x2 = dereference(unificationStack.popLong());
+            if (x1 != x2) {
+                final long w1 = detag(x1);
+                final long w2 = detag(x2);
+                if (isVAR(x1)) {
+                    if (isVAR(x2) && w2 > w1) {
+                        bind(x2, x1, hb);
+                    } else {
+                        bind(x1, x2, hb);
+                    }
+                } else if (isVAR(x2)) {
+                    bind(x2, x1, hb);
+                } else if (R == tagOf(x1) && R == tagOf(x2)) {
+                    final long n = heap.get(w1);
+                    if (n != heap.get(w2)) {
+                        return false;
+                    }
+                    for (long i = detag(n); i > 0; i--) {
+                        final long u1 = heap.get(w1 + i);
+                        final long u2 = heap.get(w2 + i);
+                        if (u1 != u2) {
+                            unificationStack.push(u2);
+                            unificationStack.push(u1);
+                        }
+                    }
+                } else {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * unifies a goal in place with the head of clause C0, as Engine.unifyHead
+     */
+    boolean unifyHead(final long goal, final LongClause C0, final long hb) {
+        clearRegs(C0.len());
+        final long h = detag(C0.hgs()[0]);
+        final long g = detag(goal);
+        if (heap.get(h) != heap.get(g)) {
+            return false;
+        }
+        headStack.clear();
+        for (long i = detag(heap.get(h)); i > 0; i--) {
+            headStack.push(h + i);
+            headStack.push(heap.get(g + i));
+        }
+        while (!headStack.isEmpty()) {
+            final long x = dereference(headStack.popLong());
+            final long a = headStack.popLong();
+            final long t = heap.get(a);
+            switch (tagOf(t)) {
+                case V, Engine.U -> {
+                    final int o = (int) (detag(t) - C0.base());
+                    final long v = regs[o];
+                    if (0 == v) {
+                        setReg(o, x);
+                    } else if (!unifyCells(v, x, hb)) {
+                        return false;
+                    }
+                }
+                case C, N -> {
+                    if (isVAR(x)) {
+                        bind(x, t, hb);
+                    } else if (x != t) {
+                        return false;
+                    }
+                }
+                case R -> {
+                    final long p = detag(t);
+                    final long v = regs[(int) (p - C0.base())];
+                    if (0 != v) {
+                        if (!unifyCells(v, x, hb)) {
+                            return false;
+                        }
+                    } else if (isVAR(x)) {
+                        bind(x, materialize(p, C0), hb);
+                    } else if (R == tagOf(x) && heap.get(detag(x)) == heap.get(p)) {
+                        setReg((int) (p - C0.base()), x);
+                        final long q = detag(x);
+                        for (long i = detag(heap.get(p)); i > 0; i--) {
+                            headStack.push(p + i);
+                            headStack.push(heap.get(q + i));
+                        }
+                    } else {
+                        return false;
+                    }
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private long materialize(final long p, final LongClause C0) {
+        final int mark = headStack.size();
+        final long ref = allocate(p, C0);
+        while (headStack.size() > mark) {
+            final long q = headStack.popLong();
+            final long s = headStack.popLong();
+            final int n = (int) detag(heap.get(s));
+            for (int i = 1; i <= n; i++) {
+                final long t = heap.get(s + i);
+                final int tag = tagOf(t);
+                long v = t;
+                if (tag < C) {
+                    final int o = (int) (detag(t) - C0.base());
+                    v = regs[o];
+                    if (0 == v) {
+                        if (R == tag) {
+                            v = allocate(detag(t), C0);
+                        } else {
+                            v = tag(V, q + i);
+                            setReg(o, v);
+                        }
+                    }
+                }
+                heap.set(q + i, v);
+            }
+        }
+        return ref;
+    }
+
+    private long allocate(final long p, final LongClause C0) {
+        final long q = heap.getTop() + 1;
+        final long ref = tag(R, q);
+        setReg((int) (p - C0.base()), ref);
+        heap.push(heap.get(p));
+        for (long i = detag(heap.get(p)); i > 0; i--) {
+            heap.push(0);
+        }
+        headStack.push(p);
+        headStack.push(q);
+        return ref;
+    }
+
+    long[] pushBody(final long goal, final LongClause C0) {
+        final long from = C0.base() + C0.neck();
+        final long to = C0.base() + C0.len();
+        final long b = tag(V, heap.getTop() + 1 - from);
+        for (long i = from; i < to; i++) {
+            heap.push(bodyCell(b, heap.get(i), C0.base()));
+        }
+        final int l = C0.hgs().length;
+        final var gs = new long[l];
+        gs[0] = goal;
+        for (int k = 1; k < l; k++) {
+            gs[k] = bodyCell(b, C0.hgs()[k], C0.base());
+        }
+        return gs;
+    }
+
+    private long bodyCell(final long b, final long cell, final long base) {
+        if (tagOf(cell) < 3) {
+            final long v = regs[(int) (detag(cell) - base)];
+            return 0 == v ? cell + b : v;
+        }
+        return cell;
+    }
+
+    private void bind(final long x, final long v, final long hb) {
+        final long w = detag(x);
+        heap.set(w, v);
+        if (w < hb) {
+            trail.push(x);
+        }
+    }
+
+    private boolean unifyCells(final long x1, final long x2, final long hb) {
+        unificationStack.clear();
+        unificationStack.push(x2);
+        unificationStack.push(x1);
+        return unify(hb);
+    }
+
+    private void setReg(final int o, final long v) {
+        regs[o] = v;
+        touched.push(o);
+    }
+
+    private void clearRegs(final int len) {
+        if (regs.length < len) {
+            regs = new long[Math.max(len, 2 * regs.length)];
+        } else {
+            for (int i = touched.size() - 1; i >= 0; i--) {
+                regs[touched.getInt(i)] = 0;
+            }
+        }
+        touched.clear();
+    }
+
+    private void makeIndexArgs(final LongSpine G, final long goal) {
+        if (G.xs != null) {
+            return;
+        }
+        G.xs = getIndexables(goal);
+        G.cs = candidates(goal, G.xs);
+    }
+
+    private int[] candidates(final long goal, final int[] xs) {
+        final long p = detag(goal);
+        final long functor = dereference(heap.get(p + 1));
+        if (!isConstant(functor)) {
+            return clauseIndex;
+        }
+        final int n = (int) detag(heap.get(p));
+        var P = predicate(functor, n);
+        if (null == P) {
+            P = predicate(0, n);
+        }
+        if (null == P) {
+            return NO_CLAUSES;
+        }
+        return P.candidates(xs);
+    }
+
+    private Predicate predicate(final long functor, final int n) {
+        final var ps = predicates.get(functor);
+        return null == ps || n >= ps.length ? null : ps[n];
+    }
+
+    private int[] getIndexables(final long ref) {
+        final long p = 1 + detag(ref);
+        final var xs = new int[(int) detag(getRef(ref))];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = cell2index(dereference(heap.get(p + i)));
+        }
+        return xs;
+    }
+
+    private int cell2index(final long cell) {
+        return switch (tagOf(cell)) {
+            case R -> functorKey(cell);
+            case C, N -> indexKey(cell);
+            default -> 0;
+        };
+    }
+
+    private int functorKey(final long ref) {
+        final long p = detag(ref);
+        final long functor = dereference(heap.get(p + 1));
+        if (!isConstant(functor)) {
+            return 0;
+        }
+        return indexKey(31 * functor + heap.get(p));
+    }
+
+    private static boolean match(final int[] xs, final LongClause clause) {
+        final int[] ys = clause.xs();
+        if (xs.length != ys.length) {
+            return false;
+        }
+        for (int i = 0; i < xs.length; i++) {
+            final int x = xs[i];
+            final int y = ys[i];
+            if (x != 0 && y != 0 && x != y) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * reduces the first goal of spine G, as Engine.unfold
+     */
+    private LongSpine unfold(final LongSpine G) {
+
+        final int trailTop = trail.size() - 1;
+        final long htop = heap.getTop();
+        final long base = htop + 1;
+        final int gtop = goalStack.size();
+
+        final long goal = goalStack.getLong(G.goals);
+
+        makeIndexArgs(G, goal);
+
+        final int last = G.cs.length;
+        for (int k = nextClause(G, G.k); k < last; ) {
+            final LongClause C0 = clauses.get(G.cs[k]);
+            final int next = nextClause(G, k + 1);
+            final boolean deterministic = next == last;
+
+            if (!unifyHead(goal, C0, deterministic ? G.base : base)) {
+                unwindTrail(trailTop);
+                heap.setTop(htop);
+                k = next;
+                continue;
+            }
+            final long[] gs = pushBody(goal, C0);
+            final int tail = nextGoals(G.goals);
+            G.k = next;
+            if (1 == gs.length && NO_GOALS == tail) {
+                return answer(trailTop);
+            } else if (deterministic) {
+                goalStack.size(Math.max(G.goalBase, frameEnd(tail)));
+                G.hd = goal;
+                G.goals = pushGoals(gs, tail);
+                G.k = 0;
+                G.xs = null;
+                G.cs = clauseIndex;
+                return G;
+            } else {
+                return spines.push().init(goal, base, pushGoals(gs, tail), gtop, trailTop, clauseIndex);
+            }
+        }
+        G.k = last;
+        return null;
+    }
+
+    private int pushGoals(final long[] gs, final int tail) {
+        if (1 == gs.length) {
+            return tail;
+        }
+        final int goals = goalStack.size();
+        for (int k = 1; k < gs.length; k++) {
+            goalStack.add(gs[k]);
+        }
+        goalStack.add(tail + 1);
+        return goals;
+    }
+
+    private int nextGoals(final int goals) {
+        final long next = goalStack.getLong(goals + 1);
+        return next < 0 ? goals + 1 : (int) next - 1;
+    }
+
+    private int frameEnd(int goals) {
+        if (NO_GOALS == goals) {
+            return 0;
+        }
+        while (goalStack.getLong(goals) < 0) {
+            goals++;
+        }
+        return goals + 1;
+    }
+
+    private int nextClause(final LongSpine G, int k) {
+        while (k < G.cs.length && !match(G.xs, clauses.get(G.cs[k]))) {
+            k++;
+        }
+        return k;
+    }
+
+    LongClause getQuery() {
+        return clauses.get(clauses.size() - 1);
+    }
+
+    LongSpine init() {
+        final long base = heap.size();
+        final var G = getQuery();
+        queryHead = G.hgs()[0];
+        return spines.push().init(queryHead, base, pushGoals(G.hgs(), NO_GOALS), goalStack.size(), trail.size() - 1, clauseIndex);
+    }
+
+    private LongSpine answer(final int trailTop) {
+        return new LongSpine(queryHead, trailTop);
+    }
+
+    private void popSpine() {
+        final LongSpine G = spines.pop();
+        unwindTrail(G.trailTop);
+        heap.setTop(G.base - 1);
+        goalStack.size(G.goalBase);
+    }
+
+    final LongSpine yield_() {
+        while (!spines.isEmpty()) {
+            final LongSpine G = spines.peek();
+            if (G.k >= G.cs.length) {
+                popSpine();
+                continue;
+            }
+            final LongSpine C = unfold(G);
+            if (null == C) {
+                popSpine();
+                continue;
+            }
+            if (NO_GOALS != C.goals) {
+                continue;
+            }
+            return C;
+        }
+        return null;
+    }
+
+    Object ask() {
+        query = yield_();
+        if (null == query) {
+            return null;
+        }
+        final Object R = exportTerm(query.hd);
+        unwindTrail(query.trailTop);
+        return R;
+    }
+
+    void run() {
+        long ctr = 0L;
+        for (; ; ctr++) {
+            final Object A = ask();
+            if (null == A) {
+                break;
+            }
+            if (ctr < 5) Program.println("[" + ctr + "] " + "*** ANSWER=" + showTerm(A));
+        }
+        if (ctr > 5) Program.println("...");
+        Program.println("TOTAL ANSWERS=" + ctr);
+    }
+
+    /**
+     * builds the clause dispatch table: clauses are grouped by the functor
+     * and arity of their head, clauses with a variable functor are merged
+     * into every predicate of the same arity they could match
+     */
+    final Long2ObjectOpenHashMap<Predicate[]> dispatch(final List<LongClause> clauses) {
+        var groups = new Long2ObjectOpenHashMap<IntArrayList[]>();
+        for (int i = 0; i < clauses.size(); i++) {
+            final long p = detag(clauses.get(i).hgs()[0]);
+            final long functor = heap.get(p + 1);
+            final int n = (int) detag(heap.get(p));
+            final long key = isConstant(functor) ? functor : 0;
+            var byArity = groups.get(key);
+            if (null == byArity || byArity.length <= n) {
+                byArity = null == byArity ? new IntArrayList[n + 1] : Arrays.copyOf(byArity, n + 1);
+                groups.put(key, byArity);
+            }
+            if (null == byArity[n]) {
+                byArity[n] = new IntArrayList();
+            }
+            byArity[n].add(i);
+        }
+        final var generic = groups.get(0);
+        var predicates = new Long2ObjectOpenHashMap<Predicate[]>(groups.size());
+        for (Long2ObjectMap.Entry<IntArrayList[]> e : groups.long2ObjectEntrySet()) {
+            final var byArity = e.getValue();
+            final var ps = new Predicate[byArity.length];
+            for (int n = 0; n < ps.length; n++) {
+                if (null == byArity[n]) {
+                    continue;
+                }
+                final int[] cs = byArity[n].toIntArray();
+                final boolean merge = 0 != e.getLongKey() && null != generic && n < generic.length && null != generic[n];
+                ps[n] = new Predicate(merge ? ArgIndex.union(cs, generic[n].toIntArray()) : cs, n, j -> clauses.get(j).xs());
+            }
+            predicates.put(e.getLongKey(), ps);
+        }
+        return predicates;
+    }
+}
@@ -0,0 +1,50 @@
+package ptarau.iprolog;
+
+/**
+ * Spine of a LongEngine: the same as a Spine, with the
+ * goal and the base of the heap of the clause as longs
+ */
+final class LongSpine {
+
+    long hd;
+
+    long base;
+
+    int goals;
+
+    int goalBase;
+
+    int trailTop;
+
+    int k;
+
+    int[] xs;
+
+    int[] cs;
+
+    LongSpine() {
+    }
+
+    /**
+     * creates a specialized spine returning an answer (with no goals left to solve)
+     */
+    LongSpine(long hd, int trailTop) {
+        init(hd, 0, Engine.NO_GOALS, 0, trailTop, null);
+        this.k = -1;
+    }
+
+    /**
+     * (re)initializes a spine - as a snapshot of some runtime elements
+     */
+    LongSpine init(long hd, long base, int goals, int goalBase, int trailTop, int[] cs) {
+        this.hd = hd;
+        this.base = base;
+        this.goals = goals;
+        this.goalBase = goalBase;
+        this.trailTop = trailTop;
+        this.k = 0;
+        this.xs = null;
+        this.cs = cs;
+        return this;
+    }
+}
@@ -3,13 +3,78 @@ package ptarau.iprolog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 final public class Main {
 
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
 
-    public static void main(String... args) {
+    public static void main(String... args) throws Exception {
         var fileName = args[0];
-        run(fileName, false);
+        if (args.length > 1 && "long".equals(args[1])) {
+            runLong(fileName);
+        } else if (args.length > 2 && "image".equals(args[1])) {
+            writeImage(fileName, args[2]);
+        } else if (args.length > 2 && "facts".equals(args[1])) {
+            writeFacts(fileName, args[2]);
+        } else if (args.length > 2 && "serve".equals(args[1])) {
+            serve(fileName, args[2], args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors());
+        } else {
+            run(fileName, false);
+        }
+    }
+
+    /**
+     * runs a program on the engine with 64-bit cells
+     */
+    public static void runLong(final String programName) {
+        logger.info("Processing input [{}] with 64-bit cells", programName);
+        var engine = new LongEngine(programName);
+        var startTime = System.nanoTime();
+        engine.run();
+        var endTime = System.nanoTime();
+        logger.info("Done in {} seconds", (endTime - startTime) / 1000000000.0);
+    }
+
+    /**
+     * writes the image of a program, that loads back when given as the
+     * name of a program
+     */
+    public static void writeImage(final String programName, final String imageName) throws IOException {
+        logger.info("Writing image of [{}] to [{}]", programName, imageName);
+        new CompiledProgram(programName).save(Path.of(imageName));
+    }
+
+    /**
+     * writes the fact file of an external predicate from a file of rows of
+     * whitespace separated values
+     */
+    public static void writeFacts(final String rowsName, final String factsName) throws IOException {
+        logger.info("Writing facts of [{}] to [{}]", rowsName, factsName);
+        try (var rows = Files.newBufferedReader(Path.of(rowsName))) {
+            ExternalFacts.write(rows, Path.of(factsName));
+        }
+    }
+
+    /**
+     * serves queries against a program on a loopback port, or on a Unix
+     * domain socket when given a path, running at most engines at a time
+     */
+    public static void serve(final String programName, final String at, final int engines) throws Exception {
+        logger.info("Serving [{}] with {} engines", programName, engines);
+        final SocketAddress address = at.chars().allMatch(Character::isDigit)
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(at))
+                : UnixDomainSocketAddress.of(at);
+        try (var server = new QueryServer(new CompiledProgram(programName), engines)) {
+            server.start(address);
+            Thread.currentThread().join();
+        }
     }
 
     public static void run(final String programName, boolean streamMode) {
@@ -17,8 +82,10 @@ final public class Main {
 
         var program = new Program(programName);
 
-        logger.info("Program code");
-        program.prettyPrintCode();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Program code");
+            program.prettyPrintCode();
+        }
 
         logger.info("Executing program");
         var startTime = System.nanoTime();
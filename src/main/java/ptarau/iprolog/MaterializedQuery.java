@@ -0,0 +1,104 @@
+package ptarau.iprolog;
+
+import ptarau.iprolog.util.ArrayHeap;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+
+/**
+ * Answers of a goal kept up to date as facts of the program are added and
+ * removed: the goal is evaluated once on an engine of its own, keeping the
+ * tables of the calls to tabled predicates it makes - a change of the facts
+ * of a predicate drops the tables using it and those depending on them, and
+ * the goal is evaluated again only if its answers depend on them, reusing
+ * the tables left - listeners get the answers added and removed
+ */
+final class MaterializedQuery implements Closeable {
+
+    /**
+     * gets the answers, as exported terms, a change of facts added and removed
+     */
+    interface Listener {
+        void changed(List<Object> added, List<Object> removed);
+    }
+
+    private final Engine engine;
+    private final String goal;
+    private final Tables.Table root = new Tables.Table();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final LongConsumer onChange = this::changed;
+    private Set<Tables.Key> answers;
+
+    /**
+     * materializes goal, in the syntax of .nl files, as answered by query(goal)
+     */
+    MaterializedQuery(final CompiledProgram program, final String goal) {
+        this.engine = new Engine(program, new ArrayHeap());
+        this.goal = goal;
+        synchronized (this) {
+            answers = engine.evaluate(goal, root);
+            program.listen(onChange);
+        }
+    }
+
+    void listen(final Listener listener) {
+        listeners.add(listener);
+    }
+
+    void unlisten(final Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * returns the current answers, in the order found
+     */
+    synchronized List<Object> answers() {
+        return export(answers);
+    }
+
+    /**
+     * drops the tables the facts of the predicate with dispatch key key
+     * were used by, and evaluates the goal again if it depends on them
+     */
+    private synchronized void changed(final long key) {
+        engine.invalidate(key);
+        if (!root.stale && !root.uses.contains(key) && !root.uses.contains(Tables.ANY)) {
+            return;
+        }
+        final Set<Tables.Key> now = engine.evaluate(goal, root);
+        final Set<Tables.Key> added = new LinkedHashSet<>(now);
+        added.removeAll(answers);
+        final Set<Tables.Key> removed = new LinkedHashSet<>(answers);
+        removed.removeAll(now);
+        answers = now;
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        final List<Object> as = export(added);
+        final List<Object> rs = export(removed);
+        for (final Listener listener : listeners) {
+            listener.changed(as, rs);
+        }
+    }
+
+    private List<Object> export(final Set<Tables.Key> keys) {
+        final List<Object> Xs = new ArrayList<>(keys.size());
+        for (final Tables.Key k : keys) {
+            Xs.add(engine.exportCells(k.cells()));
+        }
+        return Xs;
+    }
+
+    /**
+     * stops following the changes of the facts of the program
+     */
+    @Override
+    public void close() {
+        engine.program.unlisten(onChange);
+    }
+}
@@ -0,0 +1,107 @@
+package ptarau.iprolog;
+
+import ptarau.iprolog.util.ArgIndex;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static ptarau.iprolog.Engine.START_INDEX;
+
+/**
+ * Entry of the clause dispatch table: the numbers of the clauses whose head
+ * has a given functor and arity, in program order, together with the
+ * argument indexes built over them on demand
+ *
+ * clauses  - clause numbers, including clauses with a variable functor
+ *            in their head and the same arity
+ * index    - argument index for each argument position, built the first time
+ *            the predicate is called with that argument bound, null when the
+ *            predicate has too few clauses to be worth indexing
+ * keys     - the index vector of a clause, given its number
+ * calls    - calls counted so far, by engines running with jit set, the
+ *            engine making call JIT_CALLS compiling the clauses
+ * compiled - set once the clauses have been compiled
+ *
+ * the clauses of a predicate loaded with the program do not change,
+ * those of a DynamicPredicate do, and a FactTable numbers rows instead
+ */
+class Predicate {
+
+    final int[] clauses;
+
+    final ArgIndex[] index;
+
+    final AtomicInteger calls = new AtomicInteger();
+    volatile boolean compiled;
+
+    final IntFunction<int[]> keys;
+
+    Predicate(final int[] clauses, final int width, final IntFunction<int[]> keys) {
+        this.clauses = clauses;
+        this.index = clauses.length < START_INDEX ? null : new ArgIndex[width];
+        this.keys = keys;
+    }
+
+    /**
+     * returns the clauses that could possibly match a goal with index
+     * vector xs: the posting list of its most selective bound argument,
+     * intersected with the other bound arguments while still long
+     */
+    int[] candidates(final int[] xs) {
+        if (null == index) {
+            return clauses;
+        }
+        final int n = Math.min(xs.length, index.length);
+        int best = 0;
+        int count = clauses.length;
+        for (int i = 1; i < n; i++) {
+            if (0 == xs[i]) {
+                continue;
+            }
+            final int c = argIndex(i).count(xs[i]);
+            if (c < count) {
+                best = i;
+                count = c;
+            }
+        }
+        if (0 == best) {
+            return clauses;
+        }
+        int[] cs = index[best].get(xs[best]);
+        for (int i = 1; i < n && cs.length > START_INDEX; i++) {
+            if (i != best && 0 != xs[i]) {
+                cs = ArgIndex.intersect(cs, index[i].get(xs[i]));
+            }
+        }
+        return cs;
+    }
+
+    /**
+     * returns the indexes on all argument positions, building those not
+     * built yet, null if the predicate has too few clauses to be indexed
+     */
+    ArgIndex[] indexes() {
+        for (int i = 1; null != index && i < index.length; i++) {
+            argIndex(i);
+        }
+        return index;
+    }
+
+    /**
+     * returns the index on argument position i, building it on first use
+     * from the index vectors of the clauses - indexes are immutable, so
+     * engines racing to build the same one at worst build it twice
+     */
+    private ArgIndex argIndex(final int i) {
+        var ix = index[i];
+        if (null == ix) {
+            final var ks = new int[clauses.length];
+            for (int j = 0; j < ks.length; j++) {
+                ks[j] = keys.apply(clauses[j])[i];
+            }
+            ix = new ArgIndex(clauses, ks);
+            index[i] = ix;
+        }
+        return ix;
+    }
+}
@@ -1,16 +1,74 @@
 package ptarau.iprolog;
 
+import ptarau.iprolog.util.ArrayHeap;
+import ptarau.iprolog.util.Heap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Queue;
 import java.util.Spliterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+/**
+ * Program as a Spliterator of its answers - splitting hands over the oldest
+ * untried alternatives to a new engine, so that a parallel stream explores
+ * disjoint parts of the search space on each of its engines, in no particular
+ * order, and engines running on a fork/join pool keep splitting off work to
+ * idle workers
+ *
+ * SPLIT_STEPS    - resolution steps trySplit advances the search by, at most,
+ *                  looking for alternatives to hand over
+ * STEAL_INTERVAL - resolution steps between checks for idle workers
+ * DRAIN_NANOS    - pause between passing on answers of other engines once
+ *                  the search of this one is over
+ */
 final class Program extends Engine implements Spliterator<Object> {
 
+    final static private int SPLIT_STEPS = 1 << 16;
+    final static private int STEAL_INTERVAL = 1 << 10;
+    final static private long DRAIN_NANOS = 100_000;
+
+    /**
+     * answers found by trySplit while looking for alternatives
+     */
+    final private Queue<Object> pending = new ArrayDeque<>();
+
+    private long estimate = Long.MAX_VALUE;
+
     Program(final String fileName) {
         super(fileName);
     }
 
+    Program(final String fileName, final Heap heap) {
+        super(fileName, heap);
+    }
+
+    Program(final CompiledProgram program) {
+        this(program, new ArrayHeap());
+    }
+
+    Program(final CompiledProgram program, final Heap heap) {
+        super(program, heap);
+    }
+
+    private Program(final Program parent, final int i) {
+        super(parent, i);
+        estimate = parent.estimate;
+    }
+
+    @Override
+    void clear() {
+        super.clear();
+        pending.clear();
+        estimate = Long.MAX_VALUE;
+    }
+
     static void prettyPrint(final Object o) {
         Main.prettyPrint(o);
     }
@@ -150,9 +208,21 @@ final class Program extends Engine implements Spliterator<Object> {
         return StreamSupport.stream(this, false);
     }
 
+    public Stream<Object> parallelStream() {
+        return StreamSupport.stream(this, true);
+    }
+
+    /**
+     * publishes the answers, found on a thread of their own up to capacity
+     * of them ahead of the demand of the subscriber
+     */
+    Flow.Publisher<Object> publisher(final int capacity) {
+        return new AnswerPublisher(this, capacity);
+    }
+
     @Override
     public boolean tryAdvance(Consumer<? super Object> action) {
-        final Object R = ask();
+        final Object R = pending.isEmpty() ? ask() : pending.poll();
         final boolean ok = null != R;
         if (ok) {
             action.accept(R);
@@ -160,18 +230,105 @@ final class Program extends Engine implements Spliterator<Object> {
         return ok;
     }
 
+    /**
+     * on a fork/join worker, the search splits off work to forked tasks
+     * whenever the pool has idle workers - their answers are passed to
+     * action on this thread
+     */
+    @Override
+    public void forEachRemaining(Consumer<? super Object> action) {
+        if (!ForkJoinTask.inForkJoinPool()) {
+            Spliterator.super.forEachRemaining(action);
+            return;
+        }
+        final Queue<Object> answers = new ConcurrentLinkedQueue<>();
+        final Runnable drain = () -> {
+            for (Object R; null != (R = answers.poll()); ) {
+                action.accept(R);
+            }
+        };
+        search(answers, drain);
+        drain.run();
+    }
+
+    /**
+     * runs the search to its end, adding its answers to a queue, run through
+     * drain every now and then, and forking tasks for other engines to take
+     * over alternatives while the pool has idle workers - then joins them,
+     * draining the queue meanwhile if a drain is given
+     */
+    private void search(final Queue<Object> answers, final Runnable drain) {
+        final var forked = new ArrayList<ForkJoinTask<?>>();
+        answers.addAll(pending);
+        pending.clear();
+        for (int steps = 1; !isDone(); steps++) {
+            final Spine A = step();
+            if (null != A) {
+                answers.add(export(A));
+            }
+            if (0 == steps % STEAL_INTERVAL) {
+                if (null != drain) {
+                    drain.run();
+                }
+                if (ForkJoinTask.getSurplusQueuedTaskCount() <= 0 && hasIdleWorkers()) {
+                    final int i = choicePoint();
+                    if (i >= 0) {
+                        final var other = new Program(this, i);
+                        forked.add(ForkJoinTask.adapt(() -> other.search(answers, null)).fork());
+                    }
+                }
+            }
+        }
+        for (int i = forked.size() - 1; i >= 0; i--) {
+            final var task = forked.get(i);
+            if (task.tryUnfork()) {
+                task.invoke(); // not stolen
+            } else if (null == drain) {
+                task.join();
+            }
+            while (!task.isDone()) { // keep passing on the answers found meanwhile
+                drain.run();
+                LockSupport.parkNanos(DRAIN_NANOS);
+            }
+            if (null != drain) {
+                drain.run();
+            }
+        }
+    }
+
+    private static boolean hasIdleWorkers() {
+        final var pool = ForkJoinTask.getPool();
+        return pool.getActiveThreadCount() < pool.getParallelism();
+    }
+
+    /**
+     * hands over the oldest untried alternatives to a new program, advancing
+     * the search for a while if there are none yet - null when the search
+     * is over or stays without alternatives
+     */
     @Override
     public Spliterator<Object> trySplit() {
+        for (int steps = 0; steps < SPLIT_STEPS && !isDone(); steps++) {
+            final int i = choicePoint();
+            if (i >= 0) {
+                estimate >>>= 1;
+                return new Program(this, i);
+            }
+            final Spine A = step();
+            if (null != A) {
+                pending.add(export(A));
+            }
+        }
         return null;
     }
 
     @Override
     public int characteristics() {
-        return (Spliterator.ORDERED | Spliterator.NONNULL) & ~Spliterator.SIZED;
+        return Spliterator.NONNULL;
     }
 
     @Override
     public long estimateSize() {
-        return Long.MAX_VALUE;
+        return estimate;
     }
 }
@@ -0,0 +1,310 @@
+package ptarau.iprolog;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import ptarau.iprolog.util.ArgIndex;
+import ptarau.iprolog.util.ColumnIndex;
+import ptarau.iprolog.util.Symbols;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Binary image of a CompiledProgram as loaded, that loads back without
+ * reading its .nl file again: the symbols, the code, the clauses and the
+ * dispatch table, with the argument indexes of its predicates, built before
+ * writing, and its fact tables with their column indexes
+ *
+ * the image is a sequence of little endian ints: a magic number and VERSION,
+ * then the symbols - their number, the end of each in their UTF-8 bytes and
+ * the bytes, padded to an int - the code - its length and cells - the clauses
+ * - their number, then len, base and neck of each, the end of the hgs of each
+ * in all of them and all of them, the same for xs - and the dispatch table -
+ * the number of predicates, then for each its key, as two ints, and its kind:
+ *
+ * CLAUSES - width, the length and numbers of its clauses, then for each
+ *           argument position its ArgIndex, if it has indexes
+ * FACTS   - functor, width, rows, the cells of each column, then for each
+ *           column 1 and its ColumnIndex if built, 0 otherwise
+ *
+ * it is read with a single mapping of the file, arrays being filled in bulk
+ * from it, field by field rather than clause by clause, so that loading costs
+ * about what allocating them does - predicates
+ * declared external are not part of it, they open their fact files again
+ */
+final class ProgramImage {
+
+    static final String SUFFIX = ".image";
+    static final int VERSION = 1;
+    private static final int MAGIC = 0x4d495049; // "IPIM"
+    private static final int CLAUSES = 0;
+    private static final int FACTS = 1;
+
+    final Symbols symbols;
+    final int[] code;
+    final List<Clause> clauses;
+    final Long2ObjectOpenHashMap<Predicate> predicates;
+
+    private ProgramImage(final Symbols symbols, final int[] code, final List<Clause> clauses,
+                         final Long2ObjectOpenHashMap<Predicate> predicates) {
+        this.symbols = symbols;
+        this.code = code;
+        this.clauses = clauses;
+        this.predicates = predicates;
+    }
+
+    /**
+     * writes the image of program, that must not have changed since loaded -
+     * nor have had a fact table made dynamic, even by a change matching
+     * nothing, as its rows are then clauses added, that images do not hold
+     */
+    static void write(final CompiledProgram program, final Path file) throws IOException {
+        if (0 != program.generation || program.predicates.values().stream().anyMatch(P -> P instanceof DynamicPredicate)) {
+            throw new IllegalStateException("Program changed since loaded");
+        }
+        final var out = new IntArrayList();
+        out.add(MAGIC);
+        out.add(VERSION);
+
+        final Symbols symbols = program.symbols;
+        final int n = symbols.size();
+        final var bytes = new ByteArrayOutputStream();
+        out.add(n);
+        for (int i = 0; i < n; i++) {
+            bytes.writeBytes(symbols.get(i).getBytes(StandardCharsets.UTF_8));
+            out.add(bytes.size());
+        }
+        final var bs = ByteBuffer.wrap(Arrays.copyOf(bytes.toByteArray(), (bytes.size() + 3) & ~3)).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        while (bs.hasRemaining()) {
+            out.add(bs.get());
+        }
+
+        out.add(program.code.length);
+        out.addElements(out.size(), program.code);
+
+        final List<Clause> clauses = program.clauses;
+        out.add(clauses.size());
+        for (final Clause C : clauses) {
+            out.add(C.len());
+        }
+        for (final Clause C : clauses) {
+            out.add(C.base());
+        }
+        for (final Clause C : clauses) {
+            out.add(C.neck());
+        }
+        writeAll(clauses, Clause::hgs, out);
+        writeAll(clauses, Clause::xs, out);
+
+        final var ps = new ArrayList<Long2ObjectMap.Entry<Predicate>>();
+        for (final var e : program.predicates.long2ObjectEntrySet()) {
+            if (!(e.getValue() instanceof ExternalFacts)) {
+                ps.add(e);
+            }
+        }
+        out.add(ps.size());
+        for (final var e : ps) {
+            out.add((int) (e.getLongKey() >>> 32));
+            out.add((int) e.getLongKey());
+            if (e.getValue() instanceof FactTable T) {
+                writeFacts(T, out);
+            } else {
+                writeClauses(e.getValue(), out);
+            }
+        }
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            final var buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            final var ints = buffer.asIntBuffer();
+            final int[] elements = out.elements();
+            for (int i = 0; i < out.size(); ) {
+                final int k = Math.min(ints.capacity(), out.size() - i);
+                ints.clear();
+                ints.put(elements, i, k);
+                buffer.clear().limit(4 * k);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                i += k;
+            }
+        }
+    }
+
+    /**
+     * appends the end of the array f gives for each clause in all of them,
+     * then all of them
+     */
+    private static void writeAll(final List<Clause> clauses, final Function<Clause, int[]> f, final IntArrayList out) {
+        int end = 0;
+        for (final Clause C : clauses) {
+            end += f.apply(C).length;
+            out.add(end);
+        }
+        for (final Clause C : clauses) {
+            out.addElements(out.size(), f.apply(C));
+        }
+    }
+
+    /**
+     * reads the arrays writeAll appends for m clauses
+     */
+    private static int[][] readAll(final IntBuffer in, final int m) {
+        final var ends = new int[m];
+        in.get(ends);
+        final var all = new int[0 == m ? 0 : ends[m - 1]];
+        in.get(all);
+        final var xss = new int[m][];
+        int from = 0;
+        for (int i = 0; i < m; i++) {
+            xss[i] = Arrays.copyOfRange(all, from, ends[i]);
+            from = ends[i];
+        }
+        return xss;
+    }
+
+    private static void writeClauses(final Predicate P, final IntArrayList out) {
+        final ArgIndex[] index = P.indexes();
+        final int width = null == index ? 0 : index.length;
+        out.add(CLAUSES);
+        out.add(width);
+        out.add(P.clauses.length);
+        out.addElements(out.size(), P.clauses);
+        for (int i = 1; i < width; i++) {
+            index[i].write(out);
+        }
+    }
+
+    private static void writeFacts(final FactTable T, final IntArrayList out) {
+        out.add(FACTS);
+        out.add(T.functor);
+        out.add(T.width);
+        out.add(T.size());
+        for (int i = 1; i < T.width; i++) {
+            out.addElements(out.size(), T.columns[i]);
+        }
+        for (int i = 1; i < T.width; i++) {
+            final ColumnIndex ix = T.index[i];
+            out.add(null == ix ? 0 : 1);
+            if (null != ix) {
+                ix.write(out);
+            }
+        }
+    }
+
+    /**
+     * reads an image, failing with an IllegalArgumentException if the file
+     * is not one, of this VERSION, or is cut short
+     */
+    static ProgramImage read(final Path file) {
+        final ByteBuffer buffer;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Image over 2GB: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final IntBuffer in = buffer.asIntBuffer();
+        if (in.remaining() < 2 || MAGIC != in.get()) {
+            throw new IllegalArgumentException("Not a program image: " + file);
+        }
+        final int version = in.get();
+        if (VERSION != version) {
+            throw new IllegalArgumentException("Program image version " + version + ", expected " + VERSION + ": " + file);
+        }
+        try {
+            final var image = read(buffer, in);
+            if (in.hasRemaining()) {
+                throw new IllegalArgumentException("Program image longer than its contents: " + file);
+            }
+            return image;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Truncated program image: " + file, e);
+        }
+    }
+
+    /**
+     * reads what follows the version of an image, in from buffer
+     */
+    private static ProgramImage read(final ByteBuffer buffer, final IntBuffer in) {
+        final var ends = new int[in.get()];
+        in.get(ends);
+        final var bytes = new byte[0 == ends.length ? 0 : ends[ends.length - 1]];
+        buffer.get(4 * in.position(), bytes);
+        in.position(in.position() + (bytes.length + 3) / 4);
+        final var names = new String[ends.length];
+        for (int i = 0, from = 0; i < names.length; from = ends[i++]) {
+            names[i] = new String(bytes, from, ends[i] - from, StandardCharsets.UTF_8);
+        }
+
+        final var code = new int[in.get()];
+        in.get(code);
+
+        final int m = in.get();
+        final var lens = new int[m];
+        in.get(lens);
+        final var bases = new int[m];
+        in.get(bases);
+        final var necks = new int[m];
+        in.get(necks);
+        final int[][] hgs = readAll(in, m);
+        final int[][] xs = readAll(in, m);
+        final List<Clause> clauses = new ArrayList<>(m);
+        for (int i = 0; i < m; i++) {
+            clauses.add(new Clause(lens[i], hgs[i], bases[i], necks[i], xs[i], null));
+        }
+
+        final int k = in.get();
+        final var predicates = new Long2ObjectOpenHashMap<Predicate>(k);
+        for (int i = 0; i < k; i++) {
+            final long key = (long) in.get() << 32 | in.get() & 0xFFFFFFFFL;
+            predicates.put(key, FACTS == in.get() ? readFacts(in) : readClauses(in, clauses));
+        }
+        return new ProgramImage(new Symbols(names), code, clauses, predicates);
+    }
+
+    private static Predicate readClauses(final IntBuffer in, final List<Clause> clauses) {
+        final int width = in.get();
+        final var cs = new int[in.get()];
+        in.get(cs);
+        final var P = new Predicate(cs, width, i -> clauses.get(i).xs());
+        for (int i = 1; i < width; i++) {
+            P.index[i] = ArgIndex.read(in);
+        }
+        return P;
+    }
+
+    private static FactTable readFacts(final IntBuffer in) {
+        final int functor = in.get();
+        final var columns = new int[in.get()][];
+        final int rows = in.get();
+        columns[0] = new int[0];
+        for (int i = 1; i < columns.length; i++) {
+            columns[i] = new int[rows];
+            in.get(columns[i]);
+        }
+        final var T = new FactTable(functor, columns);
+        for (int i = 1; i < columns.length; i++) {
+            if (1 == in.get()) {
+                T.index[i] = ColumnIndex.read(columns[i], in);
+            }
+        }
+        return T;
+    }
+}
@@ -0,0 +1,223 @@
+package ptarau.iprolog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Serves queries against a program loaded once over a line protocol, on a
+ * loopback TCP port or a Unix domain socket - each connection runs on a
+ * thread of its own, virtual when the JVM has them
+ *
+ * a request is a goal in the syntax of .nl files, optionally preceded by
+ * the maximum number of answers wanted: its answers are sent back one per
+ * line as they are found, followed by "done", the number of answers and
+ * the time the request took in microseconds - or by "error" and a message
+ * <p>
+ * "stats" returns the counters of the server and "quit" ends the session
+ * <p>
+ * at most engines requests run at a time, the others queue for an engine
+ */
+final class QueryServer implements Closeable {
+
+    final static private Logger logger = LoggerFactory.getLogger(QueryServer.class);
+
+    private final EnginePool pool;
+    private final Semaphore engines;
+    private final int capacity;
+    private final ThreadFactory threads = threads();
+    private final Stats stats = new Stats();
+    private ServerSocketChannel listener;
+
+    /**
+     * counters of the requests served: latencies are measured from the time
+     * a request is read to the time its last answer is sent, waits from the
+     * time it is read to the time it gets an engine
+     */
+    final class Stats {
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder latency = new LongAdder();
+        final AtomicLong maxLatency = new AtomicLong();
+        final LongAdder wait = new LongAdder();
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicInteger maxQueued = new AtomicInteger();
+
+        private void record(final long waitNanos, final long latencyNanos, final boolean failed) {
+            requests.increment();
+            if (failed) {
+                errors.increment();
+            }
+            wait.add(waitNanos);
+            latency.add(latencyNanos);
+            maxLatency.accumulateAndGet(latencyNanos, Math::max);
+        }
+
+        @Override
+        public String toString() {
+            final long n = Math.max(1, requests.sum());
+            return "requests " + requests.sum() + " errors " + errors.sum()
+                    + " latency " + latency.sum() / n / 1000 + "us max " + maxLatency.get() / 1000 + "us"
+                    + " wait " + wait.sum() / n / 1000 + "us"
+                    + " queued " + queued.get() + " max " + maxQueued.get()
+                    + " busy " + (capacity - engines.availablePermits()) + "/" + capacity;
+        }
+    }
+
+    QueryServer(final CompiledProgram program, final int engines) {
+        this.pool = new EnginePool(program, engines);
+        this.engines = new Semaphore(engines, true);
+        this.capacity = engines;
+    }
+
+    Stats stats() {
+        return stats;
+    }
+
+    /**
+     * returns a factory of virtual threads if the JVM has them, of
+     * daemon platform threads otherwise
+     */
+    private static ThreadFactory threads() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return r -> {
+                final var t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            };
+        }
+    }
+
+    /**
+     * starts accepting connections at address, a loopback InetSocketAddress
+     * or a UnixDomainSocketAddress, and returns the address listened at
+     */
+    SocketAddress start(final SocketAddress address) throws IOException {
+        listener = address instanceof UnixDomainSocketAddress
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open();
+        listener.bind(address);
+        threads.newThread(this::accept).start();
+        logger.info("Serving at {}", listener.getLocalAddress());
+        return listener.getLocalAddress();
+    }
+
+    private void accept() {
+        while (listener.isOpen()) {
+            try {
+                final SocketChannel channel = listener.accept();
+                threads.newThread(() -> serve(channel)).start();
+            } catch (IOException e) {
+                if (listener.isOpen()) {
+                    logger.warn("Accept failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * runs the session of a connection, one request per line
+     */
+    private void serve(final SocketChannel channel) {
+        try (channel;
+             var in = new BufferedReader(Channels.newReader(channel, UTF_8));
+             var out = new BufferedWriter(Channels.newWriter(channel, UTF_8))) {
+            for (String line; null != (line = in.readLine()); ) {
+                line = line.strip();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if ("quit".equals(line)) {
+                    break;
+                }
+                if ("stats".equals(line)) {
+                    out.write(stats.toString());
+                    out.newLine();
+                    out.flush();
+                    continue;
+                }
+                answer(line, out);
+            }
+        } catch (IOException e) {
+            logger.debug("Connection closed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * sends the answers of a request as they are found
+     */
+    private void answer(final String request, final BufferedWriter out) throws IOException {
+        final long start = System.nanoTime();
+        long limit = Long.MAX_VALUE;
+        String goal = request;
+        final int space = request.indexOf(' ');
+        if (space > 0 && Character.isDigit(request.charAt(0))) {
+            try {
+                limit = Long.parseLong(request.substring(0, space));
+                goal = request.substring(space + 1);
+            } catch (NumberFormatException ignored) {
+                // not a limit, part of the goal
+            }
+        }
+
+        if (!engines.tryAcquire()) {
+            stats.maxQueued.accumulateAndGet(stats.queued.incrementAndGet(), Math::max);
+            engines.acquireUninterruptibly();
+            stats.queued.decrementAndGet();
+        }
+        final long started = System.nanoTime();
+        final Program E = pool.acquire();
+        long n = 0;
+        String error = null;
+        try {
+            E.query(goal);
+            for (Object A; n < limit && null != (A = E.ask()); n++) {
+                out.write(E.showTerm(A));
+                out.newLine();
+                out.flush();
+            }
+        } catch (RuntimeException e) {
+            error = String.valueOf(e.getMessage()).replace('\n', ' ');
+        } finally {
+            pool.release(E);
+            engines.release();
+        }
+        final long latency = System.nanoTime() - start;
+        stats.record(started - start, latency, null != error);
+        logger.debug("{}: {} answers in {}us", goal, n, latency / 1000);
+        out.write(null == error ? "done " + n + " " + latency / 1000 + "us" : "error " + error);
+        out.newLine();
+        out.flush();
+    }
+
+    /**
+     * stops accepting connections - sessions going on run to their end
+     */
+    @Override
+    public void close() throws IOException {
+        if (null != listener) {
+            final var address = listener.getLocalAddress();
+            listener.close();
+            if (address instanceof UnixDomainSocketAddress a) {
+                a.getPath().toFile().delete();
+            }
+        }
+    }
+}
@@ -1,44 +1,49 @@
 package ptarau.iprolog;
 
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-import ptarau.iprolog.util.MyIntList;
-
 /**
- * runtime representation of an immutable list of goals
+ * runtime representation of a list of goals
  * together with top of heap and trail pointers
  * and current clause tried out by head goal
  * as well as registers associated to it
  * <p>
- * note that parts of this immutable lists
- * are shared among alternative branches
+ * the goals live in frames of the goal stack, a frame
+ * holding the body goals of a clause followed by a link
+ * to the goals after them - frames are never modified once
+ * pushed, so they are shared among alternative branches
  *
  * Spline is a runtime abstraction of a Clause.
  * It collects information needed for the execution of the goals
- * originating from it. Goal elements of this immutable list are shared
- * among alternative branches,
+ * originating from it. Spines popped from the spine stack are
+ * recycled for the next spines pushed to it.
  */
 final class Spine {
 
     /**
      * Head of the clause to which this corresponds
      */
-    final int hd;
+    int hd;
 
     /**
      * Base of the heap where the clause starts
      */
-    final int base;
+    int base;
+
+    /**
+     * Location in the goal stack of the first goal left
+     * to solve, or Engine.NO_GOALS, replaced when a
+     * deterministic spine gets reused for the next goals
+     */
+    int goals;
 
     /**
-     * Immutable list of the locations of the goal elements
-     * accumulated by unfolding clauses so far
+     * Top of the goal stack before the frame of this spine got pushed
      */
-    final MyIntList goals;
+    int goalBase;
 
     /**
      * Top of the trail as it was when the clause got unified
      */
-    final int trailTop;
+    int trailTop;
 
     /**
      * Index of the last clause that the top goal
@@ -54,28 +59,53 @@ final class Spine {
     /**
      * array of  clauses known to be unifiable with top goal in gs
      */
-    IntArrayList cs;
+    int[] cs;
 
     /**
-     * creates a spine - as a snapshot of some runtime elements
+     * independent goals solved in parallel, a tabled goal, or a goal
+     * adding or removing a fact, whose combinations of solutions replace
+     * the candidate clauses cs as the alternatives of this spine
      */
-    Spine(int[] gs0, int base, MyIntList goals, int trailTop, int k, IntArrayList cs) {
-        this.hd = gs0[0];
-        this.base = base;
-        this.goals = MyIntList.app(gs0, goals).tail(); // prepends the goals of clause with head hs
-        this.trailTop = trailTop;
-        this.k = k;
-        this.cs = cs;
+    Conjunction and;
+
+    /**
+     * the fact table of the predicate of the top goal, if stored as one,
+     * whose row numbers then replace clause numbers in cs
+     */
+    FactTable facts;
+
+    /**
+     * when cs is FactTable.ALL_ROWS, the row after the last candidate, the
+     * candidates being the rows of facts from k on
+     */
+    int end;
+
+    Spine() {
     }
+
     /**
      * creates a specialized spine returning an answer (with no goals left to solve)
      */
     Spine(int hd, int trailTop) {
+        init(hd, 0, Engine.NO_GOALS, 0, trailTop, null);
+        this.k = -1;
+    }
+
+    /**
+     * (re)initializes a spine - as a snapshot of some runtime elements
+     */
+    Spine init(int hd, int base, int goals, int goalBase, int trailTop, int[] cs) {
         this.hd = hd;
-        this.base = 0;
-        this.goals = MyIntList.empty;
+        this.base = base;
+        this.goals = goals;
+        this.goalBase = goalBase;
         this.trailTop = trailTop;
-        this.k = -1;
-        this.cs = null;
+        this.k = 0;
+        this.xs = null;
+        this.cs = cs;
+        this.and = null;
+        this.facts = null;
+        this.end = 0;
+        return this;
     }
 }
@@ -0,0 +1,62 @@
+package ptarau.iprolog;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * unsynchronized stack of spines, recycling the spines
+ * popped from it for the next ones pushed
+ */
+final class SpineStack<S> {
+
+    private final Supplier<S> factory;
+    private Object[] spines = new Object[64];
+    private int size;
+
+    SpineStack(final Supplier<S> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * pushes a spine, to be initialized by the caller
+     */
+    @SuppressWarnings("unchecked")
+    S push() {
+        if (size == spines.length) {
+            spines = Arrays.copyOf(spines, 2 * size);
+        }
+        var spine = (S) spines[size];
+        if (null == spine) {
+            spine = factory.get();
+            spines[size] = spine;
+        }
+        size++;
+        return spine;
+    }
+
+    /**
+     * pops the top spine - which stays valid until the next push
+     */
+    @SuppressWarnings("unchecked")
+    S pop() {
+        return (S) spines[--size];
+    }
+
+    @SuppressWarnings("unchecked")
+    S peek() {
+        return (S) spines[size - 1];
+    }
+
+    @SuppressWarnings("unchecked")
+    S get(final int i) {
+        return (S) spines[i];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return 0 == size;
+    }
+}
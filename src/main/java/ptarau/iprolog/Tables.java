@@ -0,0 +1,260 @@
+package ptarau.iprolog;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Answer tables of the calls to tabled predicates made by an engine and the
+ * engines it evaluates them in, keyed by the variant of the call: its copy,
+ * as copyTerm makes them, in which variables are numbered by first occurrence
+ *
+ * a table is evaluated by running its call against the clauses of its
+ * predicate until an iteration adds no answer to any table: calls to a
+ * variant being evaluated meanwhile consume the answers found so far, which
+ * makes the tables evaluated from then on depend on the oldest such variant,
+ * the leader of their component - they are complete once their leader is
+ *
+ * each table records the predicates whose clauses its evaluation used and
+ * the tables that consumed its answers: once clauses of a predicate change,
+ * the tables using it and those depending on them, transitively, are dropped
+ * to be evaluated again, the others are kept
+ *
+ * stack      - the tables being evaluated, their depth being their position
+ * incomplete - tables evaluated that wait for the completion of their leader
+ * added      - answers added to any table so far
+ * generation - generation of the clauses of the program the tables are for:
+ *              engines drop them once it changed, when cleared
+ */
+final class Tables {
+
+    /**
+     * stands among the predicates used for those a goal with a variable
+     * functor could call, which depend on the clauses of any predicate
+     */
+    static final long ANY = 0L;
+
+    /**
+     * variant of a call, or answer, as a block of relocatable cells
+     */
+    record Key(int[] cells) {
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Key k && Arrays.equals(cells, k.cells);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(cells);
+        }
+    }
+
+    /**
+     * key        - variant of the call it holds the answers of
+     * answers    - instances of the call its answers give, in the order found
+     * depth      - position on the stack while being evaluated, -1 otherwise
+     * leader     - depth of the oldest table being evaluated it depends on
+     * complete   - set once all its answers are in
+     * uses       - dispatch keys of the predicates its evaluation called
+     * dependents - tables whose evaluation consumed its answers
+     * stale      - set once dropped after a change of the clauses it uses
+     */
+    static final class Table {
+        final Key key;
+        final Set<Key> answers = new LinkedHashSet<>();
+        int depth = -1;
+        int leader;
+        boolean complete;
+        final LongOpenHashSet uses = new LongOpenHashSet();
+        final Set<Table> dependents = new HashSet<>();
+        boolean stale;
+        private int[][] cached;
+
+        /**
+         * returns the answers found so far
+         */
+        int[][] answers() {
+            if (null != cached) {
+                return cached;
+            }
+            final var as = new int[answers.size()][];
+            int i = 0;
+            for (final Key k : answers) {
+                as[i++] = k.cells();
+            }
+            if (complete) {
+                cached = as;
+            }
+            return as;
+        }
+
+        /**
+         * makes a table not keyed by a call, e.g. standing for a query
+         */
+        Table() {
+            this(null);
+        }
+
+        private Table(final Key key) {
+            this.key = key;
+        }
+    }
+
+    private final Map<Key, Table> tables = new HashMap<>();
+    private final List<Table> stack = new ArrayList<>();
+    private final List<Table> incomplete = new ArrayList<>();
+    long added;
+    final long generation;
+
+    /**
+     * makes tables for the clauses of a program at the given generation
+     */
+    Tables(final long generation) {
+        this.generation = generation;
+    }
+
+    /**
+     * returns the table of a call variant, a new one if there is none
+     */
+    Table get(final int[] variant) {
+        return tables.computeIfAbsent(new Key(variant), Table::new);
+    }
+
+    /**
+     * adds an answer to T, returning true if it is a new one
+     */
+    boolean add(final Table T, final int[] answer) {
+        if (!T.answers.add(new Key(answer))) {
+            return false;
+        }
+        added++;
+        return true;
+    }
+
+    /**
+     * records that the table on top of the stack consumes answers of the
+     * table at depth, still being evaluated
+     */
+    void dependsOn(final int depth) {
+        final Table top = stack.get(stack.size() - 1);
+        top.leader = Math.min(top.leader, depth);
+    }
+
+    /**
+     * records that the table on top of the stack, if any, calls the
+     * predicate with dispatch key key
+     */
+    void uses(final long key) {
+        if (!stack.isEmpty()) {
+            stack.get(stack.size() - 1).uses.add(key);
+        }
+    }
+
+    /**
+     * records that the table on top of the stack, if any, consumes the
+     * answers of T
+     */
+    void consumed(final Table T) {
+        if (!stack.isEmpty()) {
+            T.dependents.add(stack.get(stack.size() - 1));
+        }
+    }
+
+    /**
+     * starts an evaluation of T, forgetting what an earlier one used
+     */
+    void restart(final Table T) {
+        T.answers.clear();
+        T.cached = null;
+        T.complete = false;
+        T.stale = false;
+        T.uses.clear();
+        push(T);
+    }
+
+    /**
+     * drops the tables using the predicate with dispatch key key, and those
+     * depending on them, marking them stale
+     */
+    void invalidate(final long key) {
+        final List<Table> dropped = new ArrayList<>();
+        for (final Table t : tables.values()) {
+            if (t.uses.contains(key) || t.uses.contains(ANY)) {
+                dropped.add(t);
+            }
+        }
+        for (final Table t : dropped) {
+            drop(t);
+        }
+    }
+
+    private void drop(final Table T) {
+        if (T.stale) {
+            return;
+        }
+        T.stale = true;
+        if (null != T.key) {
+            tables.remove(T.key);
+        }
+        for (final Table t : T.dependents) {
+            drop(t);
+        }
+    }
+
+    /**
+     * starts an evaluation of T
+     */
+    void push(final Table T) {
+        incomplete.remove(T);
+        T.depth = stack.size();
+        T.leader = T.depth;
+        stack.add(T);
+    }
+
+    /**
+     * ends the evaluation of T, on top of the stack: as the leader of its
+     * component, it completes the tables of the component, otherwise they
+     * are left to the evaluation of its leader
+     */
+    void pop(final Table T) {
+        final int d = T.depth;
+        stack.remove(d);
+        T.depth = -1;
+        if (T.leader == d) {
+            T.complete = true;
+            incomplete.removeIf(t -> {
+                if (t.leader < d) {
+                    return false;
+                }
+                t.complete = true;
+                return true;
+            });
+        } else {
+            for (final Table t : incomplete) {
+                if (t.leader >= d) {
+                    t.leader = T.leader;
+                }
+            }
+            incomplete.add(T);
+            final Table parent = stack.get(d - 1);
+            parent.leader = Math.min(parent.leader, T.leader);
+        }
+    }
+
+    /**
+     * drops the tables of an evaluation that did not end, keeping the
+     * complete ones
+     */
+    void abandon() {
+        tables.values().removeIf(t -> !t.complete);
+        stack.clear();
+        incomplete.clear();
+    }
+}
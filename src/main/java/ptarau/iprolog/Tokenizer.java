@@ -1,16 +1,22 @@
 package ptarau.iprolog;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Reads chars from char streams using the current default encoding
+ * <p>
+ * sentences are read one at a time by nextSentence, so that a program
+ * can be loaded without holding the tokens of more than one of them
  */
-final class Tokenizer extends StreamTokenizer {
+final class Tokenizer extends StreamTokenizer implements Closeable {
 
     public enum SourceType {
-        RESOURCE, STRING
+        RESOURCE, FILE, STRING
     }
 
     public final static String IF = "if";
@@ -20,8 +26,11 @@ final class Tokenizer extends StreamTokenizer {
     public final static String LISTS = "lists"; // todo
     public final static String IS = "is"; // todo
 
+    private final Reader reader;
+
     public Tokenizer(final Reader reader) {
         super(reader);
+        this.reader = reader;
         resetSyntax();
         eolIsSignificant(false);
         ordinaryChar('.');
@@ -45,8 +54,9 @@ final class Tokenizer extends StreamTokenizer {
                     var resourceName = "/prolog/" + source + ".pl.nl";
                     var resource = Tokenizer.class.getResourceAsStream(resourceName);
                     assert resource != null;
-                    yield new InputStreamReader(resource);
+                    yield new BufferedReader(new InputStreamReader(resource));
                 }
+                case FILE -> Files.newBufferedReader(Path.of(source), Charset.defaultCharset());
                 case STRING -> new StringReader(source);
             };
             return new Tokenizer(reader);
@@ -57,17 +67,29 @@ final class Tokenizer extends StreamTokenizer {
 
     public static List<List<List<String>>> toSentences(String source, SourceType sourceType) {
         List<List<List<String>>> Wsss = new ArrayList<>();
+        try (Tokenizer tokenizer = createTokenizer(source, sourceType)) {
+            List<List<String>> Wss;
+            while (null != (Wss = tokenizer.nextSentence())) {
+                Wsss.add(Wss);
+            }
+        }
+        return Wsss;
+    }
+
+    /**
+     * reads the next sentence, up to its dot, as the words of each of its
+     * elements - null once no sentence is left, words after the last dot
+     * being dropped
+     */
+    public List<List<String>> nextSentence() {
         List<List<String>> Wss = new ArrayList<>();
         List<String> Ws = new ArrayList<>();
-        Tokenizer tokenizer = createTokenizer(source, sourceType);
         String t;
-        while (null != (t = tokenizer.getWord())) {
+        while (null != (t = getWord())) {
             switch (t) {
                 case DOT -> {
                     Wss.add(Ws);
-                    Wsss.add(Wss);
-                    Wss = new ArrayList<>();
-                    Ws = new ArrayList<>();
+                    return Wss;
                 }
                 case ("c:" + IF), ("c:" + AND) -> {
                     Wss.add(Ws);
@@ -88,7 +110,16 @@ final class Tokenizer extends StreamTokenizer {
                 default -> Ws.add(t);
             }
         }
-        return Wsss;
+        return null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     public String getWord() {
@@ -109,12 +140,8 @@ final class Tokenizer extends StreamTokenizer {
                     yield "v:" + sval;
                 } else {
                     try {
-                        final int n = Integer.parseInt(sval);
-                        if (Math.abs(n) < 1 << 28) {
-                            yield "n:" + sval;
-                        } else {
-                            yield "c:" + sval;
-                        }
+                        Long.parseLong(sval);
+                        yield "n:" + sval; // engines read the ones they cannot hold as symbols
                     } catch (final Exception e) {
                         yield "c:" + sval;
                     }
@@ -0,0 +1,189 @@
+package ptarau.iprolog.util;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * index of the clauses of a predicate on one argument position
+ *
+ * maps each index key found in that position to the sorted posting list
+ * of the numbers of the clauses having it, clauses with a variable in that
+ * position are kept apart as they match any key
+ */
+final public class ArgIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Int2ObjectOpenHashMap<int[]> postings;
+    private final int[] vars;
+
+    /**
+     * builds the index from clause numbers given in increasing order
+     * and their keys in the indexed position, 0 for variables
+     */
+    public ArgIndex(final int[] clauses, final int[] keys) {
+        final var lists = new Int2ObjectOpenHashMap<IntArrayList>();
+        final var vs = new IntArrayList();
+        for (int i = 0; i < clauses.length; i++) {
+            if (0 == keys[i]) {
+                vs.add(clauses[i]);
+            } else {
+                var list = lists.get(keys[i]);
+                if (null == list) {
+                    list = new IntArrayList(2);
+                    lists.put(keys[i], list);
+                }
+                list.add(clauses[i]);
+            }
+        }
+        postings = new Int2ObjectOpenHashMap<>(lists.size());
+        for (var e : lists.int2ObjectEntrySet()) {
+            postings.put(e.getIntKey(), e.getValue().toIntArray());
+        }
+        vars = vs.toIntArray();
+    }
+
+    private ArgIndex(final Int2ObjectOpenHashMap<int[]> postings, final int[] vars) {
+        this.postings = postings;
+        this.vars = vars;
+    }
+
+    /**
+     * appends the index to out as ints: the number of keys, each key followed
+     * by the length and the numbers of its posting list, then the length and
+     * the numbers of the clauses with a variable
+     */
+    public void write(final IntArrayList out) {
+        out.add(postings.size());
+        for (var e : postings.int2ObjectEntrySet()) {
+            out.add(e.getIntKey());
+            out.add(e.getValue().length);
+            out.addElements(out.size(), e.getValue());
+        }
+        out.add(vars.length);
+        out.addElements(out.size(), vars);
+    }
+
+    /**
+     * reads an index as write appends it
+     */
+    public static ArgIndex read(final IntBuffer in) {
+        final int n = in.get();
+        final var postings = new Int2ObjectOpenHashMap<int[]>(n);
+        for (int i = 0; i < n; i++) {
+            final int key = in.get();
+            final var ps = new int[in.get()];
+            in.get(ps);
+            postings.put(key, ps);
+        }
+        final var vars = new int[in.get()];
+        in.get(vars);
+        return new ArgIndex(postings, vars);
+    }
+
+    /**
+     * returns the sorted numbers of the clauses that could match key, the
+     * returned array is shared unless variables occur in this position
+     */
+    public int[] get(final int key) {
+        final int[] ps = postings.get(key);
+        if (null == ps) {
+            return vars;
+        }
+        if (0 == vars.length) {
+            return ps;
+        }
+        return union(ps, vars);
+    }
+
+    /**
+     * number of clauses that could match key
+     */
+    public int count(final int key) {
+        final int[] ps = postings.get(key);
+        return vars.length + (null == ps ? 0 : ps.length);
+    }
+
+    /**
+     * merges two sorted posting lists with no common elements
+     */
+    public static int[] union(final int[] xs, final int[] ys) {
+        final int[] zs = new int[xs.length + ys.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < xs.length && j < ys.length) {
+            zs[k++] = xs[i] < ys[j] ? xs[i++] : ys[j++];
+        }
+        while (i < xs.length) {
+            zs[k++] = xs[i++];
+        }
+        while (j < ys.length) {
+            zs[k++] = ys[j++];
+        }
+        return zs;
+    }
+
+    /**
+     * intersects two sorted posting lists by galloping through
+     * the longer one for each element of the shorter one
+     */
+    public static int[] intersect(final int[] xs, final int[] ys) {
+        if (xs.length > ys.length) {
+            return intersect(ys, xs);
+        }
+        if (0 == xs.length) {
+            return EMPTY;
+        }
+        final int[] zs = new int[xs.length];
+        int k = 0;
+        int lo = 0;
+        for (final int x : xs) {
+            lo = gallop(ys, lo, x);
+            if (lo == ys.length) {
+                break;
+            }
+            if (ys[lo] == x) {
+                zs[k++] = x;
+                lo++;
+            }
+        }
+        return k == zs.length ? zs : Arrays.copyOf(zs, k);
+    }
+
+    /**
+     * finds the first position at or after lo holding a value not less
+     * than x, probing at exponentially growing distances before a binary search
+     */
+    private static int gallop(final int[] ys, final int lo, final int x) {
+        int step = 1;
+        int hi = lo;
+        while (hi < ys.length && ys[hi] < x) {
+            hi = lo + step;
+            step <<= 1;
+        }
+        int l = lo + (step >> 2);
+        int h = Math.min(hi, ys.length);
+        while (l < h) {
+            final int m = (l + h) >>> 1;
+            if (ys[m] < x) {
+                l = m + 1;
+            } else {
+                h = m;
+            }
+        }
+        return l;
+    }
+
+    @Override
+    public String toString() {
+        final var buf = new StringBuilder("{");
+        for (var e : postings.int2ObjectEntrySet()) {
+            buf.append(e.getIntKey()).append('=').append(Arrays.toString(e.getValue())).append(' ');
+        }
+        return buf.append("vars=").append(Arrays.toString(vars)).append('}').toString();
+    }
+}
@@ -0,0 +1,64 @@
+package ptarau.iprolog.util;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * heap kept in a growable int array on the java heap
+ */
+public class ArrayHeap implements Heap {
+
+    final private static int MIN_SIZE = 1 << 15;
+
+    final private IntArrayList heap = new IntArrayList(MIN_SIZE);
+    final private int base;
+    private int top;
+
+    public ArrayHeap() {
+        this(0);
+    }
+
+    public ArrayHeap(final int base) {
+        this.base = base;
+        this.top = base - 1;
+    }
+
+    @Override
+    public int getTop() {
+        return top;
+    }
+
+    @Override
+    public int get(int i) {
+        return heap.getInt(i - base);
+    }
+
+    @Override
+    public void set(int i, int v) {
+        heap.set(i - base, v);
+    }
+
+    @Override
+    public void setTop(int top) {
+        this.top = top;
+    }
+
+    @Override
+    public void push(final int i) {
+        top++;
+        if (top - base < heap.size()) {
+            heap.set(top - base, i);
+        } else {
+            heap.add(i);
+        }
+    }
+
+    @Override
+    public int size() {
+        return top + 1;
+    }
+
+    @Override
+    public Heap empty(final int base) {
+        return new ArrayHeap(base);
+    }
+}
@@ -0,0 +1,110 @@
+package ptarau.iprolog.util;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * sorted index of a column of a fact table: the row numbers ordered by the
+ * value the column holds for them, then by row, so that the rows holding a
+ * value form a run, itself sorted, found by binary search - one int per row,
+ * instead of a posting list per value as ArgIndex keeps
+ */
+final public class ColumnIndex {
+
+    private final int[] column;
+    private final int[] rows;
+
+    /**
+     * builds the index of the values of column, given by row
+     */
+    public ColumnIndex(final int[] column) {
+        this.column = column;
+        final var keys = new long[column.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (long) column[i] << 32 | i;
+        }
+        Arrays.sort(keys);
+        rows = new int[keys.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = (int) keys[i];
+        }
+    }
+
+    private ColumnIndex(final int[] column, final int[] rows) {
+        this.column = column;
+        this.rows = rows;
+    }
+
+    /**
+     * appends the index to out as ints: the number of rows, then the rows
+     * in sorted order
+     */
+    public void write(final IntArrayList out) {
+        out.add(rows.length);
+        out.addElements(out.size(), rows);
+    }
+
+    /**
+     * reads the index of column as write appends it
+     */
+    public static ColumnIndex read(final int[] column, final IntBuffer in) {
+        final var rows = new int[in.get()];
+        in.get(rows);
+        return new ColumnIndex(column, rows);
+    }
+
+    /**
+     * returns the sorted numbers of the rows holding value
+     */
+    public int[] get(final int value) {
+        final int lo = first(value);
+        return Arrays.copyOfRange(rows, lo, after(value, lo));
+    }
+
+    /**
+     * number of rows holding value
+     */
+    public int count(final int value) {
+        final int lo = first(value);
+        return after(value, lo) - lo;
+    }
+
+    private int first(final int value) {
+        return first(value, 0);
+    }
+
+    /**
+     * finds the first position, from lo on, of a row holding a value not less than value
+     */
+    private int first(final int value, int lo) {
+        int hi = rows.length;
+        while (lo < hi) {
+            final int m = (lo + hi) >>> 1;
+            if (column[rows[m]] < value) {
+                lo = m + 1;
+            } else {
+                hi = m;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * finds the first position, from lo on, of a row holding a value greater
+     * than value - not searched as first(value + 1), which wraps at the largest int
+     */
+    private int after(final int value, int lo) {
+        int hi = rows.length;
+        while (lo < hi) {
+            final int m = (lo + hi) >>> 1;
+            if (column[rows[m]] <= value) {
+                lo = m + 1;
+            } else {
+                hi = m;
+            }
+        }
+        return lo;
+    }
+}
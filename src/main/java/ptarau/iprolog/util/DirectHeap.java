@@ -0,0 +1,81 @@
+package ptarau.iprolog.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * heap kept outside of the java heap in direct buffers of fixed size:
+ * it grows by adding a chunk, never copying the cells already there
+ */
+public class DirectHeap implements Heap {
+
+    final static int SHIFT = 20;
+    final static int CHUNK = 1 << SHIFT;
+    final static int MASK = CHUNK - 1;
+
+    private IntBuffer[] chunks = new IntBuffer[16];
+    final private int base;
+    private int capacity;
+    private int top;
+
+    public DirectHeap() {
+        this(0);
+    }
+
+    public DirectHeap(final int base) {
+        this.base = base;
+        this.top = base - 1;
+    }
+
+    @Override
+    public int getTop() {
+        return top;
+    }
+
+    @Override
+    public int get(int i) {
+        final int j = i - base;
+        return chunks[j >>> SHIFT].get(j & MASK);
+    }
+
+    @Override
+    public void set(int i, int v) {
+        final int j = i - base;
+        chunks[j >>> SHIFT].put(j & MASK, v);
+    }
+
+    @Override
+    public void setTop(int top) {
+        this.top = top;
+    }
+
+    @Override
+    public void push(final int i) {
+        top++;
+        if (top - base == capacity) {
+            grow();
+        }
+        set(top, i);
+    }
+
+    @Override
+    public int size() {
+        return top + 1;
+    }
+
+    @Override
+    public Heap empty(final int base) {
+        return new DirectHeap(base);
+    }
+
+    private void grow() {
+        final int n = capacity >>> SHIFT;
+        if (n == chunks.length) {
+            chunks = Arrays.copyOf(chunks, 2 * n);
+        }
+        chunks[n] = ByteBuffer.allocateDirect(CHUNK * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        capacity += CHUNK;
+    }
+}
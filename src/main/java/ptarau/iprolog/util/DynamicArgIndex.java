@@ -0,0 +1,57 @@
+package ptarau.iprolog.util;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * index of the clauses of a dynamic predicate on one argument position,
+ * growing with the clauses added to it: each one is appended to the posting
+ * list of its key, clause numbers growing, so that lists stay sorted
+ *
+ * unlike ArgIndex it is not immutable: callers serialize additions and
+ * lookups, and get copies of the posting lists
+ */
+final public class DynamicArgIndex {
+
+    private final Int2ObjectOpenHashMap<IntArrayList> postings = new Int2ObjectOpenHashMap<>();
+    private final IntArrayList vars = new IntArrayList();
+
+    /**
+     * adds clause, numbered after the clauses indexed so far, with key in
+     * the indexed position, 0 for a variable
+     */
+    public void add(final int clause, final int key) {
+        if (0 == key) {
+            vars.add(clause);
+            return;
+        }
+        var list = postings.get(key);
+        if (null == list) {
+            list = new IntArrayList(2);
+            postings.put(key, list);
+        }
+        list.add(clause);
+    }
+
+    /**
+     * returns a copy of the sorted numbers of the clauses that could match key
+     */
+    public int[] get(final int key) {
+        final IntArrayList ps = postings.get(key);
+        if (null == ps) {
+            return vars.toIntArray();
+        }
+        if (vars.isEmpty()) {
+            return ps.toIntArray();
+        }
+        return ArgIndex.union(ps.toIntArray(), vars.toIntArray());
+    }
+
+    /**
+     * number of clauses that could match key
+     */
+    public int count(final int key) {
+        final IntArrayList ps = postings.get(key);
+        return vars.size() + (null == ps ? 0 : ps.size());
+    }
+}
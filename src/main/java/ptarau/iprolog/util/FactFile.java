@@ -0,0 +1,301 @@
+package ptarau.iprolog.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * file of rows of int values, mapped in memory, together with a sorted index
+ * of each column and a dictionary of the symbols the values may stand for:
+ * nothing is read from it until asked for, and then only the pages holding
+ * what is asked for, so that files can be much larger than the java heap
+ *
+ * the layout, little endian, is a header of 32 bytes - magic, version,
+ * columns, rows and symbols, as ints - followed for each column by its values,
+ * by row, the same values sorted, and the rows in the order of the sorted
+ * values, all ints, then by the offsets of the symbols in their bytes, as
+ * longs, symbols + 1 of them, and the UTF-8 bytes of the symbols, sorted
+ *
+ * the file is mapped in chunks of 1GB, so that it can be larger than a
+ * single mapping allows, ints and longs never crossing two of them
+ */
+final public class FactFile {
+
+    private static final int MAGIC = 0x43465049; // "IPFC"
+    public static final int VERSION = 1;
+    private static final int HEADER = 32;
+    private static final int SHIFT = 30;
+    private static final long MASK = (1L << SHIFT) - 1;
+
+    private final MappedByteBuffer[] chunks;
+    private final int columns;
+    private final int rows;
+    private final int symbols;
+    private final long offsets;
+    private final long bytes;
+
+    private FactFile(final MappedByteBuffer[] chunks, final int columns, final int rows, final int symbols) {
+        this.chunks = chunks;
+        this.columns = columns;
+        this.rows = rows;
+        this.symbols = symbols;
+        this.offsets = align(HEADER + 12L * columns * rows);
+        this.bytes = offsets + 8L * (symbols + 1);
+    }
+
+    /**
+     * maps a fact file, checking its header
+     */
+    public static FactFile open(final Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final var chunks = new MappedByteBuffer[(int) ((size + MASK) >>> SHIFT)];
+            for (int i = 0; i < chunks.length; i++) {
+                final long from = (long) i << SHIFT;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(size - from, 1L << SHIFT));
+                chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            if (size < HEADER || MAGIC != chunks[0].getInt(0)) {
+                throw new IOException("Not a fact file: " + file);
+            }
+            if (VERSION != chunks[0].getInt(4)) {
+                throw new IOException("Fact file version " + chunks[0].getInt(4) + ", expected " + VERSION + ": " + file);
+            }
+            return new FactFile(chunks, chunks[0].getInt(8), chunks[0].getInt(12), chunks[0].getInt(16));
+        }
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int symbols() {
+        return symbols;
+    }
+
+    /**
+     * returns the value of column in row
+     */
+    public int get(final int column, final int row) {
+        return getInt(section(column, 0) + 4L * row);
+    }
+
+    /**
+     * returns the symbol numbered i
+     */
+    public String symbol(final int i) {
+        final long from = bytes + getLong(offsets + 8L * i);
+        final var bs = new byte[(int) (bytes + getLong(offsets + 8L * (i + 1)) - from)];
+        for (int j = 0; j < bs.length; j++) {
+            bs[j] = chunks[(int) ((from + j) >>> SHIFT)].get((int) ((from + j) & MASK));
+        }
+        return new String(bs, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * returns the number of symbol s, by binary search, -1 if it is not
+     * in the file
+     */
+    public int symbol(final String s) {
+        int lo = 0;
+        int hi = symbols;
+        while (lo < hi) {
+            final int m = (lo + hi) >>> 1;
+            final int c = symbol(m).compareTo(s);
+            if (0 == c) {
+                return m;
+            }
+            if (c < 0) {
+                lo = m + 1;
+            } else {
+                hi = m;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * number of rows holding value in column
+     */
+    public int count(final int column, final int value) {
+        final int lo = first(column, value);
+        return after(column, value, lo) - lo;
+    }
+
+    /**
+     * returns the sorted numbers of the rows holding value in column
+     */
+    public int[] rows(final int column, final int value) {
+        final int lo = first(column, value);
+        final var rs = new int[after(column, value, lo) - lo];
+        final long order = section(column, 2) + 4L * lo;
+        for (int i = 0; i < rs.length; i++) {
+            rs[i] = getInt(order + 4L * i);
+        }
+        return rs;
+    }
+
+    private int first(final int column, final int value) {
+        return first(column, value, 0);
+    }
+
+    /**
+     * finds the first position, from lo on, of a value not less than value
+     * among the sorted values of column
+     */
+    private int first(final int column, final int value, int lo) {
+        final long sorted = section(column, 1);
+        int hi = rows;
+        while (lo < hi) {
+            final int m = (lo + hi) >>> 1;
+            if (getInt(sorted + 4L * m) < value) {
+                lo = m + 1;
+            } else {
+                hi = m;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * finds the first position, from lo on, of a value greater than value
+     * among the sorted values of column - not searched as first(column,
+     * value + 1, lo), which wraps at the largest int
+     */
+    private int after(final int column, final int value, int lo) {
+        final long sorted = section(column, 1);
+        int hi = rows;
+        while (lo < hi) {
+            final int m = (lo + hi) >>> 1;
+            if (getInt(sorted + 4L * m) <= value) {
+                lo = m + 1;
+            } else {
+                hi = m;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * returns the offset of part k of column: its values by row, sorted, or
+     * the rows in sorted order
+     */
+    private long section(final int column, final int k) {
+        return HEADER + 4L * rows * (3L * column + k);
+    }
+
+    private int getInt(final long p) {
+        return chunks[(int) (p >>> SHIFT)].getInt((int) (p & MASK));
+    }
+
+    private long getLong(final long p) {
+        return chunks[(int) (p >>> SHIFT)].getLong((int) (p & MASK));
+    }
+
+    private static long align(final long p) {
+        return (p + 7) & ~7L;
+    }
+
+    /**
+     * writes a fact file holding the values of columns, by row, with the
+     * symbols they may stand for - that must come sorted, as String
+     * compares them, since they are looked up by binary search
+     */
+    public static void write(final Path file, final int[][] columns, final String[] symbols) throws IOException {
+        final int rows = 0 == columns.length ? 0 : columns[0].length;
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            final var out = new Output(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(columns.length);
+            out.putInt(rows);
+            out.putInt(symbols.length);
+            for (long p = 20; p < HEADER; p += 4) {
+                out.putInt(0);
+            }
+            for (final int[] column : columns) {
+                final var keys = new long[rows];
+                for (int i = 0; i < rows; i++) {
+                    out.putInt(column[i]);
+                    keys[i] = (long) column[i] << 32 | i;
+                }
+                Arrays.sort(keys);
+                for (final long key : keys) {
+                    out.putInt((int) (key >> 32));
+                }
+                for (final long key : keys) {
+                    out.putInt((int) key);
+                }
+            }
+            if (0 != (HEADER + 12L * columns.length * rows) % 8) {
+                out.putInt(0);
+            }
+            final var encoded = new byte[symbols.length][];
+            long offset = 0;
+            for (int i = 0; i < symbols.length; i++) {
+                encoded[i] = symbols[i].getBytes(StandardCharsets.UTF_8);
+                out.putLong(offset);
+                offset += encoded[i].length;
+            }
+            out.putLong(offset);
+            for (final byte[] bs : encoded) {
+                out.put(bs);
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * buffered little endian writes to a channel
+     */
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+        Output(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(final int v) throws IOException {
+            room(4);
+            buffer.putInt(v);
+        }
+
+        void putLong(final long v) throws IOException {
+            room(8);
+            buffer.putLong(v);
+        }
+
+        void put(final byte[] bs) throws IOException {
+            for (final byte b : bs) {
+                room(1);
+                buffer.put(b);
+            }
+        }
+
+        private void room(final int n) throws IOException {
+            if (buffer.remaining() < n) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -1,45 +1,35 @@
 package ptarau.iprolog.util;
 
-import it.unimi.dsi.fastutil.ints.IntArrayList;
+/**
+ * growable array of int cells, used as a stack: top is the
+ * last cell in use, cells above it are free to be reused
+ *
+ * a heap holds the cells from a base address on, those below it live
+ * elsewhere - e.g. in the code of a CompiledProgram - and are never
+ * accessed through it
+ */
+public interface Heap {
 
-public class Heap {
+    int getTop();
 
-    final private static int MIN_SIZE = 1 << 15;
+    int get(int i);
 
-    final private IntArrayList heap = new IntArrayList(MIN_SIZE);
-    private int top = -1;
+    void set(int i, int v);
 
-    public int getTop() {
-        return top;
-    }
-
-    public int get(int i) {
-        return heap.getInt(i);
-    }
-
-    public void set(int i, int v) {
-        heap.set(i, v);
-    }
-
-    public void setTop(int top) {
-        this.top = top;
-    }
+    void setTop(int top);
 
     /**
      * Pushes an element - top is incremented first than the
      * element is assigned. This means top point to the last assigned
      * element - which can be returned with peek().
      */
-    public void push(final int i) {
-        top++;
-        if (top < heap.size()) {
-            heap.set(top, i);
-        } else {
-            heap.add(i);
-        }
-    }
-
-    public int size() {
-        return top + 1;
-    }
+    void push(int i);
+
+    int size();
+
+    /**
+     * returns a new empty heap of the same kind, holding the
+     * cells from address base on
+     */
+    Heap empty(int base);
 }
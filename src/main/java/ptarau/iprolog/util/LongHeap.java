@@ -0,0 +1,61 @@
+package ptarau.iprolog.util;
+
+import java.util.Arrays;
+
+/**
+ * heap of long cells with long addresses, kept in arrays of fixed size
+ * so that it can outgrow the largest java array and grows by adding
+ * a chunk, never copying the cells already there
+ */
+public class LongHeap {
+
+    final private static int SHIFT = 20;
+    final private static int CHUNK = 1 << SHIFT;
+    final private static int MASK = CHUNK - 1;
+
+    private long[][] chunks = new long[16][];
+    private long capacity;
+    private long top = -1;
+
+    public long getTop() {
+        return top;
+    }
+
+    public long get(long i) {
+        return chunks[(int) (i >>> SHIFT)][(int) i & MASK];
+    }
+
+    public void set(long i, long v) {
+        chunks[(int) (i >>> SHIFT)][(int) i & MASK] = v;
+    }
+
+    public void setTop(long top) {
+        this.top = top;
+    }
+
+    /**
+     * Pushes an element - top is incremented first than the
+     * element is assigned. This means top point to the last assigned
+     * element.
+     */
+    public void push(final long i) {
+        top++;
+        if (top == capacity) {
+            grow();
+        }
+        set(top, i);
+    }
+
+    public long size() {
+        return top + 1;
+    }
+
+    private void grow() {
+        final int n = (int) (capacity >>> SHIFT);
+        if (n == chunks.length) {
+            chunks = Arrays.copyOf(chunks, 2 * n);
+        }
+        chunks[n] = new long[CHUNK];
+        capacity += CHUNK;
+    }
+}
@@ -1,24 +1,56 @@
 package ptarau.iprolog.util;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * symbol table made of map + reverse map from ints to symbols
+ *
+ * engines sharing a program may add symbols while others read them:
+ * lookups take no lock, additions are serialized and publish the
+ * reverse map through a volatile write
  */
 public class Symbols {
 
-    final private LinkedHashMap<String, Integer> map = new LinkedHashMap<>();
-    final private List<String> list = new ArrayList<>();
+    final private Map<String, Integer> map;
+    private volatile String[] list = new String[64];
+    private int size;
+
+    public Symbols() {
+        map = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * builds the table of symbols numbered as in symbols, distinct ones
+     */
+    public Symbols(final String[] symbols) {
+        map = new ConcurrentHashMap<>(symbols.length);
+        list = Arrays.copyOf(symbols, Math.max(64, symbols.length));
+        size = symbols.length;
+        for (int i = 0; i < size; i++) {
+            map.put(symbols[i], i);
+        }
+    }
 
     /**
      * places an identifier in the symbol table
      * returns the index
      */
     public int add(String symbol) {
-        return map.computeIfAbsent(symbol, s -> {
-            list.add(s);
-            return list.size() - 1;
-        });
+        final Integer i = map.get(symbol);
+        return null != i ? i : insert(symbol);
+    }
+
+    private synchronized int insert(final String symbol) {
+        final Integer i = map.get(symbol);
+        if (null != i) {
+            return i;
+        }
+        final String[] l = size == list.length ? Arrays.copyOf(list, 2 * size) : list;
+        l[size] = symbol;
+        list = l;
+        map.put(symbol, size);
+        return size++;
     }
 
     /**
@@ -26,6 +58,13 @@ public class Symbols {
      * in the symbol table
      */
     public String get(int i) {
-        return list.get(i);
+        return list[i];
+    }
+
+    /**
+     * number of symbols, numbered from 0 on
+     */
+    public synchronized int size() {
+        return size;
     }
 }
@@ -0,0 +1,25 @@
+table path 2 .
+
+edge a b .
+
+edge b c .
+
+edge c a .
+
+edge c d .
+
+edge d e .
+
+path X Y 
+if
+  path X Z and
+  edge Z Y .
+
+path X Y 
+if
+  edge X Y .
+
+goal Y 
+if
+  path a Y .
+
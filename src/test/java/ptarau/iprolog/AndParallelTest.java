@@ -0,0 +1,55 @@
+package ptarau.iprolog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * independent goals solved in parallel give the answers solving them
+ * sequentially does
+ */
+public class AndParallelTest {
+
+    private ForkJoinPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void slowGoalNextToFailingGoal() {
+        final var p = new Program("slowfail");
+        p.setAndParallel(pool);
+        assertNull(p.ask());
+    }
+
+    @Test
+    public void slowGoalNextToSucceedingGoal() {
+        final var p = new Program("slowsucceed");
+        p.setAndParallel(pool);
+        final Object answer = p.ask();
+        assertNotNull(answer);
+        assertEquals("goal([8,7,6,5,4,3,2,1])", p.showTerm(answer));
+        assertNull(p.ask());
+    }
+
+    @Test
+    public void sameAnswersAsSequential() {
+        for (final String name : new String[]{"queens8", "path"}) {
+            final var sequential = new Program(name);
+            final var parallel = new Program(name);
+            parallel.setAndParallel(pool);
+            assertEquals(name, Answers.of(sequential), Answers.of(parallel));
+        }
+    }
+}
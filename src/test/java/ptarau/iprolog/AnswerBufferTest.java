@@ -0,0 +1,121 @@
+package ptarau.iprolog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static ptarau.iprolog.Engine.*;
+
+/**
+ * answers taken in batches as flat cells, or only counted, are those
+ * ask() returns one at a time
+ */
+public class AnswerBufferTest {
+
+    /**
+     * the answers of buf, exported and shown
+     */
+    private static List<String> show(final Program p, final AnswerBuffer buf) {
+        final List<String> answers = new ArrayList<>();
+        for (int i = 0; i < buf.size(); i++) {
+            final int from = buf.offset(i);
+            final int[] cells = Arrays.copyOfRange(buf.cells.elements(), from, from + buf.length(i));
+            answers.add(p.showTerm(p.exportCells(cells)));
+        }
+        return answers;
+    }
+
+    @Test
+    public void batches() {
+        for (final String name : new String[]{"queens8", "path", "edges", "unify", "bignum"}) {
+            final List<String> expected = Answers.of(new Program(name));
+            final var p = new Program(name);
+            final var buf = new AnswerBuffer();
+            final List<String> answers = new ArrayList<>();
+            for (int k; 0 < (k = p.ask(7, buf)); buf.clear()) {
+                assertEquals(k, buf.size());
+                assertTrue(k == 7 || answers.size() + k == expected.size());
+                answers.addAll(show(p, buf));
+            }
+            assertEquals(name, expected, answers);
+        }
+    }
+
+    @Test
+    public void allAtOnce() {
+        final var p = new Program("queens8");
+        final var buf = new AnswerBuffer();
+        assertEquals(92, p.ask(1000, buf));
+        assertEquals(92, buf.size());
+        assertEquals(Answers.of(new Program("queens8")), show(p, buf));
+        assertEquals(0, p.ask(1000, buf));
+        assertEquals(92, buf.size());
+    }
+
+    @Test
+    public void mixedWithAsk() {
+        final List<String> expected = Answers.of(new Program("queens8"));
+        final var p = new Program("queens8");
+        final var buf = new AnswerBuffer();
+        final List<String> answers = new ArrayList<>();
+        while (true) {
+            final Object A = p.ask();
+            if (null == A) {
+                break;
+            }
+            answers.add(p.showTerm(A));
+            buf.clear();
+            p.ask(3, buf);
+            answers.addAll(show(p, buf));
+        }
+        assertEquals(expected, answers);
+    }
+
+    @Test
+    public void args() {
+        final var p = new Program("edges");
+        p.query("edge X Y");
+        final var buf = new AnswerBuffer();
+        assertEquals(2, p.ask(10, buf));
+        assertEquals(tag(C, p.symbols.add("a")), buf.arg(0, 1));
+        assertEquals(tag(C, p.symbols.add("b")), buf.arg(0, 2));
+        assertEquals(tag(C, p.symbols.add("c")), buf.arg(1, 2));
+
+        final var q = new Program("unify");
+        q.query("pair P 1 2");
+        buf.clear();
+        assertEquals(1, q.ask(10, buf));
+        // P is bound to p(1,2), copied within the answer
+        final int ref = buf.arg(0, 1);
+        assertEquals(R, tagOf(ref));
+        assertEquals(tag(N, 1), buf.cell(0, detag(ref) + 2));
+        assertEquals(tag(N, 2), buf.cell(0, detag(ref) + 3));
+    }
+
+    @Test
+    public void count() {
+        final var p = new Program("queens8");
+        assertEquals(92, p.count(Long.MAX_VALUE));
+        assertEquals(0, p.count(Long.MAX_VALUE));
+        final var q = new Program("queens8");
+        assertEquals(0, q.count(0));
+        assertEquals(1, q.count(1));
+        assertEquals(50, q.count(50));
+        assertEquals(41, q.count(Long.MAX_VALUE));
+        q.reset();
+        assertEquals(Answers.of(new Program("queens8")), Answers.of(q));
+    }
+
+    @Test
+    public void heapKeptByExport() {
+        final var p = new Program("queens8");
+        final var buf = new AnswerBuffer();
+        p.ask(10, buf);
+        final int size = p.heap.size();
+        show(p, buf);
+        assertEquals(size, p.heap.size());
+    }
+}
@@ -0,0 +1,46 @@
+package ptarau.iprolog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * answers of programs, shown as terms, for tests to compare
+ */
+final class Answers {
+
+    private Answers() {
+    }
+
+    /**
+     * all the answers of p, in the order found
+     */
+    static List<String> of(final Engine p) {
+        final List<String> answers = new ArrayList<>();
+        Object o;
+        while (null != (o = p.ask())) {
+            answers.add(p.showTerm(o));
+        }
+        return answers;
+    }
+
+    /**
+     * all the answers of p, in the order found
+     */
+    static List<String> of(final LongEngine p) {
+        final List<String> answers = new ArrayList<>();
+        Object o;
+        while (null != (o = p.ask())) {
+            answers.add(p.showTerm(o));
+        }
+        return answers;
+    }
+
+    /**
+     * all the answers of p, sorted, to compare as multisets
+     */
+    static List<String> sorted(final List<String> answers) {
+        final List<String> s = new ArrayList<>(answers);
+        s.sort(null);
+        return s;
+    }
+}
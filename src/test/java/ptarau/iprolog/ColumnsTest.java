@@ -0,0 +1,125 @@
+package ptarau.iprolog;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static ptarau.iprolog.Engine.*;
+
+/**
+ * ground facts stored as columns with -Diprolog.columns answer calls as
+ * the same facts stored as clauses do
+ */
+public class ColumnsTest {
+
+    private static final int ROWS = 300;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        System.clearProperty("iprolog.columns");
+    }
+
+    private Path write(final String clauses) throws IOException {
+        final var source = new StringBuilder();
+        for (int i = 0; i < ROWS; i++) {
+            source.append("row r").append(i).append(' ').append(i % 7).append(" c").append(i % 11).append(' ').append(i).append(" .\n\n");
+        }
+        source.append(clauses).append("goal A B C D \nif\n  row A B C D .\n");
+        final Path file = Files.createTempFile(folder.getRoot().toPath(), "rows", ".pl.nl");
+        Files.writeString(file, source);
+        return file;
+    }
+
+    private static CompiledProgram load(final Path file, final int columns) {
+        if (0 == columns) {
+            System.clearProperty("iprolog.columns");
+        } else {
+            System.setProperty("iprolog.columns", Integer.toString(columns));
+        }
+        return new CompiledProgram(file.toString());
+    }
+
+    private static Predicate row(final CompiledProgram cp) {
+        return cp.predicates.get(predicateKey(tag(C, cp.symbols.add("row")), tag(A, 5)));
+    }
+
+    private static List<String> answers(final CompiledProgram cp, final String goal) {
+        final var p = new Program(cp);
+        p.query(goal);
+        return Answers.of(p);
+    }
+
+    @Test
+    public void sameAnswersAsClauses() throws IOException {
+        final Path file = write("");
+        final var clauses = load(file, 0);
+        final var columns = load(file, 100);
+        assertFalse(row(clauses) instanceof FactTable);
+        assertTrue(row(columns) instanceof FactTable);
+        for (final String goal : new String[]{"row A B C D", "row r42 B C D", "row A 3 C D", "row A B c5 D",
+                "row A B C 299", "row A 3 c5 D", "row r3 3 c3 3", "row r3 4 C D", "row A 7 C D", "row A B C r3",
+                "row A B C D and row E B C F", "row A B A D"}) {
+            assertEquals(goal, answers(clauses, goal), answers(columns, goal));
+        }
+        assertEquals(Answers.of(new Program(clauses)), Answers.of(new Program(columns)));
+        assertEquals(ROWS, answers(columns, "row A B C D").size());
+    }
+
+    @Test
+    public void smallTablesStayClauses() throws IOException {
+        final Path file = write("");
+        assertFalse(row(load(file, ROWS + 1)) instanceof FactTable);
+        assertTrue(row(load(file, ROWS)) instanceof FactTable);
+    }
+
+    @Test
+    public void rulesKeepClauses() throws IOException {
+        // a rule among the facts, a fact with a variable, or a clause with a variable functor of the same arity
+        for (final String clause : new String[]{"extra r1 .\n\nrow X 0 c0 0 \nif\n  extra X .\n\n", "row r0 0 c0 X .\n\n", "F a b c d .\n\n"}) {
+            final Path file = write(clause);
+            final var clauses = load(file, 0);
+            final var columns = load(file, 100);
+            assertFalse(clause, row(columns) instanceof FactTable);
+            assertEquals(clause, answers(clauses, "row r1 B C D"), answers(columns, "row r1 B C D"));
+        }
+    }
+
+    @Test
+    public void changesMakeClauses() throws IOException {
+        final var cp = load(write(""), 100);
+        assertTrue(row(cp) instanceof FactTable);
+        cp.addFact("row extra 3 c5 1000");
+        assertTrue(row(cp) instanceof DynamicPredicate);
+        assertEquals(ROWS + 1, answers(cp, "row A B C D").size());
+        assertEquals(List.of("goal(extra,3,1000,c5)"), answers(cp, "row A B c5 D and row A 3 C D and row A B C 1000"));
+        assertTrue(cp.removeFact("row r42 0 c9 42"));
+        assertEquals(List.of(), answers(cp, "row r42 B C D"));
+        assertFalse(cp.removeFact("row r42 0 c9 42"));
+        assertEquals(ROWS, answers(cp, "row A B C D").size());
+    }
+
+    @Test
+    public void parallelScan() throws Exception {
+        final var cp = load(write(""), 100);
+        final var p = new Program(cp);
+        final var pool = new ForkJoinPool(4);
+        try {
+            final List<String> answers = pool.submit(() -> p.parallelStream().map(p::showTerm).collect(Collectors.toList())).get();
+            assertEquals(Answers.sorted(Answers.of(new Program(cp))), Answers.sorted(answers));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
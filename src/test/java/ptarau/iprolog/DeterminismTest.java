@@ -0,0 +1,108 @@
+package ptarau.iprolog;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * goals no other clause can match leave no choice point behind, so that
+ * tail recursive predicates run in constant spine space
+ */
+public class DeterminismTest {
+
+    private static final int N = 20000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Program load(final String clauses) throws IOException {
+        final var source = new StringBuilder("input _0 and\n  _0 lists");
+        for (int i = 0; i < N; i++) {
+            source.append(" a").append(i % 3);
+        }
+        source.append(" .\n\n").append(clauses);
+        final Path file = Files.createTempFile(folder.getRoot().toPath(), "loop", ".pl.nl");
+        Files.writeString(file, source);
+        return new Program(file.toString());
+    }
+
+    /**
+     * runs p to the end, returning the largest number of spines
+     * it had on its stack, once checked it found n answers
+     */
+    private static int maxDepth(final Program p, final int n) {
+        int answers = 0;
+        int max = 0;
+        while (!p.isDone()) {
+            final Spine A = p.step();
+            if (null != A) {
+                answers++;
+                p.unwindTrail(A.trailTop);
+            }
+            max = Math.max(max, p.depth());
+        }
+        assertEquals(n, answers);
+        return max;
+    }
+
+    @Test
+    public void tailRecursion() throws IOException {
+        final var p = load("walk nil .\n\nwalk _0 and\n  _0 holds list X Xs \nif\n  walk Xs .\n\n"
+                + "goal \nif\n  input L and\n  walk L .\n");
+        final int depth = maxDepth(p, 1);
+        assertTrue(Integer.toString(depth), depth < 8);
+    }
+
+    @Test
+    public void tailRecursionThroughSeveralClauses() throws IOException {
+        // each element picks one of the clauses of step, by its first argument
+        final var p = load("count nil Z Z .\n\n"
+                + "count _0 Y Z and\n  _0 holds list X Xs \nif\n  step X Xs Y Z .\n\n"
+                + "step a0 Xs Y Z \nif\n  count Xs Y Z .\n\n"
+                + "step a1 Xs Y Z \nif\n  count Xs _1 Z and\n  _1 holds s Y .\n\n"
+                + "step a2 Xs Y Z \nif\n  count Xs Y Z .\n\n"
+                + "goal \nif\n  input L and\n  count L 0 Z .\n");
+        final int depth = maxDepth(p, 1);
+        assertTrue(Integer.toString(depth), depth < 8);
+    }
+
+    @Test
+    public void lastAlternativeReusesChoicePoint() throws IOException {
+        final String member = "member X _0 and\n  _0 holds list X Xs .\n\n"
+                + "member X _0 and\n  _0 holds list Y Xs \nif\n  member X Xs .\n\n"
+                + "goal X \nif\n  input L and\n  member X L .\n";
+        assertTrue(maxDepth(load(member), N) < 8);
+        final List<String> answers = Answers.of(load(member));
+        assertEquals(N, answers.size());
+        assertEquals("goal(a0)", answers.get(0));
+        assertEquals("goal(a" + (N - 1) % 3 + ")", answers.get(N - 1));
+    }
+
+    @Test
+    public void choicePointsKept() throws IOException {
+        // trying the recursive clause first leaves the other one for each element
+        final String member = "member X _0 and\n  _0 holds list Y Xs \nif\n  member X Xs .\n\n"
+                + "member X _0 and\n  _0 holds list X Xs .\n\n"
+                + "goal X \nif\n  input L and\n  member X L .\n";
+        assertTrue(maxDepth(load(member), N) > N);
+        final List<String> answers = Answers.of(load(member));
+        assertEquals(N, answers.size());
+        assertEquals("goal(a" + (N - 1) % 3 + ")", answers.get(0));
+        assertEquals("goal(a0)", answers.get(N - 1));
+    }
+
+    @Test
+    public void bundledPrograms() {
+        final int big = maxDepth(new Program("big"), 1);
+        assertTrue(Integer.toString(big), big < 8);
+        final int queens = maxDepth(new Program("queens8"), 92);
+        assertTrue(Integer.toString(queens), queens < 32);
+    }
+}
@@ -0,0 +1,84 @@
+package ptarau.iprolog;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static ptarau.iprolog.Engine.*;
+
+/**
+ * goals only try the clauses of their own predicate, together with those
+ * whose head has a variable functor
+ */
+public class DispatchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> answers(final Program p, final String goal) {
+        p.query(goal);
+        return Answers.of(p);
+    }
+
+    private static Predicate predicate(final CompiledProgram cp, final String name, final int arity) {
+        return cp.predicates.get(predicateKey(tag(C, cp.symbols.add(name)), tag(A, arity + 1)));
+    }
+
+    @Test
+    public void clausesOfOwnPredicate() {
+        final var cp = new CompiledProgram("dispatch");
+        assertEquals(4, predicate(cp, "color", 1).clauses.length);
+        assertEquals(3, predicate(cp, "size", 1).clauses.length);
+        assertEquals(1, predicate(cp, "pair", 2).clauses.length);
+    }
+
+    @Test
+    public void variableFunctorClausesMergedInProgramOrder() {
+        final var p = new Program("dispatch");
+        assertEquals(List.of("goal(red)", "goal(green)", "goal(thing)", "goal(blue)"), answers(p, "color X"));
+        assertEquals(List.of("goal(small)", "goal(thing)", "goal(big)"), answers(p, "size X"));
+        // no predicate of that name, only the clause with a variable functor
+        assertEquals(List.of("goal(thing)"), answers(p, "shape X"));
+        assertEquals(List.of(), answers(p, "shape X Y"));
+    }
+
+    @Test
+    public void variableFunctorGoals() {
+        final var p = new Program("dispatch");
+        assertEquals(List.of("goal(color)"), answers(p, "F red"));
+        assertEquals(List.of("goal(size)"), answers(p, "F big"));
+        final List<String> things = answers(p, "F thing");
+        assertEquals(1, things.size());
+        assertTrue(things.get(0), things.get(0).matches("goal\\(V\\d+\\)"));
+    }
+
+    @Test
+    public void programQuery() {
+        final List<String> answers = Answers.of(new Program("dispatch"));
+        assertEquals(12, answers.size());
+        assertEquals("goal(red,small)", answers.get(0));
+        assertEquals("goal(blue,big)", answers.get(11));
+    }
+
+    @Test
+    public void manyPredicates() throws IOException {
+        final var source = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            for (int j = 0; j < 3; j++) {
+                source.append("p").append(i).append(" v").append(i).append('_').append(j).append(" .\n\n");
+            }
+        }
+        source.append("goal X \nif\n  p321 X .\n");
+        final Path file = folder.newFile("many.pl.nl").toPath();
+        Files.writeString(file, source);
+        final var cp = new CompiledProgram(file.toString());
+        assertEquals(3, predicate(cp, "p321", 1).clauses.length);
+        assertEquals(List.of("goal(v321_0)", "goal(v321_1)", "goal(v321_2)"), Answers.of(new Program(cp)));
+    }
+}
@@ -0,0 +1,117 @@
+package ptarau.iprolog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * facts added and removed once a program is loaded, from java and by the
+ * goals assert F and retract F
+ */
+public class DynamicDbTest {
+
+    private static int count(final Engine p, final String goal) {
+        p.query(goal);
+        return Answers.of(p).size();
+    }
+
+    @Test
+    public void addAndRemoveFacts() {
+        final var cp = new CompiledProgram("edges");
+        final var p = new Program(cp);
+        assertEquals(2, count(p, "edge X Y"));
+        cp.addFact("edge c d");
+        assertEquals(3, count(p, "edge X Y"));
+        assertEquals(1, count(p, "edge c Y"));
+        assertTrue(cp.removeFact("edge a b"));
+        assertFalse(cp.removeFact("edge a b"));
+        assertEquals(List.of("goal(b,c)", "goal(c,d)"), answers(p, "edge X Y"));
+    }
+
+    @Test
+    public void assertAndRetract() {
+        final var p = new Program(new CompiledProgram("edges"));
+        assertEquals(2, count(p, "edge X Y and _0 holds edge Y X and assert _0"));
+        assertEquals(4, count(p, "edge X Y"));
+        assertEquals(1, count(p, "_0 holds edge c Z and retract _0"));
+        assertEquals(0, count(p, "_0 holds edge q Z and retract _0"));
+        assertEquals(3, count(p, "edge X Y"));
+    }
+
+    @Test
+    public void callsSeeClausesAsWhenMade() {
+        final var cp = new CompiledProgram("edges");
+        final var p = new Program(cp);
+        for (int i = 0; i < 100; i++) {
+            cp.addFact("node n" + i + " " + i % 7);
+        }
+        // retracting all of them while iterating over them still meets each
+        assertEquals(14, count(p, "node X 3 and _0 holds node Y 3 and retract _0"));
+        assertEquals(0, count(p, "node X 3"));
+        assertEquals(86, count(p, "node X K"));
+    }
+
+    @Test
+    public void indexedAfterChanges() {
+        final var cp = new CompiledProgram("edges");
+        final var p = new Program(cp);
+        for (int i = 0; i < 1000; i++) {
+            cp.addFact("node n" + i + " " + i % 97);
+        }
+        assertEquals(1, count(p, "node n500 K"));
+        for (int i = 0; i < 1000; i += 2) {
+            cp.removeFact("node n" + i + " " + i % 97);
+        }
+        assertEquals(0, count(p, "node n500 K"));
+        assertEquals(1, count(p, "node n501 K"));
+        assertEquals(6, count(p, "node X 5"));
+        assertEquals(1, count(p, "X n3 K"));
+    }
+
+    /**
+     * engines reading the clauses while facts get added see each of them
+     * once its number is known to them
+     */
+    @Test
+    public void concurrentReaders() throws InterruptedException {
+        final var cp = new CompiledProgram("edges");
+        final int n = 20000;
+        final var failure = new AtomicReference<Throwable>();
+        final List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            final var reader = new Thread(() -> {
+                try {
+                    final var p = new Program(cp);
+                    for (int seen = 0; seen < n; ) {
+                        final int c = count(p, "node X K");
+                        assertTrue(c >= seen);
+                        seen = c;
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        for (int i = 0; i < n; i++) {
+            cp.addFact("node n" + i + " " + i % 97);
+        }
+        for (final var reader : readers) {
+            reader.join();
+        }
+        if (null != failure.get()) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(n, count(new Program(cp), "node X K"));
+    }
+
+    private static List<String> answers(final Engine p, final String goal) {
+        p.query(goal);
+        return Answers.of(p);
+    }
+}
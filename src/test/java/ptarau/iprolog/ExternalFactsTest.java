@@ -0,0 +1,94 @@
+package ptarau.iprolog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * predicates read from fact files give the answers their facts give
+ * as clauses
+ */
+public class ExternalFactsTest {
+
+    private static final int ROWS = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String external;
+    private String inline;
+
+    @Before
+    public void setUp() throws IOException {
+        final Path dir = folder.getRoot().toPath();
+        final var rows = new StringBuilder();
+        final var facts = new StringBuilder();
+        for (int i = 0; i < ROWS; i++) {
+            rows.append("e").append(i).append('\t').append("d").append(i % 20).append('\t').append(i % 7).append('\n');
+            facts.append("emp e").append(i).append(" d").append(i % 20).append(' ').append(i % 7).append(" .\n\n");
+        }
+        ExternalFacts.write(new StringReader(rows.toString()), dir.resolve("emp.facts"));
+        final String goal = "goal E D N \nif\n  emp E D N .\n";
+        external = Files.writeString(dir.resolve("external.pl.nl"), "external emp 3 .\n\n" + goal).toString();
+        inline = Files.writeString(dir.resolve("inline.pl.nl"), facts + goal).toString();
+        System.setProperty("iprolog.facts", dir.toString());
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("iprolog.facts");
+    }
+
+    @Test
+    public void sameAnswersAsClauses() {
+        final var e = new Program(external);
+        final var i = new Program(inline);
+        assertTrue(e.program.predicates.values().stream().anyMatch(P -> P instanceof ExternalFacts));
+        for (final String goal : new String[]{"emp E D N", "emp E d3 N", "emp e5 D N", "emp E D 4",
+                "emp E d3 4", "emp e5 d5 5", "emp E nowhere N", "emp E D 99", "emp X X N"}) {
+            e.query(goal);
+            i.query(goal);
+            assertEquals(goal, Answers.of(i), Answers.of(e));
+        }
+    }
+
+    @Test
+    public void scanAllRows() {
+        final List<String> answers = Answers.of(new Program(external));
+        assertEquals(ROWS, answers.size());
+        assertEquals("goal(e0,d0,0)", answers.get(0));
+        assertEquals("goal(e999,d19,5)", answers.get(ROWS - 1));
+    }
+
+    @Test
+    public void splitScanOfAllRows() throws Exception {
+        final var p = new Program(external);
+        final var pool = new ForkJoinPool(4);
+        try {
+            final List<String> parallel = pool.submit(() -> p.parallelStream()
+                    .map(p::showTerm)
+                    .collect(Collectors.toList())).get();
+            assertEquals(Answers.sorted(Answers.of(new Program(external))), Answers.sorted(parallel));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void externalCanNotChange() {
+        final var cp = new CompiledProgram(external);
+        assertThrows(IllegalArgumentException.class, () -> cp.addFact("emp e1000 d0 0"));
+    }
+}
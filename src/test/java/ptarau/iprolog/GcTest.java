@@ -0,0 +1,119 @@
+package ptarau.iprolog;
+
+import org.junit.Test;
+import ptarau.iprolog.util.ArrayHeap;
+import ptarau.iprolog.util.DirectHeap;
+import ptarau.iprolog.util.Heap;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * collecting the heap in the middle of a search changes none of its answers
+ */
+public class GcTest {
+
+    private static final int WATERMARK = 4096;
+
+    /**
+     * heap remembering the largest size it, or the empty heaps made from
+     * it, grew to
+     */
+    private static final class PeakHeap implements Heap {
+        private final Heap heap;
+        private final int[] peak;
+
+        PeakHeap(final Heap heap) {
+            this(heap, new int[1]);
+        }
+
+        private PeakHeap(final Heap heap, final int[] peak) {
+            this.heap = heap;
+            this.peak = peak;
+        }
+
+        int peak() {
+            return peak[0];
+        }
+
+        @Override
+        public int getTop() {
+            return heap.getTop();
+        }
+
+        @Override
+        public int get(final int i) {
+            return heap.get(i);
+        }
+
+        @Override
+        public void set(final int i, final int v) {
+            heap.set(i, v);
+        }
+
+        @Override
+        public void setTop(final int top) {
+            heap.setTop(top);
+        }
+
+        @Override
+        public void push(final int i) {
+            heap.push(i);
+            peak[0] = Math.max(peak[0], heap.size());
+        }
+
+        @Override
+        public int size() {
+            return heap.size();
+        }
+
+        @Override
+        public Heap empty(final int base) {
+            return new PeakHeap(heap.empty(base), peak);
+        }
+    }
+
+    private static List<String> answers(final CompiledProgram cp, final Heap heap, final int watermark) {
+        final var p = new Program(cp, heap);
+        p.setGcWatermark(watermark);
+        return Answers.of(p);
+    }
+
+    @Test
+    public void deepRecursion() {
+        final var cp = new CompiledProgram("nrevloop");
+        final var whole = new PeakHeap(new ArrayHeap());
+        final List<String> expected = answers(cp, whole, Integer.MAX_VALUE);
+        assertEquals(100, expected.size());
+        final var collected = new PeakHeap(new ArrayHeap());
+        assertEquals(expected, answers(cp, collected, WATERMARK));
+        assertTrue(collected.peak() + " vs " + whole.peak(), 4 * collected.peak() < whole.peak());
+    }
+
+    @Test
+    public void onDirectHeap() {
+        final var cp = new CompiledProgram("nrevloop");
+        assertEquals(answers(cp, new ArrayHeap(), Integer.MAX_VALUE), answers(cp, new DirectHeap(), WATERMARK));
+    }
+
+    @Test
+    public void bundledPrograms() {
+        for (final String name : new String[]{"add", "big", "queens8", "path", "slowsucceed"}) {
+            final var cp = new CompiledProgram(name);
+            assertEquals(name, answers(cp, new ArrayHeap(), Integer.MAX_VALUE), answers(cp, new ArrayHeap(), 256));
+        }
+    }
+
+    @Test
+    public void explicitCollection() {
+        final var p = new Program("nrevloop");
+        final var expected = Answers.of(new Program("nrevloop"));
+        p.setGcWatermark(Integer.MAX_VALUE);
+        final var first = p.ask();
+        p.gc();
+        assertEquals(expected.get(0), p.showTerm(first));
+        final var rest = Answers.of(p);
+        assertEquals(expected.subList(1, expected.size()), rest);
+    }
+}
@@ -0,0 +1,100 @@
+package ptarau.iprolog;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * goals left to solve come back in order from the frames of the goal
+ * stack, which are dropped once no spine can reach them
+ */
+public class GoalStackTest {
+
+    private static final int N = 20000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Program load(final String clauses) throws IOException {
+        final var source = new StringBuilder("input _0 and\n  _0 lists");
+        for (int i = 0; i < N; i++) {
+            source.append(" a").append(i % 3);
+        }
+        source.append(" .\n\nok a0 .\n\nok a1 .\n\nok a2 .\n\n").append(clauses);
+        final Path file = Files.createTempFile(folder.getRoot().toPath(), "goals", ".pl.nl");
+        Files.writeString(file, source);
+        return new Program(file.toString());
+    }
+
+    /**
+     * runs p to the end, returning the largest size its goal stack grew
+     * to, once checked it found n answers and dropped all the frames
+     * pushed after the goals of the query
+     */
+    private static int maxGoals(final Program p, final int n) {
+        final int query = p.goalStack.size();
+        int answers = 0;
+        int max = 0;
+        while (!p.isDone()) {
+            final Spine A = p.step();
+            if (null != A) {
+                answers++;
+                p.unwindTrail(A.trailTop);
+            }
+            max = Math.max(max, p.goalStack.size());
+        }
+        assertEquals(n, answers);
+        assertEquals(query, p.goalStack.size());
+        return max;
+    }
+
+    @Test
+    public void goalsInOrder() {
+        final var p = new Program("unify");
+        p.query("same X _0 and _0 holds f Y and same Y Z and same Z a and same W Z");
+        assertEquals(List.of("goal(f(a),a,a,a)"), Answers.of(p));
+        p.query("try X Y and same X d and same Z Y");
+        assertEquals(List.of("goal(d,c,c)"), Answers.of(p));
+    }
+
+    @Test
+    public void framesOfDeterministicGoalsDropped() throws IOException {
+        final var p = load("walk nil .\n\nwalk _0 and\n  _0 holds list X Xs \nif\n  ok X and\n  walk Xs .\n\n"
+                + "goal \nif\n  input L and\n  walk L .\n");
+        final int size = maxGoals(p, 1);
+        assertTrue(Integer.toString(size), size < 32);
+    }
+
+    @Test
+    public void continuationsKept() throws IOException {
+        // ok X is left to solve after the recursive call, for each element
+        final var p = load("walk nil .\n\nwalk _0 and\n  _0 holds list X Xs \nif\n  walk Xs and\n  ok X .\n\n"
+                + "goal \nif\n  input L and\n  walk L .\n");
+        assertTrue(maxGoals(p, 1) > N);
+    }
+
+    @Test
+    public void framesDroppedOnBacktracking() throws IOException {
+        final var p = load("member X _0 and\n  _0 holds list Y Xs \nif\n  member X Xs .\n\n"
+                + "member X _0 and\n  _0 holds list X Xs .\n\n"
+                + "goal X \nif\n  input L and\n  member X L and\n  ok X .\n");
+        final int size = maxGoals(p, N);
+        assertTrue(Integer.toString(size), size > N);
+    }
+
+    @Test
+    public void bundledPrograms() {
+        for (final String name : new String[]{"add", "big", "queens8", "path", "nrevloop"}) {
+            final var p = new Program(name);
+            final List<String> answers = Answers.of(new Program(name));
+            maxGoals(p, answers.size());
+        }
+    }
+}
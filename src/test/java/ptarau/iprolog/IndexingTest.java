@@ -0,0 +1,164 @@
+package ptarau.iprolog;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static ptarau.iprolog.Engine.*;
+
+/**
+ * calls with bound arguments in any position, including nested terms,
+ * find through the indexes built for them the answers a scan of all the
+ * clauses finds
+ */
+public class IndexingTest {
+
+    private static final int ROWS = 200;
+    private static final int[] MODS = {1, 2, 3, 5, 7, ROWS};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CompiledProgram load(final String source) throws IOException {
+        final Path file = folder.newFile().toPath().resolveSibling("indexing.pl.nl");
+        Files.writeString(file, source + "goal X \nif\n  eq X X .\n\neq X X .\n");
+        return new CompiledProgram(file.toString());
+    }
+
+    /**
+     * facts row(I, I mod 2, I mod 3, I mod 5, I mod 7, I)
+     */
+    private CompiledProgram rows() throws IOException {
+        final var source = new StringBuilder();
+        for (int i = 0; i < ROWS; i++) {
+            source.append("row");
+            for (final int m : MODS) {
+                source.append(' ').append(i % m);
+            }
+            source.append(" .\n\n");
+        }
+        return load(source.toString());
+    }
+
+    private static Predicate predicate(final CompiledProgram cp, final String name, final int arity) {
+        return cp.predicates.get(predicateKey(tag(C, cp.symbols.add(name)), tag(A, arity + 1)));
+    }
+
+    private static List<String> answers(final CompiledProgram cp, final String goal) {
+        final var p = new Program(cp);
+        p.query(goal);
+        return Answers.of(p);
+    }
+
+    /**
+     * the goal binding the arguments at the given positions, 1 based, to
+     * those of row i, and the answers a scan of all rows finds for it
+     */
+    private static void assertRows(final CompiledProgram cp, final int i, final int... bound) {
+        final var goal = new StringBuilder("row");
+        for (int a = 1; a <= MODS.length; a++) {
+            goal.append(' ').append(contains(bound, a) ? Integer.toString(i % MODS[a - 1]) : "X" + a);
+        }
+        final List<String> expected = new ArrayList<>();
+        for (int j = 0; j < ROWS; j++) {
+            final List<String> vars = new ArrayList<>();
+            boolean matches = true;
+            for (int a = 1; a <= MODS.length; a++) {
+                if (contains(bound, a)) {
+                    matches &= j % MODS[a - 1] == i % MODS[a - 1];
+                } else {
+                    vars.add(Integer.toString(j % MODS[a - 1]));
+                }
+            }
+            if (matches) {
+                expected.add("goal(" + String.join(",", vars) + ")");
+            }
+        }
+        assertEquals(goal.toString(), expected, answers(cp, goal.toString()));
+    }
+
+    private static boolean contains(final int[] xs, final int x) {
+        for (final int y : xs) {
+            if (x == y) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void anyBoundPosition() throws IOException {
+        final var cp = rows();
+        for (final int i : new int[]{0, 41, 199}) {
+            for (int a = 2; a <= MODS.length; a++) {
+                assertRows(cp, i, a);
+            }
+            assertRows(cp, i, 2, 3);
+            assertRows(cp, i, 4, 5);
+            assertRows(cp, i, 2, 3, 4, 5);
+            assertRows(cp, i, 3, 6);
+            assertRows(cp, i);
+        }
+        assertEquals(List.of(), answers(cp, "row X1 X2 X3 X4 X5 1000"));
+        assertEquals(List.of(), answers(cp, "row X1 1 X3 X4 X5 42"));
+    }
+
+    @Test
+    public void indexesBuiltOnDemand() throws IOException {
+        final var cp = rows();
+        final var P = predicate(cp, "row", 6);
+        assertNotNull(P.index);
+        for (final var ix : P.index) {
+            assertNull(ix);
+        }
+        assertRows(cp, 42, 5);
+        assertNotNull(P.index[5]);
+        assertNull(P.index[4]);
+        assertNull(P.index[6]);
+        assertRows(cp, 42, 6);
+        assertNotNull(P.index[6]);
+        assertNull(P.index[1]);
+    }
+
+    @Test
+    public void nestedFunctors() throws IOException {
+        final var source = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            source.append("kind _0 k").append(i).append(" and\n  _0 holds f").append(i).append(" X .\n\n");
+        }
+        source.append("kind _0 cons and\n  _0 lists a b .\n\n");
+        source.append("kind _0 succ and\n  _0 holds s 0 .\n\n");
+        source.append("kind X any .\n\n");
+        final var cp = load(source.toString());
+        assertEquals(List.of("goal(k3)", "goal(any)"), answers(cp, "kind _0 K and _0 holds f3 b"));
+        assertEquals(List.of("goal(cons)", "goal(any)"), answers(cp, "kind _0 K and _0 lists a _1"));
+        assertEquals(List.of("goal(succ)", "goal(any)"), answers(cp, "kind _0 K and _0 holds s _1"));
+        assertEquals(List.of("goal(any)"), answers(cp, "kind _0 K and _0 holds s _1 _2"));
+        assertEquals(List.of("goal(any)"), answers(cp, "kind 0 K"));
+        assertEquals(13, answers(cp, "kind X K").size());
+        // f3(_) and s(_) are told apart from other terms with one argument
+        final var P = predicate(cp, "kind", 2);
+        assertNotNull(P.index[1]);
+        assertEquals(2, P.candidates(new int[]{0, functorKey(tag(A, 2), tag(C, cp.symbols.add("f3"))), 0}).length);
+        assertEquals(2, P.candidates(new int[]{0, functorKey(tag(A, 2), tag(C, cp.symbols.add("s"))), 0}).length);
+    }
+
+    @Test
+    public void bundledPrograms() {
+        // big has enough s facts to get indexes on both their arguments
+        final var cp = new CompiledProgram("big");
+        assertEquals(Answers.of(new Program("big")), Answers.of(new Program(cp)));
+        final var p = new Program(cp);
+        p.query("s 3 Y");
+        assertEquals(List.of("goal(4)"), Answers.of(p));
+        p.query("s X 3");
+        assertEquals(List.of("goal(2)"), Answers.of(p));
+    }
+}
@@ -0,0 +1,62 @@
+package ptarau.iprolog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * compiled clauses give the answers interpreted ones do
+ */
+public class JitTest {
+
+    private static List<String> answers(final CompiledProgram cp, final boolean jit) {
+        final var p = new Program(cp);
+        p.setJit(jit);
+        return Answers.of(p);
+    }
+
+    @Test
+    public void sameAnswersAsInterpreted() {
+        for (final String name : new String[]{"add", "queens8", "path"}) {
+            final var cp = new CompiledProgram(name);
+            final List<String> interpreted = answers(cp, false);
+            assertEquals(name, interpreted, answers(cp, true));
+            assertEquals(name, interpreted, answers(cp, true)); // once compiled
+        }
+    }
+
+    @Test
+    public void compilesPredicatesCalledOften() {
+        final var cp = new CompiledProgram("queens8");
+        answers(cp, true);
+        int compiled = 0;
+        for (int i = 0; i < cp.compiled.length(); i++) {
+            compiled += null == cp.compiled.get(i) ? 0 : 1;
+        }
+        assertTrue(compiled > 0);
+    }
+
+    @Test
+    public void enginesCompilingTogether() throws Exception {
+        final var cp = new CompiledProgram("queens8");
+        final List<String> expected = answers(new CompiledProgram("queens8"), false);
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<List<String>>> runs = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                runs.add(pool.submit(() -> answers(cp, true)));
+            }
+            for (final var run : runs) {
+                assertEquals(expected, run.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package ptarau.iprolog;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ptarau.iprolog.util.Symbols;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * programs read a clause at a time from a reader load into the clauses
+ * they load into when read in full
+ */
+public class LoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * reader handing out at most n chars at a time, so that clauses get
+     * split across reads
+     */
+    private static final class ChoppyReader extends FilterReader {
+        private final int n;
+
+        ChoppyReader(final Reader in, final int n) {
+            super(in);
+            this.n = n;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) throws IOException {
+            return super.read(cbuf, off, Math.min(len, n));
+        }
+    }
+
+    /**
+     * the cells of the clauses load passes on, and the symbols it adds
+     */
+    private static List<String> clauses(final BiConsumer<Symbols, Loader.Sink> load) {
+        final var symbols = new Symbols();
+        final List<String> out = new ArrayList<>();
+        load.accept(symbols, (cs, gs, neck) -> out.add(Arrays.toString(cs) + Arrays.toString(gs) + neck));
+        for (int i = 0; i < symbols.size(); i++) {
+            out.add(symbols.get(i));
+        }
+        return out;
+    }
+
+    private static List<String> load(final Reader reader) {
+        return clauses((symbols, sink) -> Loader.load(reader, symbols, Engine.MAX_NUMBER, sink));
+    }
+
+    private static List<String> load(final String programName) {
+        return clauses((symbols, sink) -> Loader.load(programName, symbols, Engine.MAX_NUMBER, sink));
+    }
+
+    /**
+     * the clauses of source held in full in memory, once checked that reading
+     * its sentences one at a time gives those read all together
+     */
+    private static List<String> loadWhole(final String source) {
+        final var tokenizer = new Tokenizer(new StringReader(source));
+        for (final var Wss : Tokenizer.toSentences(source, Tokenizer.SourceType.STRING)) {
+            assertEquals(Wss, tokenizer.nextSentence());
+        }
+        assertNull(tokenizer.nextSentence());
+        return load(new StringReader(source));
+    }
+
+    private static String resource(final String name) throws IOException {
+        try (InputStream in = LoaderTest.class.getResourceAsStream("/prolog/" + name + ".pl.nl")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void clausesSplitAcrossReads() throws IOException {
+        for (final String name : new String[]{"add", "queens", "perms", "big", "path", "sud4x"}) {
+            final String source = resource(name);
+            final List<String> whole = loadWhole(source);
+            assertEquals(name, whole, load(name));
+            for (final int n : new int[]{1, 2, 7, 64}) {
+                assertEquals(name + " " + n, whole, load(new ChoppyReader(new StringReader(source), n)));
+            }
+        }
+    }
+
+    @Test
+    public void clauseLongerThanBuffer() throws IOException {
+        final String numbers = IntStream.range(0, 4000).mapToObj(Integer::toString).collect(Collectors.joining(" "));
+        final String source = "input _0 and\n  _0 lists " + numbers + " .\n\ngoal X \nif\n  input X .\n";
+        assertTrue(source.length() > 2 * 8192);
+        final Path file = folder.newFile("long.pl.nl").toPath();
+        Files.writeString(file, source);
+        final List<String> whole = loadWhole(source);
+        assertEquals(whole, load(file.toString()));
+        final var p = new Program(file.toString());
+        assertEquals("goal([" + numbers.replace(' ', ',') + "])", p.showTerm(p.ask()));
+    }
+
+    @Test
+    public void noFinalNewline() throws IOException {
+        final String source = resource("add").stripTrailing();
+        assertTrue(source.endsWith("."));
+        final Path file = folder.newFile("add.pl.nl").toPath();
+        Files.writeString(file, source);
+        assertEquals(load("add"), load(file.toString()));
+        assertEquals(Answers.of(new Program("add")), Answers.of(new Program(file.toString())));
+    }
+
+    @Test
+    public void wordsAfterLastDotDropped() {
+        final List<String> expected = load(new StringReader("add 0 X X ."));
+        assertEquals(expected, load(new StringReader("add 0 X X .\n\nadd 1 Y")));
+    }
+
+    @Test
+    public void sameProgramFromFile() throws IOException {
+        final Path file = folder.newFile("queens8.pl.nl").toPath();
+        Files.writeString(file, resource("queens8"));
+        assertEquals(Answers.of(new Program("queens8")), Answers.of(new Program(file.toString())));
+    }
+}
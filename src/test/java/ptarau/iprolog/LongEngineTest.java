@@ -0,0 +1,27 @@
+package ptarau.iprolog;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * the engine with 64-bit cells gives the answers of Engine on the programs
+ * both run - LongEngine has no tabling, so left recursive path is left out
+ */
+public class LongEngineTest {
+
+    @Test
+    public void sameAnswersAsEngine() {
+        for (final String name : new String[]{"add", "big", "queens8", "edges", "slowsucceed"}) {
+            assertEquals(name, Answers.of(new Program(name)), Answers.of(new LongEngine(name)));
+        }
+    }
+
+    @Test
+    public void numbersTooLargeForEngine() {
+        final var p = new LongEngine("bignum");
+        assertEquals(List.of("goal(1152921504606846975)", "goal(268435456)", "goal(1000000000000)"), Answers.of(p));
+    }
+}
@@ -0,0 +1,124 @@
+package ptarau.iprolog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * the answers of a materialized query follow the facts they depend on,
+ * listeners getting the answers added and removed by each change
+ */
+public class MaterializedQueryTest {
+
+    /**
+     * listener recording the changes it gets as shown answers
+     */
+    private static final class Changes implements MaterializedQuery.Listener {
+        private final Engine E;
+        final List<List<String>> added = new ArrayList<>();
+        final List<List<String>> removed = new ArrayList<>();
+
+        Changes(final CompiledProgram cp) {
+            E = new Program(cp);
+        }
+
+        @Override
+        public void changed(final List<Object> as, final List<Object> rs) {
+            added.add(Answers.sorted(as.stream().map(E::showTerm).toList()));
+            removed.add(Answers.sorted(rs.stream().map(E::showTerm).toList()));
+        }
+    }
+
+    private static List<String> answers(final CompiledProgram cp, final MaterializedQuery q) {
+        final var E = new Program(cp);
+        return Answers.sorted(q.answers().stream().map(E::showTerm).toList());
+    }
+
+    @Test
+    public void followsFacts() {
+        final var cp = new CompiledProgram("tabled");
+        try (var q = new MaterializedQuery(cp, "p 4 Y")) {
+            final var changes = new Changes(cp);
+            q.listen(changes);
+            assertEquals(List.of(), answers(cp, q));
+            cp.addFact("e 4 5");
+            assertEquals(List.of("goal(5)"), answers(cp, q));
+            cp.addFact("e 5 1");
+            assertEquals(List.of("goal(1)", "goal(2)", "goal(3)", "goal(4)", "goal(5)"), answers(cp, q));
+            assertTrue(cp.removeFact("e 4 5"));
+            assertEquals(List.of(), answers(cp, q));
+            assertEquals(List.of(List.of("goal(5)"), List.of("goal(1)", "goal(2)", "goal(3)", "goal(4)"), List.of()),
+                    changes.added);
+            assertEquals(List.of(List.of(), List.of(), List.of("goal(1)", "goal(2)", "goal(3)", "goal(4)", "goal(5)")),
+                    changes.removed);
+        }
+    }
+
+    @Test
+    public void sameAnswersAsQuery() {
+        final var cp = new CompiledProgram("tabled");
+        try (var q = new MaterializedQuery(cp, "p X Y")) {
+            final var p = new Program(cp);
+            for (final String fact : new String[]{"e 4 5", "e 6 7", "e 5 6", "e 7 1"}) {
+                cp.addFact(fact);
+                p.query("p X Y");
+                assertEquals(fact, Answers.sorted(Answers.of(p)), answers(cp, q));
+            }
+            assertEquals(49, answers(cp, q).size());
+        }
+    }
+
+    @Test
+    public void untabledGoals() {
+        final var cp = new CompiledProgram("edges");
+        try (var q = new MaterializedQuery(cp, "edge X Y and edge Y Z")) {
+            assertEquals(List.of("goal(a,b,c)"), answers(cp, q));
+            cp.addFact("edge c d");
+            assertEquals(List.of("goal(a,b,c)", "goal(b,c,d)"), answers(cp, q));
+        }
+    }
+
+    @Test
+    public void unrelatedChangesNotNotified() {
+        final var cp = new CompiledProgram("tabled");
+        try (var q = new MaterializedQuery(cp, "p 1 Y")) {
+            final var changes = new Changes(cp);
+            q.listen(changes);
+            // nat is not used by p, e 1 3 gives no answer not already there
+            cp.addFact("nat a");
+            cp.addFact("e 1 3");
+            assertTrue(changes.added.isEmpty());
+            cp.addFact("e 4 9");
+            assertEquals(List.of(List.of("goal(9)")), changes.added);
+        }
+    }
+
+    @Test
+    public void closedQueriesStop() {
+        final var cp = new CompiledProgram("tabled");
+        final var changes = new Changes(cp);
+        final var q = new MaterializedQuery(cp, "p 4 Y");
+        q.listen(changes);
+        q.close();
+        cp.addFact("e 4 5");
+        assertTrue(changes.added.isEmpty());
+        assertEquals(List.of(), answers(cp, q));
+    }
+
+    @Test
+    public void unlisten() {
+        final var cp = new CompiledProgram("tabled");
+        try (var q = new MaterializedQuery(cp, "p 4 Y")) {
+            final var changes = new Changes(cp);
+            q.listen(changes);
+            cp.addFact("e 4 5");
+            q.unlisten(changes);
+            cp.addFact("e 4 6");
+            assertEquals(1, changes.added.size());
+            assertEquals(List.of("goal(5)", "goal(6)"), answers(cp, q));
+        }
+    }
+}
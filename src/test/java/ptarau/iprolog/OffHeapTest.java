@@ -0,0 +1,29 @@
+package ptarau.iprolog;
+
+import org.junit.Test;
+import ptarau.iprolog.util.DirectHeap;
+
+import static org.junit.Assert.*;
+
+/**
+ * engines running on a heap outside of the java heap give the answers
+ * they give on an array
+ */
+public class OffHeapTest {
+
+    @Test
+    public void sameAnswersOnDirectHeap() {
+        for (final String name : new String[]{"add", "queens8", "path", "big"}) {
+            assertEquals(name, Answers.of(new Program(name)), Answers.of(new Program(name, new DirectHeap())));
+        }
+    }
+
+    @Test
+    public void sharedProgramOnDirectHeaps() {
+        final var cp = new CompiledProgram("queens8");
+        final var expected = Answers.of(new Program(cp));
+        assertEquals(92, expected.size());
+        assertEquals(expected, Answers.of(new Program(cp, new DirectHeap())));
+        assertEquals(expected, Answers.of(new Program(cp, new DirectHeap())));
+    }
+}
@@ -0,0 +1,55 @@
+package ptarau.iprolog;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * a parallel stream of answers gives those a sequential one does, in
+ * some order
+ */
+public class OrParallelTest {
+
+    private static List<String> answers(final String name, final boolean parallel) throws Exception {
+        final var p = new Program(name);
+        final var pool = new ForkJoinPool(4);
+        try {
+            return pool.submit(() -> (parallel ? p.parallelStream() : p.stream())
+                    .map(p::showTerm)
+                    .collect(Collectors.toList())).get();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void assertSameAnswers(final String name) throws Exception {
+        final List<String> sequential = answers(name, false);
+        assertFalse(name, sequential.isEmpty());
+        assertEquals(name, Answers.sorted(sequential), Answers.sorted(answers(name, true)));
+    }
+
+    @Test
+    public void queens8() throws Exception {
+        assertSameAnswers("queens8");
+    }
+
+    @Test
+    public void sud4x() throws Exception {
+        assertSameAnswers("sud4x");
+    }
+
+    @Test
+    public void tabled() throws Exception {
+        assertEquals(5, answers("path", false).size());
+        assertSameAnswers("path");
+    }
+
+    @Test
+    public void dynamic() throws Exception {
+        assertSameAnswers("update");
+    }
+}
@@ -0,0 +1,134 @@
+package ptarau.iprolog;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * programs loaded back from their images run as compiled from source
+ */
+public class ProgramImageTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        System.clearProperty("iprolog.columns");
+    }
+
+    private Path save(final CompiledProgram cp) throws IOException {
+        final Path file = folder.newFile("program" + ProgramImage.SUFFIX).toPath();
+        cp.save(file);
+        return file;
+    }
+
+    private static void assertSameAnswers(final String name, final Path image) {
+        final var loaded = new CompiledProgram(image.toString());
+        assertEquals(name, Answers.of(new Program(name)), Answers.of(new Program(loaded)));
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        for (final String name : new String[]{"add", "queens8", "path", "big", "edges", "nrevloop"}) {
+            final Path file = save(new CompiledProgram(name));
+            assertSameAnswers(name, file);
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void roundTripWithIndexes() throws IOException {
+        final var cp = new CompiledProgram("big");
+        // argument indexes get built before writing, and read back with the image
+        final Path file = save(cp);
+        final var loaded = new CompiledProgram(file.toString());
+        final var p = new Program(cp);
+        final var q = new Program(loaded);
+        for (final String goal : new String[]{"s X Y", "s 3 Y", "s X 3", "s 3 5"}) {
+            p.query(goal);
+            q.query(goal);
+            assertEquals(goal, Answers.of(p), Answers.of(q));
+        }
+    }
+
+    @Test
+    public void roundTripWithFactTables() throws IOException {
+        System.setProperty("iprolog.columns", "2");
+        final var cp = new CompiledProgram("edges");
+        assertTrue(cp.predicates.values().stream().anyMatch(P -> P instanceof FactTable));
+        final var loaded = new CompiledProgram(save(cp).toString());
+        assertTrue(loaded.predicates.values().stream().anyMatch(P -> P instanceof FactTable));
+        final var p = new Program(cp);
+        final var q = new Program(loaded);
+        for (final String goal : new String[]{"edge X Y", "edge a Y", "edge X c", "edge c a"}) {
+            p.query(goal);
+            q.query(goal);
+            assertEquals(goal, Answers.of(p), Answers.of(q));
+        }
+    }
+
+    @Test
+    public void changedProgramNotSaved() {
+        final var cp = new CompiledProgram("edges");
+        cp.addFact("edge c d");
+        assertThrows(IllegalStateException.class, () -> save(cp));
+    }
+
+    @Test
+    public void factTableMadeDynamicNotSaved() throws IOException {
+        System.setProperty("iprolog.columns", "5");
+        final var source = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            source.append("row r").append(i).append(' ').append(i).append(" .\n\n");
+        }
+        source.append("goal X Y \nif\n  row X Y .\n");
+        final Path file = Files.createTempFile(folder.getRoot().toPath(), "rows", ".pl.nl");
+        Files.writeString(file, source);
+        final var cp = new CompiledProgram(file.toString());
+        assertTrue(cp.predicates.values().stream().anyMatch(P -> P instanceof FactTable));
+        assertFalse(cp.removeFact("row nope 99"));
+        assertEquals(0, cp.generation);
+        assertThrows(IllegalStateException.class, () -> save(cp));
+        assertEquals(20, Answers.of(new Program(cp)).size());
+    }
+
+    @Test
+    public void wrongVersion() throws IOException {
+        final Path file = save(new CompiledProgram("add"));
+        final byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(4, ProgramImage.VERSION + 1);
+        Files.write(file, bytes);
+        final var e = assertThrows(IllegalArgumentException.class, () -> new CompiledProgram(file.toString()));
+        assertTrue(e.getMessage(), e.getMessage().contains("version " + (ProgramImage.VERSION + 1)));
+    }
+
+    @Test
+    public void notAnImage() throws IOException {
+        final Path file = folder.newFile("add" + ProgramImage.SUFFIX).toPath();
+        Files.writeString(file, "add 0 X X .\n");
+        final var e = assertThrows(IllegalArgumentException.class, () -> new CompiledProgram(file.toString()));
+        assertTrue(e.getMessage(), e.getMessage().startsWith("Not a program image"));
+    }
+
+    @Test
+    public void truncated() throws IOException {
+        final Path file = save(new CompiledProgram("queens8"));
+        final byte[] bytes = Files.readAllBytes(file);
+        for (final int n : new int[]{8, 12, bytes.length / 3, bytes.length / 2, bytes.length - 4}) {
+            Files.write(file, Arrays.copyOf(bytes, n));
+            final var e = assertThrows(IllegalArgumentException.class, () -> new CompiledProgram(file.toString()));
+            assertTrue(n + ": " + e.getMessage(), e.getMessage().startsWith("Truncated program image"));
+        }
+    }
+}
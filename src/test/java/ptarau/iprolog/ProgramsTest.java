@@ -0,0 +1,76 @@
+package ptarau.iprolog;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * the bundled programs the benchmarks run give their known answers, counted
+ * and hashed as shown, however the benchmarks retrieve them - perms, mperms
+ * and lambdas are left out as taking too long
+ */
+public class ProgramsTest {
+
+    private static long hash(final List<String> answers) {
+        long h = 0;
+        for (final String answer : answers) {
+            h = h * 31 + answer.hashCode();
+        }
+        return h;
+    }
+
+    private static void assertAnswers(final String name, final int n, final long h) {
+        final List<String> answers = Answers.of(new Program(name));
+        assertEquals(name, n, answers.size());
+        assertEquals(name, h, hash(answers));
+    }
+
+    @Test
+    public void add() {
+        assertAnswers("add", 1, -1957366586L);
+    }
+
+    @Test
+    public void big() {
+        assertAnswers("big", 1, -1183343683L);
+    }
+
+    @Test
+    public void path() {
+        assertAnswers("path", 5, 185397486436925L);
+    }
+
+    @Test
+    public void queens() {
+        assertAnswers("queens", 14200, 1254431153522746880L);
+    }
+
+    @Test
+    public void sud4x() {
+        assertAnswers("sud4x", 288, 3689854903832835072L);
+    }
+
+    @Test
+    public void sameCountsHoweverRetrieved() throws Exception {
+        final var cp = new CompiledProgram("queens8");
+        assertEquals(92, Answers.of(new Program(cp)).size());
+
+        final var buffer = new AnswerBuffer();
+        final var buffered = new Program(cp);
+        long n = 0;
+        for (int k; 0 < (k = buffered.ask(10, buffer)); buffer.clear()) {
+            n += k;
+        }
+        assertEquals(92, n);
+
+        final var pool = new ForkJoinPool(4);
+        try {
+            assertEquals(92L, (long) pool.submit(() -> new Program(cp).parallelStream().count()).get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
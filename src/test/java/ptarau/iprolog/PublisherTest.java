@@ -0,0 +1,158 @@
+package ptarau.iprolog;
+
+import org.junit.Test;
+import ptarau.iprolog.util.ArrayHeap;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * a publisher delivers the answers of an engine as they are asked for,
+ * finding no more than its capacity of them ahead
+ */
+public class PublisherTest {
+
+    private static final long TIMEOUT = 30;
+
+    /**
+     * engine counting the answers asked of it, failing at answer fail
+     */
+    private static final class CountingEngine extends Engine {
+        final AtomicInteger asked = new AtomicInteger();
+        private final int fail;
+
+        CountingEngine(final String name, final int fail) {
+            super(new CompiledProgram(name), new ArrayHeap());
+            this.fail = fail;
+        }
+
+        @Override
+        Object ask() {
+            if (asked.incrementAndGet() == fail) {
+                throw new IllegalStateException("answer " + fail);
+            }
+            return super.ask();
+        }
+    }
+
+    /**
+     * subscriber taking answers as the test asks for them
+     */
+    private static final class Subscriber implements Flow.Subscriber<Object> {
+        final List<Object> answers = new CopyOnWriteArrayList<>();
+        final CompletableFuture<Flow.Subscription> subscription = new CompletableFuture<>();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        void request(final long n) throws Exception {
+            subscription.get(TIMEOUT, TimeUnit.SECONDS).request(n);
+        }
+
+        void awaitAnswers(final int n) throws InterruptedException {
+            for (long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT); answers.size() < n; ) {
+                assertTrue(answers.size() + " answers", System.nanoTime() < end);
+                Thread.sleep(1);
+            }
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription s) {
+            subscription.complete(s);
+        }
+
+        @Override
+        public void onNext(final Object item) {
+            answers.add(item);
+        }
+
+        @Override
+        public void onError(final Throwable e) {
+            done.completeExceptionally(e);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+
+    private static List<String> show(final Engine E, final List<Object> answers) {
+        return answers.stream().map(E::showTerm).toList();
+    }
+
+    @Test
+    public void allAnswersInOrder() throws Exception {
+        final var p = new Program("queens8");
+        final var s = new Subscriber();
+        p.publisher(8).subscribe(s);
+        s.request(Long.MAX_VALUE);
+        s.done.get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(Answers.of(new Program("queens8")), show(p, s.answers));
+    }
+
+    @Test
+    public void boundedAhead() throws Exception {
+        final var E = new CountingEngine("queens8", 0);
+        final var s = new Subscriber();
+        new AnswerPublisher(E, 4).subscribe(s);
+        s.request(3);
+        s.awaitAnswers(3);
+        Thread.sleep(200);
+        assertEquals(3, s.answers.size());
+        final int asked = E.asked.get();
+        assertTrue(Integer.toString(asked), asked <= 3 + 4 + 2);
+        s.request(Long.MAX_VALUE);
+        s.done.get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(92, s.answers.size());
+        assertEquals(93, E.asked.get());
+    }
+
+    @Test
+    public void cancelStopsSearch() throws Exception {
+        final var E = new CountingEngine("queens8", 0);
+        final var s = new Subscriber();
+        new AnswerPublisher(E, 4).subscribe(s);
+        s.request(5);
+        s.awaitAnswers(5);
+        s.subscription.get().cancel();
+        for (long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT); !E.isDone(); ) {
+            assertTrue(System.nanoTime() < end);
+            Thread.sleep(1);
+        }
+        final int asked = E.asked.get();
+        Thread.sleep(100);
+        assertEquals(asked, E.asked.get());
+        assertTrue(Integer.toString(asked), asked < 92);
+        assertFalse(s.done.isDone());
+    }
+
+    @Test
+    public void searchErrors() throws Exception {
+        final var E = new CountingEngine("queens8", 10);
+        final var s = new Subscriber();
+        new AnswerPublisher(E, 4).subscribe(s);
+        s.request(Long.MAX_VALUE);
+        final var e = assertThrows(Exception.class, () -> s.done.get(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertEquals(9, s.answers.size());
+    }
+
+    @Test
+    public void singleSubscriber() throws Exception {
+        final var publisher = new Program("edges").publisher(4);
+        final var first = new Subscriber();
+        publisher.subscribe(first);
+        final var second = new Subscriber();
+        publisher.subscribe(second);
+        final var e = assertThrows(Exception.class, () -> second.done.get(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        first.request(Long.MAX_VALUE);
+        first.done.get(TIMEOUT, TimeUnit.SECONDS);
+        assertEquals(2, first.answers.size());
+    }
+}
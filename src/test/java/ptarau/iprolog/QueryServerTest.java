@@ -0,0 +1,185 @@
+package ptarau.iprolog;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * clients of a query server get the answers of their goals a line each,
+ * followed by a line telling how many there were
+ */
+public class QueryServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private QueryServer server;
+    private SocketAddress address;
+
+    /**
+     * session of a client with the server
+     */
+    private static final class Client implements Closeable {
+        private final SocketChannel channel;
+        private final BufferedReader in;
+        private final BufferedWriter out;
+
+        Client(final SocketAddress address) throws IOException {
+            channel = SocketChannel.open(address);
+            in = new BufferedReader(Channels.newReader(channel, UTF_8));
+            out = new BufferedWriter(Channels.newWriter(channel, UTF_8));
+        }
+
+        void send(final String line) throws IOException {
+            out.write(line);
+            out.newLine();
+            out.flush();
+        }
+
+        String read() throws IOException {
+            return in.readLine();
+        }
+
+        /**
+         * sends a request and returns its answers, checking the
+         * line that follows them
+         */
+        List<String> ask(final String request) throws IOException {
+            send(request);
+            final List<String> answers = new ArrayList<>();
+            for (String line; null != (line = read()); answers.add(line)) {
+                if (line.startsWith("done ")) {
+                    assertTrue(line, line.matches("done " + answers.size() + " \\d+us"));
+                    return answers;
+                }
+                assertFalse(line, line.startsWith("error "));
+            }
+            fail("connection closed");
+            return answers;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new QueryServer(new CompiledProgram("queens8"), 2);
+        address = server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void answersOfGoals() throws IOException {
+        final var p = new Program("queens8");
+        p.query("qs _0 Ps and _0 lists 0 1 2 3");
+        final List<String> expected = Answers.of(p);
+        try (var client = new Client(address)) {
+            assertEquals(expected, client.ask("qs _0 Ps and _0 lists 0 1 2 3"));
+            assertEquals(Answers.of(new Program("queens8")), client.ask("goal Ps"));
+            assertEquals(List.of(), client.ask("qs _0 Ps and _0 lists 0 1 2"));
+        }
+    }
+
+    @Test
+    public void limit() throws IOException {
+        final List<String> expected = Answers.of(new Program("queens8"));
+        try (var client = new Client(address)) {
+            assertEquals(expected.subList(0, 3), client.ask("3 goal Ps"));
+            assertEquals(List.of(), client.ask("0 goal Ps"));
+            assertEquals(expected, client.ask("1000 goal Ps"));
+        }
+    }
+
+    @Test
+    public void errors() throws IOException {
+        try (var client = new Client(address)) {
+            client.send("goal Ps and");
+            assertEquals("error Not a single goal: goal Ps and", client.read());
+            // the session, and the engine that failed, go on serving
+            for (int i = 0; i < 3; i++) {
+                assertEquals(92, client.ask("goal Ps").size());
+            }
+        }
+        assertEquals(1, server.stats().errors.sum());
+    }
+
+    @Test
+    public void statsAndQuit() throws IOException {
+        try (var client = new Client(address)) {
+            client.ask("2 goal Ps");
+            client.ask("qs _0 Ps and _0 lists 0 1 2 3");
+            client.send("stats");
+            final String stats = client.read();
+            assertTrue(stats, stats.startsWith("requests 2 errors 0 latency "));
+            assertTrue(stats, stats.endsWith(" busy 0/2"));
+            client.send("quit");
+            assertNull(client.read());
+        }
+        assertEquals(2, server.stats().requests.sum());
+    }
+
+    @Test
+    public void moreClientsThanEngines() throws Exception {
+        final List<String> expected = Answers.of(new Program("queens8"));
+        final ExecutorService clients = Executors.newFixedThreadPool(6);
+        try {
+            final List<Future<List<String>>> results = new ArrayList<>();
+            for (int k = 0; k < 6; k++) {
+                results.add(clients.submit(() -> {
+                    try (var client = new Client(address)) {
+                        return client.ask("goal Ps");
+                    }
+                }));
+            }
+            for (final var r : results) {
+                assertEquals(expected, r.get());
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+        assertEquals(6, server.stats().requests.sum());
+        assertEquals(0, server.stats().queued.get());
+        assertTrue(server.stats().maxQueued.get() <= 4);
+    }
+
+    @Test
+    public void unixDomainSocket() throws IOException {
+        final Path socket = folder.getRoot().toPath().resolve("iprolog.socket");
+        try (var unix = new QueryServer(new CompiledProgram("edges"), 1)) {
+            final SocketAddress at = unix.start(UnixDomainSocketAddress.of(socket));
+            try (var client = new Client(at)) {
+                assertEquals(List.of("goal(a,b)", "goal(b,c)"), client.ask("edge X Y"));
+            }
+        }
+        assertFalse(socket.toFile().exists());
+    }
+}
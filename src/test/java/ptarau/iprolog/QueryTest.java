@@ -0,0 +1,147 @@
+package ptarau.iprolog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * goals run on a program loaded once, one after the other on the same
+ * engine, or on engines handed out by a pool
+ */
+public class QueryTest {
+
+    @Test
+    public void goalsOneAfterTheOther() {
+        final var p = new Program("edges");
+        p.query("edge X Y");
+        assertEquals(List.of("goal(a,b)", "goal(b,c)"), Answers.of(p));
+        p.query("edge b Y");
+        assertEquals(List.of("goal(c)"), Answers.of(p));
+        p.query("edge X Y and edge Y Z");
+        assertEquals(List.of("goal(a,b,c)"), Answers.of(p));
+        p.query("edge c Y");
+        assertEquals(List.of(), Answers.of(p));
+    }
+
+    @Test
+    public void goalLeftHalfAnswered() {
+        final var p = new Program("queens8");
+        final List<String> expected = Answers.of(new Program("queens8"));
+        assertEquals(expected.get(0), p.showTerm(p.ask()));
+        p.query("edge X Y");
+        assertEquals(List.of(), Answers.of(p));
+        p.reset();
+        assertEquals(expected, Answers.of(p));
+    }
+
+    @Test
+    public void resetRunsProgramQuery() {
+        final var p = new Program("edges");
+        final List<String> expected = Answers.of(new Program("edges"));
+        p.query("edge a Y");
+        assertEquals(List.of("goal(b)"), Answers.of(p));
+        p.reset();
+        assertEquals(expected, Answers.of(p));
+        p.reset();
+        assertEquals(expected, Answers.of(p));
+    }
+
+    @Test
+    public void heapBackToItsMark() {
+        final var p = new Program("queens8");
+        p.query("qs _0 Ps and _0 lists 0 1 2 3");
+        Answers.of(p);
+        final int size = p.heap.size();
+        for (int i = 0; i < 100; i++) {
+            p.query("qs _0 Ps and _0 lists 0 1 2 3");
+            assertEquals(2, Answers.of(p).size());
+            assertEquals(size, p.heap.size());
+        }
+    }
+
+    @Test
+    public void newSymbols() {
+        final var p = new Program("unify");
+        p.query("same X brand_new");
+        assertEquals(List.of("goal(brand_new)"), Answers.of(p));
+        p.query("never_seen X");
+        assertEquals(List.of(), Answers.of(p));
+    }
+
+    @Test
+    public void termGoals() {
+        final var p = new Program("unify");
+        p.query(new Object[]{"pair", "P", 1, "b"});
+        assertEquals(List.of("pair(p(1,b),1,b)"), Answers.of(p));
+        p.query(new Object[]{"same", new Object[]{"f", "X", "X"}, new Object[]{"f", "a", "Y"}});
+        assertEquals(List.of("same(f(a,a),f(a,a))"), Answers.of(p));
+        p.query(new Object[]{"try", "_", "_"});
+        assertEquals(List.of("try(a,b)", "try(d,c)"), Answers.of(p));
+        p.query(new Object[]{"same", 1, 2});
+        assertEquals(List.of(), Answers.of(p));
+    }
+
+    @Test
+    public void poolRecyclesEngines() {
+        final var pool = new EnginePool(new CompiledProgram("edges"), 2);
+        final Program a = pool.acquire();
+        final Program b = pool.acquire();
+        assertNotSame(a, b);
+        a.query("edge X Y");
+        a.ask();
+        pool.release(a);
+        assertSame(a, pool.acquire());
+        // released engines run the program query again
+        assertEquals(Answers.of(new Program("edges")), Answers.of(a));
+        pool.release(a);
+        pool.release(b);
+        // the most recently returned goes out first, and no more than capacity are kept
+        pool.release(new Program(new CompiledProgram("edges")));
+        assertSame(b, pool.acquire());
+        assertSame(a, pool.acquire());
+        assertNotSame(a, pool.acquire());
+    }
+
+    @Test
+    public void poolAsk() {
+        final var pool = new EnginePool(new CompiledProgram("edges"), 4);
+        assertEquals("goal(c)", pool.apply(E -> E.showTerm(pool.ask("edge b Y"))));
+        assertNull(pool.ask("edge c Y"));
+        assertEquals(List.of("goal(a,b)", "goal(b,c)"), pool.apply(E -> {
+            E.query("edge X Y");
+            return Answers.of(E);
+        }));
+    }
+
+    @Test
+    public void poolOnManyThreads() throws Exception {
+        final var pool = new EnginePool(new CompiledProgram("queens8"), 4);
+        final ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<List<String>>> results = new ArrayList<>();
+            for (int k = 0; k < 200; k++) {
+                final int n = 4 + k % 3;
+                final var goal = new StringBuilder("qs _0 Ps and _0 lists");
+                for (int i = 0; i < n; i++) {
+                    goal.append(' ').append(i);
+                }
+                results.add(threads.submit(() -> pool.apply(E -> {
+                    E.query(goal.toString());
+                    return Answers.of(E);
+                })));
+            }
+            final int[] counts = {2, 10, 4};
+            for (int k = 0; k < results.size(); k++) {
+                assertEquals(counts[k % 3], results.get(k).get().size());
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+}
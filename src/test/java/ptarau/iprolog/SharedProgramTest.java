@@ -0,0 +1,89 @@
+package ptarau.iprolog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * a program loaded once serves engines on any number of threads, each
+ * with a heap of its own above the shared code
+ */
+public class SharedProgramTest {
+
+    @Test
+    public void engineHeapsHoldNoCode() {
+        final var cp = new CompiledProgram("big");
+        final var p = new Program(cp);
+        // only the cells of the query get copied, to be bound in place
+        assertTrue(p.heap.size() - cp.query().base() <= cp.query().len());
+        assertSame(cp.code, p.code);
+        assertSame(cp.symbols, p.symbols);
+        assertSame(cp.clauses, p.clauses);
+    }
+
+    @Test
+    public void codeNotChangedByRunning() {
+        final var cp = new CompiledProgram("queens8");
+        final int[] code = cp.code.clone();
+        final List<String> expected = Answers.of(new Program(cp));
+        assertEquals(expected, Answers.of(new Program(cp)));
+        assertArrayEquals(code, cp.code);
+    }
+
+    @Test
+    public void enginesOnManyThreads() throws Exception {
+        final String[] names = {"add", "queens8", "path", "edges", "dispatch"};
+        final var programs = new CompiledProgram[names.length];
+        final List<List<String>> expected = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            programs[i] = new CompiledProgram(names[i]);
+            expected.add(Answers.of(new Program(names[i])));
+        }
+        final int[][] code = Arrays.stream(programs).map(cp -> cp.code.clone()).toArray(int[][]::new);
+        final ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            final List<Callable<List<String>>> tasks = new ArrayList<>();
+            for (int k = 0; k < 40; k++) {
+                final var cp = programs[k % names.length];
+                tasks.add(() -> Answers.of(new Program(cp)));
+            }
+            final List<Future<List<String>>> results = pool.invokeAll(tasks);
+            for (int k = 0; k < results.size(); k++) {
+                assertEquals(names[k % names.length], expected.get(k % names.length), results.get(k).get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        for (int i = 0; i < names.length; i++) {
+            assertArrayEquals(names[i], code[i], programs[i].code);
+        }
+    }
+
+    @Test
+    public void interleavedEngines() {
+        final var cp = new CompiledProgram("queens8");
+        final var p = new Program(cp);
+        final var q = new Program(cp);
+        final List<String> expected = Answers.of(new Program(cp));
+        final List<String> ps = new ArrayList<>();
+        final List<String> qs = new ArrayList<>();
+        for (Object a, b; null != (a = p.ask()) | null != (b = q.ask()); ) {
+            if (null != a) {
+                ps.add(p.showTerm(a));
+            }
+            if (null != b) {
+                qs.add(q.showTerm(b));
+            }
+        }
+        assertEquals(expected, ps);
+        assertEquals(expected, qs);
+    }
+}
@@ -0,0 +1,44 @@
+package ptarau.iprolog;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * spines popped from the stack are handed out again by the next pushes
+ */
+public class SpineStackTest {
+
+    @Test
+    public void recyclesPoppedSpines() {
+        final var spines = new SpineStack<>(Spine::new);
+        final Spine a = spines.push();
+        final Spine b = spines.push();
+        assertNotSame(a, b);
+        assertSame(b, spines.peek());
+        assertSame(b, spines.pop());
+        assertSame(a, spines.peek());
+        assertSame(b, spines.push());
+        assertEquals(2, spines.size());
+    }
+
+    @Test
+    public void grows() {
+        final var spines = new SpineStack<>(Spine::new);
+        final int n = 1000;
+        final var pushed = new Spine[n];
+        for (int i = 0; i < n; i++) {
+            pushed[i] = spines.push();
+        }
+        assertEquals(n, spines.size());
+        for (int i = 0; i < n; i++) {
+            assertSame(pushed[i], spines.get(i));
+        }
+        while (!spines.isEmpty()) {
+            assertSame(pushed[spines.size() - 1], spines.pop());
+        }
+        for (int i = 0; i < n; i++) {
+            assertSame(pushed[i], spines.push());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ptarau.iprolog;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+
+import static org.junit.Assert.*;
+
+/**
+ * splitting a program hands over part of its search to another one:
+ * between them they find each answer once
+ */
+public class SplitTest {
+
+    private static void drain(final Spliterator<Object> s, final Program p, final List<String> answers) {
+        s.forEachRemaining(o -> answers.add(p.showTerm(o)));
+    }
+
+    /**
+     * splits p, and the programs split off, into up to n programs, as long
+     * as they split, then adds their answers to answers - returns how many
+     * programs there were
+     */
+    private static int splitAll(final Program p, final int n, final List<String> answers) {
+        final List<Spliterator<Object>> parts = new ArrayList<>(List.of(p));
+        for (boolean split = true; split && parts.size() < n; ) {
+            split = false;
+            for (int i = parts.size() - 1; i >= 0 && parts.size() < n; i--) {
+                final var other = parts.get(i).trySplit();
+                if (null != other) {
+                    parts.add(other);
+                    split = true;
+                }
+            }
+        }
+        for (final var s : parts) {
+            drain(s, p, answers);
+        }
+        return parts.size();
+    }
+
+    @Test
+    public void splitOff() {
+        final List<String> expected = Answers.of(new Program("queens8"));
+        final var p = new Program("queens8");
+        final List<String> answers = new ArrayList<>();
+        // the oldest alternatives may fail at once, the later ones get answers
+        for (Spliterator<Object> other; answers.isEmpty() && null != (other = p.trySplit()); ) {
+            drain(other, p, answers);
+        }
+        final int split = answers.size();
+        drain(p, p, answers);
+        assertTrue(split + " of " + answers.size(), split > 0 && split < answers.size());
+        assertEquals(Answers.sorted(expected), Answers.sorted(answers));
+    }
+
+    @Test
+    public void manySplits() {
+        final List<String> expected = Answers.of(new Program("queens8"));
+        final List<String> answers = new ArrayList<>();
+        final int n = splitAll(new Program("queens8"), 32, answers);
+        assertEquals(32, n);
+        assertEquals(Answers.sorted(expected), Answers.sorted(answers));
+    }
+
+    @Test
+    public void splitAfterSomeAnswers() {
+        final List<String> expected = Answers.of(new Program("queens8"));
+        final var p = new Program("queens8");
+        final List<String> answers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(p.tryAdvance(o -> answers.add(p.showTerm(o))));
+        }
+        assertEquals(expected.subList(0, 10), answers);
+        assertTrue(splitAll(p, 8, answers) > 1);
+        assertEquals(Answers.sorted(expected), Answers.sorted(answers));
+    }
+
+    @Test
+    public void estimateHalved() {
+        final var p = new Program("queens8");
+        assertEquals(Long.MAX_VALUE, p.estimateSize());
+        final var other = p.trySplit();
+        assertEquals(Long.MAX_VALUE >>> 1, p.estimateSize());
+        assertEquals(Long.MAX_VALUE >>> 1, other.estimateSize());
+    }
+
+    @Test
+    public void answersFoundWhileSplittingKept() {
+        final List<String> expected = Answers.of(new Program("add"));
+        final var p = new Program("add");
+        final var other = p.trySplit();
+        final List<String> answers = new ArrayList<>();
+        if (null != other) {
+            drain(other, p, answers);
+        }
+        drain(p, p, answers);
+        assertEquals(expected, answers);
+        assertNull(p.trySplit());
+        assertFalse(p.tryAdvance(o -> fail()));
+    }
+
+    @Test
+    public void sequentialStreamInOrder() {
+        final var p = new Program("queens8");
+        assertEquals(Answers.of(new Program("queens8")), p.stream().map(p::showTerm).toList());
+    }
+}
@@ -0,0 +1,90 @@
+package ptarau.iprolog;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * calls to tabled predicates get each of their answers once, recursion
+ * through them, left recursion included, coming to an end
+ */
+public class TablingTest {
+
+    private static List<String> answers(final Program p, final String goal) {
+        p.query(goal);
+        return Answers.sorted(Answers.of(p));
+    }
+
+    @Test
+    public void leftRecursion() {
+        assertEquals(List.of("goal(a)", "goal(b)", "goal(c)", "goal(d)", "goal(e)"),
+                Answers.sorted(Answers.of(new Program("path"))));
+        final var p = new Program("path");
+        assertEquals(List.of("goal(e)"), answers(p, "path d Y"));
+        assertEquals(List.of(), answers(p, "path e Y"));
+        assertEquals(List.of("goal(a)", "goal(b)", "goal(c)"), answers(p, "path X c"));
+        assertEquals(16, answers(p, "path X Y").size());
+        assertEquals(List.of("goal()"), answers(p, "path a a"));
+    }
+
+    @Test
+    public void mutualRecursion() {
+        final List<String> expected = List.of(
+                "goal(1,1)", "goal(1,2)", "goal(1,3)", "goal(1,4)",
+                "goal(2,1)", "goal(2,2)", "goal(2,3)", "goal(2,4)",
+                "goal(3,1)", "goal(3,2)", "goal(3,3)", "goal(3,4)");
+        assertEquals(expected, Answers.sorted(Answers.of(new Program("tabled"))));
+        final var p = new Program("tabled");
+        assertEquals(List.of("goal(1)", "goal(2)", "goal(3)", "goal(4)"), answers(p, "q 2 Y"));
+        assertEquals(List.of(), answers(p, "p 4 Y"));
+    }
+
+    @Test
+    public void eachAnswerOnce() {
+        final var p = new Program("tabled");
+        p.query("p X Y");
+        final List<String> answers = Answers.of(p);
+        assertEquals(12, answers.size());
+        assertEquals(12, answers.stream().distinct().count());
+    }
+
+    @Test
+    public void tablesReusedAcrossQueries() {
+        final var p = new Program("tabled");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(4, answers(p, "p 1 Y").size());
+            assertEquals(4, answers(p, "p 3 Y").size());
+        }
+        p.reset();
+        assertEquals(12, Answers.of(p).size());
+    }
+
+    @Test
+    public void tablesDroppedWhenFactsChange() {
+        final var cp = new CompiledProgram("tabled");
+        final var p = new Program(cp);
+        assertEquals(List.of(), answers(p, "p 4 Y"));
+        cp.addFact("e 4 5");
+        assertEquals(List.of("goal(5)"), answers(p, "p 4 Y"));
+        assertEquals(List.of("goal(1)", "goal(2)", "goal(3)", "goal(4)", "goal(5)"), answers(p, "p 1 Y"));
+        assertTrue(cp.removeFact("e 3 4"));
+        assertEquals(List.of("goal(1)", "goal(2)", "goal(3)"), answers(p, "p 1 Y"));
+    }
+
+    @Test
+    public void untabledGoalsAroundTabledOnes() {
+        final var p = new Program("tabled");
+        assertEquals(List.of("goal(1,2)", "goal(2,3)", "goal(3,1)", "goal(3,4)"), answers(p, "p X 4 and e X Y"));
+        assertEquals(List.of("goal(1)", "goal(4)"), answers(p, "e 3 X and p 1 X"));
+    }
+
+    @Test
+    public void rightRecursionOverTerms() {
+        // nat X has infinitely many answers, a ground call has one
+        final var p = new Program("tabled");
+        assertEquals(List.of("goal()"), answers(p, "nat _0 and _0 holds s _1 and _1 holds s 0"));
+        assertEquals(List.of(), answers(p, "nat a"));
+    }
+}
@@ -0,0 +1,109 @@
+package ptarau.iprolog;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * goals unify with clause heads where the clauses lie, binding goal
+ * variables to copies of the head subterms they meet
+ */
+public class UnificationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Program p = new Program("unify");
+
+    private List<String> answers(final String goal) {
+        p.query(goal);
+        return Answers.of(p);
+    }
+
+    /**
+     * the only answer to goal, its variables named by order of appearance
+     */
+    private String answer(final String goal) {
+        final List<String> answers = answers(goal);
+        assertEquals(goal, 1, answers.size());
+        final var m = Pattern.compile("V\\d+").matcher(answers.get(0));
+        final var names = new LinkedHashMap<String, String>();
+        final var out = new StringBuilder();
+        while (m.find()) {
+            m.appendReplacement(out, names.computeIfAbsent(m.group(), v -> "_" + names.size()));
+        }
+        return m.appendTail(out).toString();
+    }
+
+    @Test
+    public void repeatedVariables() {
+        assertEquals("goal(a)", answer("same X a"));
+        assertEquals("goal(f(b),b)", answer("same _0 X and _0 holds f Y and eq Y b"));
+        assertEquals(List.of(), answers("same _0 _1 and _0 holds f a and _1 holds f b and eq X X"));
+        assertEquals("goal(a,a)", answer("wrap X _0 and _0 holds w a Y"));
+        assertEquals(List.of(), answers("wrap X _0 and _0 holds w a b and eq Y Y"));
+    }
+
+    @Test
+    public void headSubtermsCopiedToBoundVariables() {
+        assertEquals("goal(p(1,2))", answer("pair P 1 2"));
+        assertEquals("goal(p(_0,_1),_0,_1)", answer("pair P X Y"));
+        assertEquals("goal(f(g(_0),g(_0)))", answer("deep T"));
+        assertEquals("goal([_0,_1,_2],_0)", answer("first L X"));
+    }
+
+    @Test
+    public void goalSubtermsMatchedInPlace() {
+        assertEquals("goal(1,2)", answer("pair _0 X Y and _0 holds p 1 2"));
+        assertEquals("goal(g(_0),g(_0))", answer("deep _0 and _0 holds f A B"));
+        assertEquals(List.of(), answers("deep _0 and _0 holds f _1 _2 and _1 holds g a and _2 holds g b and eq X X"));
+        assertEquals("goal(p(b,a))", answer("swap _0 Q and _0 holds p a b"));
+        assertEquals("goal(p(b,a))", answer("swap Q _0 and _0 holds p a b"));
+        assertEquals("goal(c)", answer("first _0 X and _0 lists c d e"));
+        assertEquals(List.of(), answers("first _0 X and _0 lists c d"));
+    }
+
+    @Test
+    public void failedHeadLeavesNoBindings() {
+        assertEquals(List.of("goal(a,b)", "goal(d,c)"), answers("try X Y"));
+        assertEquals(List.of("goal(d)"), answers("try X c"));
+        assertEquals(List.of("goal(b)"), answers("try a Y"));
+    }
+
+    @Test
+    public void bodySeesHeadBindings() {
+        assertEquals("goal(g(z))", answer("body X z"));
+        assertEquals("goal(g(_0),_0)", answer("body X Y"));
+        assertEquals("goal(z)", answer("body _0 Y and _0 holds g z"));
+        assertEquals(List.of(), answers("body _0 Y and _0 holds h z"));
+    }
+
+    @Test
+    public void longListInHead() throws IOException {
+        final var source = new StringBuilder("input _0 and\n  _0 lists");
+        for (int i = 0; i < 100000; i++) {
+            source.append(" a").append(i % 3);
+        }
+        source.append(" .\n\nlast _0 X and\n  _0 holds list X nil .\n\n")
+                .append("last _0 X and\n  _0 holds list Y Xs \nif\n  last Xs X .\n\n")
+                .append("goal X \nif\n  input L and\n  last L X .\n");
+        final Path file = folder.newFile("long.pl.nl").toPath();
+        Files.writeString(file, source);
+        assertEquals(List.of("goal(a0)"), Answers.of(new Program(file.toString())));
+        assertEquals(List.of("goal(a0)"), Answers.of(new LongEngine(file.toString())));
+    }
+
+    @Test
+    public void programQuery() {
+        assertEquals(List.of("goal(a)"), Answers.of(new Program("unify")));
+    }
+}
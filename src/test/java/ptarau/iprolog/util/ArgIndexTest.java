@@ -0,0 +1,89 @@
+package ptarau.iprolog.util;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.Test;
+
+import java.nio.IntBuffer;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * argument indexes find the clauses a key could match, in clause order
+ */
+public class ArgIndexTest {
+
+    private static final int[] CLAUSES = {2, 3, 5, 7, 11, 13};
+    private static final int[] KEYS = {10, 0, 20, 10, 0, 30};
+
+    @Test
+    public void postingLists() {
+        final var ix = new ArgIndex(CLAUSES, KEYS);
+        assertArrayEquals(new int[]{2, 3, 7, 11}, ix.get(10));
+        assertArrayEquals(new int[]{3, 5, 11}, ix.get(20));
+        assertArrayEquals(new int[]{3, 11, 13}, ix.get(30));
+        // unknown keys only match the clauses with a variable
+        assertArrayEquals(new int[]{3, 11}, ix.get(40));
+        assertEquals(4, ix.count(10));
+        assertEquals(2, ix.count(40));
+    }
+
+    @Test
+    public void sharedWithoutVariables() {
+        final var ix = new ArgIndex(new int[]{1, 4, 6}, new int[]{7, 8, 7});
+        assertSame(ix.get(7), ix.get(7));
+        assertArrayEquals(new int[]{1, 6}, ix.get(7));
+        assertEquals(0, ix.get(9).length);
+        assertEquals(0, ix.count(9));
+    }
+
+    @Test
+    public void writeRead() {
+        final var ix = new ArgIndex(CLAUSES, KEYS);
+        final var out = new IntArrayList();
+        out.add(-1);
+        ix.write(out);
+        out.add(-2);
+        final var in = IntBuffer.wrap(out.toIntArray());
+        assertEquals(-1, in.get());
+        final var back = ArgIndex.read(in);
+        assertEquals(-2, in.get());
+        for (final int key : new int[]{10, 20, 30, 40}) {
+            assertArrayEquals(ix.get(key), back.get(key));
+        }
+    }
+
+    @Test
+    public void union() {
+        assertArrayEquals(new int[]{1, 2, 3, 5, 8}, ArgIndex.union(new int[]{1, 5}, new int[]{2, 3, 8}));
+        assertArrayEquals(new int[]{4}, ArgIndex.union(new int[0], new int[]{4}));
+    }
+
+    @Test
+    public void intersect() {
+        assertArrayEquals(new int[]{3, 9}, ArgIndex.intersect(new int[]{1, 3, 9}, new int[]{2, 3, 4, 9, 10}));
+        assertArrayEquals(new int[0], ArgIndex.intersect(new int[]{1, 3}, new int[0]));
+        assertArrayEquals(new int[0], ArgIndex.intersect(new int[]{100}, new int[]{1, 2, 3}));
+        assertArrayEquals(new int[]{0, 999}, ArgIndex.intersect(new int[]{0, 999}, IntStream.range(0, 1000).toArray()));
+    }
+
+    @Test
+    public void intersectAgainstNaive() {
+        final var random = new Random(42);
+        for (int t = 0; t < 200; t++) {
+            final int[] xs = sample(random, random.nextInt(50), 1 + random.nextInt(1000));
+            final int[] ys = sample(random, random.nextInt(2000), 1 + random.nextInt(1000));
+            final int[] expected = IntStream.of(xs).filter(x -> IntStream.of(ys).anyMatch(y -> y == x)).toArray();
+            assertArrayEquals(expected, ArgIndex.intersect(xs, ys));
+            assertArrayEquals(expected, ArgIndex.intersect(ys, xs));
+        }
+    }
+
+    /**
+     * sorted distinct numbers below bound, about n of them
+     */
+    private static int[] sample(final Random random, final int n, final int bound) {
+        return random.ints(n, 0, bound).distinct().sorted().toArray();
+    }
+}
@@ -0,0 +1,69 @@
+package ptarau.iprolog.util;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.Test;
+
+import java.nio.IntBuffer;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * column indexes find the rows holding a value, in row order
+ */
+public class ColumnIndexTest {
+
+    private static final int[] COLUMN = {7, 3, 7, 1, 3, 7, 9};
+
+    @Test
+    public void rowsOfValues() {
+        final var ix = new ColumnIndex(COLUMN);
+        assertArrayEquals(new int[]{0, 2, 5}, ix.get(7));
+        assertArrayEquals(new int[]{1, 4}, ix.get(3));
+        assertArrayEquals(new int[]{3}, ix.get(1));
+        assertArrayEquals(new int[]{6}, ix.get(9));
+        assertArrayEquals(new int[0], ix.get(5));
+        assertArrayEquals(new int[0], ix.get(0));
+        assertArrayEquals(new int[0], ix.get(10));
+        assertEquals(3, ix.count(7));
+        assertEquals(0, ix.count(8));
+    }
+
+    @Test
+    public void extremeValues() {
+        final int[] column = {Integer.MAX_VALUE, Integer.MIN_VALUE, -1, Integer.MAX_VALUE, 0};
+        final var ix = new ColumnIndex(column);
+        assertArrayEquals(new int[]{0, 3}, ix.get(Integer.MAX_VALUE));
+        assertArrayEquals(new int[]{1}, ix.get(Integer.MIN_VALUE));
+        assertArrayEquals(new int[]{2}, ix.get(-1));
+        assertArrayEquals(new int[]{4}, ix.get(0));
+    }
+
+    @Test
+    public void writeRead() {
+        final var ix = new ColumnIndex(COLUMN);
+        final var out = new IntArrayList();
+        ix.write(out);
+        out.add(-2);
+        final var in = IntBuffer.wrap(out.toIntArray());
+        final var back = ColumnIndex.read(COLUMN, in);
+        assertEquals(-2, in.get());
+        for (final int v : new int[]{1, 3, 5, 7, 9}) {
+            assertArrayEquals(ix.get(v), back.get(v));
+        }
+    }
+
+    @Test
+    public void againstScan() {
+        final var random = new Random(7);
+        final int[] column = random.ints(5000, 0, 300).toArray();
+        final var ix = new ColumnIndex(column);
+        for (int v = -1; v <= 300; v++) {
+            final int value = v;
+            final int[] expected = IntStream.range(0, column.length).filter(i -> column[i] == value).toArray();
+            assertArrayEquals(expected, ix.get(v));
+            assertEquals(expected.length, ix.count(v));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ptarau.iprolog.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * fact files give back the rows and symbols written to them, and find the
+ * rows holding a value as a scan of the column would
+ */
+public class FactFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FactFile write(final int[][] columns, final String[] symbols) throws IOException {
+        final Path file = Files.createTempFile(folder.getRoot().toPath(), "facts", ".ipf");
+        FactFile.write(file, columns, symbols);
+        return FactFile.open(file);
+    }
+
+    @Test
+    public void rowsAndSymbols() throws IOException {
+        final int[][] columns = {{7, 3, 7, 1, 3}, {0, 1, 2, 1, 0}};
+        final String[] symbols = {"a", "b", "c", "été"};
+        final var f = write(columns, symbols);
+        assertEquals(2, f.columns());
+        assertEquals(5, f.rows());
+        assertEquals(4, f.symbols());
+        for (int c = 0; c < columns.length; c++) {
+            for (int row = 0; row < columns[c].length; row++) {
+                assertEquals(columns[c][row], f.get(c, row));
+            }
+        }
+        for (int i = 0; i < symbols.length; i++) {
+            assertEquals(symbols[i], f.symbol(i));
+            assertEquals(i, f.symbol(symbols[i]));
+        }
+        assertEquals(-1, f.symbol("b0"));
+        assertArrayEquals(new int[]{0, 2}, f.rows(0, 7));
+        assertArrayEquals(new int[]{1, 3}, f.rows(1, 1));
+        assertArrayEquals(new int[0], f.rows(0, 5));
+        assertEquals(2, f.count(0, 3));
+        assertEquals(0, f.count(1, 9));
+    }
+
+    @Test
+    public void extremeValues() throws IOException {
+        final int[][] columns = {{Integer.MAX_VALUE, Integer.MIN_VALUE, -1, Integer.MAX_VALUE, 0}};
+        final var f = write(columns, new String[0]);
+        assertArrayEquals(new int[]{0, 3}, f.rows(0, Integer.MAX_VALUE));
+        assertEquals(2, f.count(0, Integer.MAX_VALUE));
+        assertArrayEquals(new int[]{1}, f.rows(0, Integer.MIN_VALUE));
+        assertArrayEquals(new int[]{2}, f.rows(0, -1));
+        assertArrayEquals(new int[]{4}, f.rows(0, 0));
+    }
+
+    @Test
+    public void againstScan() throws IOException {
+        final var random = new Random(11);
+        final int[][] columns = {random.ints(3001, 0, 100).toArray(), random.ints(3001, -50, 50).toArray()};
+        final var f = write(columns, new String[0]);
+        for (int c = 0; c < columns.length; c++) {
+            final int[] column = columns[c];
+            for (int v = -51; v <= 100; v++) {
+                final int value = v;
+                final int[] expected = IntStream.range(0, column.length).filter(i -> column[i] == value).toArray();
+                assertArrayEquals(expected, f.rows(c, v));
+                assertEquals(expected.length, f.count(c, v));
+            }
+        }
+    }
+}
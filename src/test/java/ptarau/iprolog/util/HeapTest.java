@@ -0,0 +1,59 @@
+package ptarau.iprolog.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * heaps outside of the java heap keep cells as the array heap does
+ */
+public class HeapTest {
+
+    private static void fill(final Heap heap, final int n) {
+        for (int i = 0; i < n; i++) {
+            heap.push(i * 31);
+        }
+    }
+
+    private static void assertSameCells(final Heap expected, final Heap actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getTop(), actual.getTop());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void growsAcrossChunks() {
+        final int n = 3 * DirectHeap.CHUNK + 17;
+        final Heap array = new ArrayHeap();
+        final Heap direct = new DirectHeap();
+        fill(array, n);
+        fill(direct, n);
+        assertSameCells(array, direct);
+    }
+
+    @Test
+    public void setAndShrink() {
+        final Heap array = new ArrayHeap();
+        final Heap direct = new DirectHeap();
+        fill(array, DirectHeap.CHUNK + 5);
+        fill(direct, DirectHeap.CHUNK + 5);
+        for (final Heap heap : new Heap[]{array, direct}) {
+            heap.set(DirectHeap.CHUNK, -1);
+            heap.setTop(DirectHeap.CHUNK);
+            heap.push(-2);
+        }
+        assertSameCells(array, direct);
+        assertEquals(-1, direct.get(DirectHeap.CHUNK));
+        assertEquals(-2, direct.get(DirectHeap.CHUNK + 1));
+    }
+
+    @Test
+    public void emptyStartsAtBase() {
+        final Heap heap = new DirectHeap().empty(100);
+        assertEquals(99, heap.getTop());
+        heap.push(7);
+        assertEquals(7, heap.get(100));
+    }
+}
@@ -0,0 +1,9 @@
+big 1152921504606846975 .
+
+big 268435456 .
+
+big 1000000000000 .
+
+goal X 
+if
+  big X .
@@ -0,0 +1,20 @@
+color red .
+
+size small .
+
+color green .
+
+Any thing .
+
+size big .
+
+color blue .
+
+pair X Y 
+if
+  color X and
+  size Y .
+
+goal X Y 
+if
+  pair X Y .
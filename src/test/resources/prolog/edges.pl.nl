@@ -0,0 +1,7 @@
+edge a b .
+
+edge b c .
+
+goal X Y 
+if
+  edge X Y .
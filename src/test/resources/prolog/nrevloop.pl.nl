@@ -0,0 +1,47 @@
+app nil Xs Xs .
+
+app _0 Ys _1 and
+  _0 holds list X Xs and
+  _1 holds list X Zs 
+if
+  app Xs Ys Zs .
+
+nrev nil nil .
+
+nrev _0 Zs and
+  _0 holds list X Xs 
+if
+  nrev Xs Ys and
+  app Ys _1 Zs and
+  _1 lists X .
+
+loop nil X X .
+
+loop _0 X Y and
+  _0 holds list I Is 
+if
+  nrev X Z and
+  loop Is Z Y .
+
+sel X _0 Xs and
+  _0 holds list X Xs .
+
+sel X _0 _1 and
+  _0 holds list Y Xs and
+  _1 holds list Y Ys 
+if
+  sel X Xs Ys .
+
+input _0 and
+  _0 lists 0 1 2 3 4 5 6 7 8 9 10 11 12 13 14 15 16 17 18 19 20 21 22 23 24 25 26 27 28 29 30 31 32 33 34 35 36 37 38 39 40 41 42 43 44 45 46 47 48 49 50 51 52 53 54 55 56 57 58 59 60 61 62 63 64 65 66 67 68 69 70 71 72 73 74 75 76 77 78 79 80 81 82 83 84 85 86 87 88 89 90 91 92 93 94 95 96 97 98 99 .
+
+times _0 and
+  _0 lists 0 1 2 3 4 5 6 7 8 9 10 .
+
+goal X Zs 
+if
+  input Xs and
+  times Is and
+  loop Is Xs Ys and
+  sel X Ys _0 and
+  nrev _0 Zs .
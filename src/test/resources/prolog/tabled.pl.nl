@@ -0,0 +1,37 @@
+table p 2 .
+
+table q 2 .
+
+table nat 1 .
+
+e 1 2 .
+
+e 2 3 .
+
+e 3 1 .
+
+e 3 4 .
+
+p X Y 
+if
+  q X Y .
+
+q X Y 
+if
+  p X Z and
+  e Z Y .
+
+q X Y 
+if
+  e X Y .
+
+nat _0 and
+  _0 holds s X 
+if
+  nat X .
+
+nat 0 .
+
+goal X Y 
+if
+  p X Y .
@@ -0,0 +1,33 @@
+eq X X .
+
+same X X .
+
+pair _0 X Y and
+  _0 holds p X Y .
+
+deep _0 and
+  _0 holds f _1 _1 and
+  _1 holds g X .
+
+try a b .
+
+try d c .
+
+wrap X _0 and
+  _0 holds w X X .
+
+swap _0 _1 and
+  _0 holds p X Y and
+  _1 holds p Y X .
+
+first _0 X and
+  _0 lists X Y Z .
+
+body X Y 
+if
+  same X _0 and
+  _0 holds g Y .
+
+goal X 
+if
+  same X a .
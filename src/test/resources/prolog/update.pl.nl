@@ -0,0 +1,13 @@
+item a .
+
+item b .
+
+item c .
+
+item d .
+
+goal X 
+if
+  item X and
+  _0 holds seen X and
+  assert _0 .